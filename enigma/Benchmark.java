@@ -0,0 +1,292 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** End-to-end throughput harness.  Runs Main over the workloads made by
+ *  Workload, each run in a fresh JVM so that runs do not share warm-up,
+ *  heap or garbage, and reports input MB/s, messages/s, the JVM's peak
+ *  resident set size and its time spent in garbage collection.  Results
+ *  are appended as tab-separated lines under a header to a results
+ *  file, labelled (with a version, say) for comparing runs of different
+ *  versions of the simulator.
+ *  @author A.R. LOEFFLER
+ */
+class Benchmark {
+
+    /** Run the benchmarks.  ARGS are options, a directory for the
+     *  workloads, the kinds of workload to run (default: all), and
+     *  optionally "--" followed by options passed to Main.  Options are
+     *  --size=CHARS and --seed=N (as for Workload; workloads already in
+     *  the directory are reused if they were made with the same ones),
+     *  --runs=N (runs of each workload; default 3), --label=TEXT (first
+     *  column of the results; default "-") and --results=FILE (default
+     *  DIR/results.tsv). */
+    public static void main(String... args) {
+        try {
+            if (args.length > 0 && args[0].equals(CHILD)) {
+                child(Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
+            long size = Workload.DEFAULT_SIZE, seed = 1, runs = DEFAULT_RUNS;
+            String label = "-", results = null;
+            int a = 0;
+            for (; a < args.length && args[a].startsWith("--")
+                     && !args[a].equals("--"); a += 1) {
+                if (args[a].startsWith("--size=")) {
+                    size = Workload.number(args[a], "--size=");
+                } else if (args[a].startsWith("--seed=")) {
+                    seed = Workload.number(args[a], "--seed=");
+                } else if (args[a].startsWith("--runs=")) {
+                    runs = Workload.number(args[a], "--runs=");
+                } else if (args[a].startsWith("--label=")) {
+                    label = args[a].substring("--label=".length());
+                } else if (args[a].startsWith("--results=")) {
+                    results = args[a].substring("--results=".length());
+                } else {
+                    throw error("unknown option: %s", args[a]);
+                }
+            }
+            if (a >= args.length || args[a].equals("--")) {
+                throw error("Usage: java enigma.Benchmark [--size=CHARS] "
+                            + "[--seed=N] [--runs=N] [--label=TEXT] "
+                            + "[--results=FILE] DIR [KIND...] "
+                            + "[-- MAIN_OPTION...]");
+            }
+            File dir = new File(args[a]);
+            int end = Arrays.asList(args).indexOf("--");
+            if (end < 0) {
+                end = args.length;
+            }
+            List<String> options = Arrays.asList(
+                Arrays.copyOfRange(args, Math.min(end + 1, args.length),
+                                   args.length));
+            Benchmark bench = new Benchmark(dir, size, seed, label, options);
+            bench.run(Workload.kinds(Arrays.copyOfRange(args, 0, end), a + 1),
+                      runs, results == null ? new File(dir, "results.tsv")
+                      : new File(results));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A benchmark of workloads of SIZE characters from SEED kept in
+     *  DIR, run by Main with options OPTIONS, and reported under
+     *  LABEL. */
+    Benchmark(File dir, long size, long seed, String label,
+              List<String> options) {
+        _dir = dir;
+        _size = size;
+        _seed = seed;
+        _label = label;
+        _options = options;
+    }
+
+    /** Run each of KINDS RUNS times, appending the results to
+     *  RESULTS. */
+    void run(Workload.Kind[] kinds, long runs, File results) {
+        _dir.mkdirs();
+        boolean header = !results.exists();
+        try (PrintStream out = new PrintStream(
+                 new FileOutputStream(results, true))) {
+            if (header) {
+                out.println(HEADER);
+            }
+            for (Workload.Kind kind : kinds) {
+                String name = kind.name().toLowerCase();
+                long messages = prepare(kind);
+                File input = new File(_dir, name + ".inp");
+                long bytes = input.length();
+                for (long r = 1; r <= runs; r += 1) {
+                    double[] m = measure(name);
+                    double seconds = m[0];
+                    String line = String.format(
+                        "%s\t%s\t%s\t%d\t%d\t%d\t%.3f\t%.2f\t%.0f\t%d\t%d",
+                        _label, name, _options.isEmpty() ? "-"
+                        : String.join(" ", _options), r, bytes,
+                        messages, seconds, bytes / seconds / MEGABYTE,
+                        messages / seconds, (long) m[2], (long) m[1]);
+                    out.println(line);
+                    out.flush();
+                    System.out.printf("%-10s run %d: %8.2f MB/s %12.0f "
+                                      + "messages/s  peak RSS %d KB  "
+                                      + "GC %d ms%n", name, r,
+                                      bytes / seconds / MEGABYTE,
+                                      messages / seconds, (long) m[2],
+                                      (long) m[1]);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", results);
+        }
+    }
+
+    /** Make sure the workload KIND is in my directory, generating it
+     *  unless it is there and was made with my size and seed, and
+     *  return its number of message lines. */
+    private long prepare(Workload.Kind kind) throws IOException {
+        String name = kind.name().toLowerCase();
+        File stamp = new File(_dir, name + ".stamp");
+        String made = String.format("%d %d", _size, _seed);
+        if (stamp.exists() && new File(_dir, name + ".inp").exists()
+            && Files.readString(stamp.toPath()).trim().equals(made)) {
+            return messages(new File(_dir, name + ".inp"));
+        }
+        stamp.delete();
+        long result = new Workload(_size, _seed).write(kind, _dir);
+        Files.writeString(stamp.toPath(), made);
+        return result;
+    }
+
+    /** Return the number of message lines (non-empty lines that are
+     *  not settings lines) in FILE. */
+    private static long messages(File file) throws IOException {
+        long result = 0;
+        try (InputStream in = new BufferedInputStream(
+                 new FileInputStream(file), 1 << 16)) {
+            boolean start = true, settings = false;
+            for (int b = in.read(); b >= 0; b = in.read()) {
+                if (b == '\n') {
+                    if (!start && !settings) {
+                        result += 1;
+                    }
+                    start = true;
+                    settings = false;
+                } else if (start) {
+                    settings = b == '*';
+                    start = false;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Run Main over workload NAME in a fresh JVM, and return its
+     *  elapsed seconds, milliseconds of garbage collection and peak
+     *  resident set size in KB (-1 if unknown). */
+    private double[] measure(String name) {
+        String java = System.getProperty("java.home") + File.separator + "bin"
+            + File.separator + "java";
+        List<String> command = new ArrayList<>(List.of(
+            java, "-Dfile.encoding=UTF-8", "-cp",
+            System.getProperty("java.class.path"), "enigma.Benchmark",
+            CHILD));
+        command.addAll(_options);
+        command.add(new File(_dir, name + ".conf").getPath());
+        command.add(new File(_dir, name + ".inp").getPath());
+        command.add(new File(_dir, name + ".out").getPath());
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        try {
+            Process child = builder.start();
+            String result = null;
+            try (BufferedReader out = new BufferedReader(
+                     new InputStreamReader(child.getInputStream()))) {
+                for (String line = out.readLine(); line != null;
+                     line = out.readLine()) {
+                    if (line.startsWith(RESULT)) {
+                        result = line;
+                    }
+                }
+            }
+            if (child.waitFor() != 0 || result == null) {
+                throw error("run of %s failed", name);
+            }
+            Scanner fields = new Scanner(result.substring(RESULT.length()));
+            return new double[] {
+                Double.parseDouble(fields.next()), fields.nextLong(),
+                fields.nextLong(),
+            };
+        } catch (IOException excp) {
+            throw error("could not run %s", name);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** Body of a measured run: run Main with arguments ARGS and print
+     *  RESULT followed by the elapsed seconds, milliseconds of garbage
+     *  collection and peak resident set size in KB. */
+    private static void child(String[] args) {
+        long start = System.nanoTime();
+        Main.main(args);
+        double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+        long gc = 0;
+        for (GarbageCollectorMXBean bean
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gc += Math.max(0, bean.getCollectionTime());
+        }
+        System.out.printf("%s%.6f %d %d%n", RESULT, seconds, gc, peakRss());
+    }
+
+    /** Return this process's peak resident set size in KB, or -1 if it
+     *  cannot be found (it is read from /proc, so only on Linux). */
+    private static long peakRss() {
+        try {
+            for (String line : Files.readAllLines(
+                     new File("/proc/self/status").toPath(),
+                     StandardCharsets.US_ASCII)) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(
+                        line.substring("VmHWM:".length()).replace("kB", "")
+                        .trim());
+                }
+            }
+        } catch (IOException | NumberFormatException excp) {
+            /* Fall through. */
+        }
+        return -1;
+    }
+
+    /** Header line of the results file. */
+    static final String HEADER = "label\tworkload\toptions\trun\tbytes\t"
+        + "messages\tseconds\tmb_per_s\tmessages_per_s\tpeak_rss_kb\tgc_ms";
+
+    /** First argument of a measured run. */
+    private static final String CHILD = "--child";
+
+    /** Prefix of the line reporting a measured run. */
+    private static final String RESULT = "RESULT ";
+
+    /** Default number of runs of each workload. */
+    private static final long DEFAULT_RUNS = 3;
+
+    /** Bytes per MB. */
+    private static final double MEGABYTE = 1 << 20;
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** Directory holding the workloads. */
+    private final File _dir;
+
+    /** Size and seed of the workloads. */
+    private final long _size, _seed;
+
+    /** First column of my results. */
+    private final String _label;
+
+    /** Options passed to Main. */
+    private final List<String> _options;
+
+}
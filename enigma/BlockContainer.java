@@ -0,0 +1,430 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Scanner;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** A file of binary data enciphered by a ByteCipher in fixed-size blocks,
+ *  with an index from which any byte range can be deciphered without
+ *  replaying the machine from the start.
+ *
+ *  The file starts with a header: MAGIC, the block size and number of
+ *  rotor slots as ints, the data length as a long, and the SHA-256
+ *  digests of the configuration file and of the settings line (the key
+ *  reference; the key itself is not stored).  The enciphered data
+ *  follows, and then the index, which has one entry per block: the
+ *  rotor settings at the start of the block, one byte per slot, and the
+ *  CRC-32 of the block's enciphered bytes as an int.
+ *  @author A.R. LOEFFLER
+ */
+class BlockContainer {
+
+    /** The container in FILE, whose header and index are read at once. */
+    BlockContainer(FileChannel file) throws IOException {
+        _file = file;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(file, header, 0);
+        if (header.getLong() != MAGIC) {
+            throw error("not a block container");
+        }
+        _blockSize = header.getInt();
+        _numRotors = header.getInt();
+        _length = header.getLong();
+        header.get(_configDigest);
+        header.get(_keyDigest);
+        if (_blockSize <= 0 || _numRotors <= 0 || _length < 0) {
+            throw error("bad block container header");
+        }
+        long blocks = (_length + _blockSize - 1) / _blockSize;
+        long indexSize = blocks * entrySize(_numRotors);
+        if (file.size() != HEADER_SIZE + _length + indexSize) {
+            throw error("block container has the wrong size");
+        }
+        _index = ByteBuffer.allocate((int) indexSize);
+        readFully(file, _index, HEADER_SIZE + _length);
+    }
+
+    /** Encipher all of IN with MACHINE, whose rotors must be inserted and
+     *  set, and write it to OUT as a container with blocks of BLOCKSIZE
+     *  bytes.  CONFIGDIGEST and KEYDIGEST are the digests of the
+     *  configuration and settings line that set up MACHINE. */
+    static void write(Machine machine, byte[] configDigest,
+                      byte[] keyDigest, int blockSize, FileChannel in,
+                      FileChannel out) throws IOException {
+        if (blockSize <= 0) {
+            throw error("block size must be positive");
+        }
+        ByteCipher cipher = new ByteCipher(machine);
+        Rotor[] rotors = machine.usedRotors();
+        ByteBuffer block = ByteBuffer.allocate(blockSize);
+        ByteBuffer entry = ByteBuffer.allocate(entrySize(rotors.length));
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        CRC32 crc = new CRC32();
+        long length = 0;
+        out.truncate(0);
+        out.position(HEADER_SIZE);
+        while (fill(in, block)) {
+            entry.clear();
+            for (Rotor r : rotors) {
+                entry.put((byte) r.setting());
+            }
+            int n = block.position();
+            cipher.convert(block.array(), 0, block.array(), 0, n);
+            crc.reset();
+            crc.update(block.array(), 0, n);
+            entry.putInt((int) crc.getValue());
+            index.write(entry.array(), 0, entry.position());
+            writeFully(out, block);
+            length += n;
+        }
+        writeFully(out, ByteBuffer.wrap(index.toByteArray())
+                   .position(index.size()));
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(MAGIC).putInt(blockSize).putInt(rotors.length)
+            .putLong(length).put(configDigest).put(keyDigest);
+        out.position(0);
+        writeFully(out, header);
+    }
+
+    /** Return the number of data bytes. */
+    long length() {
+        return _length;
+    }
+
+    /** Return the block size. */
+    int blockSize() {
+        return _blockSize;
+    }
+
+    /** Return the number of blocks. */
+    int blocks() {
+        return _index.capacity() / entrySize(_numRotors);
+    }
+
+    /** Throw an exception unless I was written with the configuration
+     *  and settings line whose digests are CONFIGDIGEST and KEYDIGEST. */
+    void check(byte[] configDigest, byte[] keyDigest) {
+        if (!Arrays.equals(configDigest, _configDigest)) {
+            throw error("container was written with another configuration");
+        }
+        if (!Arrays.equals(keyDigest, _keyDigest)) {
+            throw error("container was written with another key");
+        }
+    }
+
+    /** Decipher bytes starting at OFFSET into the remaining space in DST,
+     *  stopping at the end of the data, using MACHINE, which must have
+     *  been set up with the same settings line as the one that wrote me.
+     *  Only the blocks containing the range are read and deciphered. */
+    void read(Machine machine, long offset, ByteBuffer dst)
+        throws IOException {
+        if (offset < 0 || offset > _length) {
+            throw error("offset %d outside container", offset);
+        }
+        checkRotors(machine);
+        ByteCipher cipher = new ByteCipher(machine);
+        ByteBuffer block = ByteBuffer.allocate(_blockSize);
+        while (dst.hasRemaining() && offset < _length) {
+            int k = (int) (offset / _blockSize);
+            int n = readBlock(k, block);
+            restore(machine, k);
+            cipher.convert(block.array(), 0, block.array(), 0, n);
+            int start = (int) (offset - (long) k * _blockSize);
+            int count = Math.min(n - start, dst.remaining());
+            dst.put(block.array(), start, count);
+            offset += count;
+        }
+    }
+
+    /** Check that every block's CRC is right and that each index entry
+     *  is the state MACHINE reaches from the one before (the first being
+     *  MACHINE's current state), throwing an exception describing the
+     *  first block that is not. */
+    void verify(Machine machine) throws IOException {
+        checkRotors(machine);
+        Rotor[] rotors = machine.usedRotors();
+        ByteBuffer block = ByteBuffer.allocate(_blockSize);
+        CRC32 crc = new CRC32();
+        int entrySize = entrySize(_numRotors);
+        for (int k = 0; k < blocks(); k += 1) {
+            int n = readBlock(k, block);
+            crc.reset();
+            crc.update(block.array(), 0, n);
+            if ((int) crc.getValue()
+                != _index.getInt(k * entrySize + _numRotors)) {
+                throw error("block %d is corrupt", k);
+            }
+            for (int i = 0; i < _numRotors; i += 1) {
+                if (rotors[i].setting()
+                    != Byte.toUnsignedInt(_index.get(k * entrySize + i))) {
+                    throw error("index entry %d is inconsistent", k);
+                }
+            }
+            restore(machine, k);
+            for (int i = 0; i < n; i += 1) {
+                machine.step();
+            }
+        }
+    }
+
+    /** Throw an exception unless MACHINE has my number of rotors. */
+    private void checkRotors(Machine machine) {
+        if (machine.numRotors() != _numRotors) {
+            throw error("container was written with %d rotors", _numRotors);
+        }
+    }
+
+    /** Set the rotors of MACHINE to their settings at the start of block
+     *  K. */
+    private void restore(Machine machine, int k) {
+        Rotor[] rotors = machine.usedRotors();
+        int entry = k * entrySize(_numRotors);
+        for (int i = 0; i < _numRotors; i += 1) {
+            rotors[i].set(Byte.toUnsignedInt(_index.get(entry + i)));
+        }
+    }
+
+    /** Read the enciphered bytes of block K into the start of BLOCK,
+     *  returning their number. */
+    private int readBlock(int k, ByteBuffer block) throws IOException {
+        long start = (long) k * _blockSize;
+        int n = (int) Math.min(_blockSize, _length - start);
+        block.clear().limit(n);
+        readFully(_file, block, HEADER_SIZE + start);
+        return n;
+    }
+
+    /** Return the size of an index entry for NUMROTORS slots. */
+    static int entrySize(int numRotors) {
+        return numRotors + Integer.BYTES;
+    }
+
+    /** Return the SHA-256 digest of DATA. */
+    static byte[] digest(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("SHA-256 not available");
+        }
+    }
+
+    /** Return the digest of the settings line SETTINGS, ignoring
+     *  differences in white space. */
+    static byte[] keyDigest(String settings) {
+        String normal = String.join(" ", settings.trim().split("\\s+"));
+        return digest(normal.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Read from IN into BUF until it is full or IN is exhausted,
+     *  returning true iff anything was read. */
+    private static boolean fill(FileChannel in, ByteBuffer buf)
+        throws IOException {
+        while (buf.hasRemaining() && in.read(buf) >= 0) {
+            continue;
+        }
+        return buf.position() > 0;
+    }
+
+    /** Fill BUF from IN starting at POSITION and flip it. */
+    private static void readFully(FileChannel in, ByteBuffer buf,
+                                  long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = in.read(buf, position);
+            if (n < 0) {
+                throw error("truncated block container");
+            }
+            position += n;
+        }
+        buf.flip();
+    }
+
+    /** Write BUF[0 .. position-1] to OUT at its current position and
+     *  clear BUF. */
+    private static void writeFully(FileChannel out, ByteBuffer buf)
+        throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        buf.clear();
+    }
+
+    /** Write, read or verify a container.  The forms are
+     *      write CONFIG SETTINGS INPUT CONTAINER [BLOCKSIZE]
+     *      read CONFIG SETTINGS CONTAINER OUTPUT [OFFSET [LENGTH]]
+     *      verify CONFIG SETTINGS CONTAINER
+     *  where SETTINGS is a settings line such as "* B III II I AAA". */
+    public static void main(String... args) {
+        try {
+            if (args.length < 4) {
+                throw error(USAGE);
+            }
+            byte[] config;
+            try {
+                config = Files.readAllBytes(Paths.get(args[1]));
+            } catch (IOException excp) {
+                throw error("could not open %s", args[1]);
+            }
+            Main setup = new Main(new Scanner(new String(config)));
+            Machine machine = setup.readConfig();
+            setup.setUp(machine, args[2]);
+            byte[] configDigest = digest(config);
+            byte[] keyDigest = keyDigest(args[2]);
+            switch (args[0]) {
+            case "write":
+                write(machine, configDigest, keyDigest, args, 3);
+                break;
+            case "read":
+                read(machine, configDigest, keyDigest, args, 3);
+                break;
+            case "verify":
+                if (args.length != 4) {
+                    throw error(USAGE);
+                }
+                try (FileChannel file = FileChannel.open(Paths.get(args[3]),
+                         StandardOpenOption.READ)) {
+                    BlockContainer c = new BlockContainer(file);
+                    c.check(configDigest, keyDigest);
+                    c.verify(machine);
+                    System.out.printf("%s: %d bytes in %d blocks, OK%n",
+                                      args[3], c.length(), c.blocks());
+                } catch (IOException excp) {
+                    throw error("could not read %s", args[3]);
+                }
+                break;
+            default:
+                throw error(USAGE);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Handle the write command with MACHINE, CONFIGDIGEST and KEYDIGEST,
+     *  taking the rest of its arguments from ARGS starting at A. */
+    private static void write(Machine machine, byte[] configDigest,
+                              byte[] keyDigest, String[] args, int a) {
+        if (args.length < a + 2 || args.length > a + 3) {
+            throw error(USAGE);
+        }
+        int blockSize = args.length > a + 2
+            ? (int) parseNumber(args[a + 2], Integer.MAX_VALUE) : BLOCK_SIZE;
+        try (FileChannel in = FileChannel.open(Paths.get(args[a]),
+                                               StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Paths.get(args[a + 1]),
+                     StandardOpenOption.READ, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE)) {
+            write(machine, configDigest, keyDigest, blockSize, in, out);
+        } catch (IOException excp) {
+            throw error("could not write %s: %s", args[a + 1],
+                        excp.getMessage());
+        }
+    }
+
+    /** Handle the read command with MACHINE, CONFIGDIGEST and KEYDIGEST,
+     *  taking the rest of its arguments from ARGS starting at A. */
+    private static void read(Machine machine, byte[] configDigest,
+                             byte[] keyDigest, String[] args, int a) {
+        if (args.length < a + 2 || args.length > a + 4) {
+            throw error(USAGE);
+        }
+        try (FileChannel file = FileChannel.open(Paths.get(args[a]),
+                                                 StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Paths.get(args[a + 1]),
+                     StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            BlockContainer c = new BlockContainer(file);
+            c.check(configDigest, keyDigest);
+            long offset = args.length > a + 2
+                ? parseNumber(args[a + 2], Long.MAX_VALUE) : 0;
+            if (offset > c.length()) {
+                throw error("offset %d outside container", offset);
+            }
+            long length = args.length > a + 3
+                ? parseNumber(args[a + 3], Long.MAX_VALUE)
+                : c.length() - offset;
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            while (length > 0 && offset < c.length()) {
+                buf.limit((int) Math.min(BUFFER_SIZE, length));
+                c.read(machine, offset, buf);
+                offset += buf.position();
+                length -= buf.position();
+                writeFully(out, buf);
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s: %s", args[a],
+                        excp.getMessage());
+        }
+    }
+
+    /** Return the number in TEXT, which must be in the range 0 .. MAX. */
+    private static long parseNumber(String text, long max) {
+        try {
+            long result = Long.parseLong(text);
+            if (result >= 0 && result <= max) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("bad number: %s", text);
+    }
+
+    /** First eight bytes of a container. */
+    static final long MAGIC = 0x454E4947_424C4B31L;
+
+    /** Size of a SHA-256 digest. */
+    static final int DIGEST_SIZE = 32;
+
+    /** Size of the header. */
+    static final int HEADER_SIZE =
+        Long.BYTES + 2 * Integer.BYTES + Long.BYTES + 2 * DIGEST_SIZE;
+
+    /** Default block size. */
+    static final int BLOCK_SIZE = 1 << 16;
+
+    /** Size of the buffer used by the read command. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Usage message. */
+    private static final String USAGE = "Usage: java enigma.BlockContainer "
+        + "write CONFIG SETTINGS INPUT CONTAINER [BLOCKSIZE] | "
+        + "read CONFIG SETTINGS CONTAINER OUTPUT [OFFSET [LENGTH]] | "
+        + "verify CONFIG SETTINGS CONTAINER";
+
+    /** The container file. */
+    private final FileChannel _file;
+
+    /** Block size. */
+    private final int _blockSize;
+
+    /** Number of rotor slots of the machine that wrote me. */
+    private final int _numRotors;
+
+    /** Number of data bytes. */
+    private final long _length;
+
+    /** Digest of the configuration. */
+    private final byte[] _configDigest = new byte[DIGEST_SIZE];
+
+    /** Digest of the settings line. */
+    private final byte[] _keyDigest = new byte[DIGEST_SIZE];
+
+    /** The index. */
+    private final ByteBuffer _index;
+
+}
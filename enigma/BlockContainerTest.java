@@ -0,0 +1,163 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BlockContainer class.
+ *  @author A.R. LOEFFLER
+ */
+public class BlockContainerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Stand-ins for the digests of the configuration and key. */
+    private static final byte[] CONFIG = BlockContainer.digest(new byte[1]),
+        KEY = BlockContainer.keyDigest("* B BETA I II III AAAA");
+
+    /** Return byteMachine with notches at every other position of the
+     *  fast rotor, so that the middle rotors move often. */
+    private Machine machine() {
+        StringBuilder notches = new StringBuilder();
+        for (int i = 0; i < BYTES.size(); i += 2) {
+            notches.append(BYTES.toChar(i));
+        }
+        return byteMachine(notches.toString());
+    }
+
+    /** Return N random bytes. */
+    private byte[] data(int n) {
+        byte[] result = new byte[n];
+        new Random(39).nextBytes(result);
+        return result;
+    }
+
+    /** Return the path of a container of DATA written in blocks of
+     *  BLOCKSIZE. */
+    private Path container(byte[] data, int blockSize) throws IOException {
+        Path in = Files.createTempFile("enigma", ".dat");
+        Path out = Files.createTempFile("enigma", ".blk");
+        in.toFile().deleteOnExit();
+        out.toFile().deleteOnExit();
+        Files.write(in, data);
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out,
+                                                StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE)) {
+            BlockContainer.write(machine(), CONFIG, KEY, blockSize, src, dst);
+        }
+        return out;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRandomAccess() throws IOException {
+        byte[] plain = data(10000);
+        byte[] cipher = plain.clone();
+        new ByteCipher(machine()).convert(cipher, 0, cipher, 0,
+                                          cipher.length);
+        Path path = container(plain, 333);
+        byte[] stored = Files.readAllBytes(path);
+        for (int i = 0; i < cipher.length; i += 1) {
+            assertEquals(cipher[i], stored[BlockContainer.HEADER_SIZE + i]);
+        }
+        try (FileChannel file = FileChannel.open(path,
+                                                 StandardOpenOption.READ)) {
+            BlockContainer c = new BlockContainer(file);
+            c.check(CONFIG, KEY);
+            assertEquals(plain.length, c.length());
+            assertEquals(31, c.blocks());
+            Random random = new Random(7);
+            for (int t = 0; t < 50; t += 1) {
+                int offset = random.nextInt(plain.length);
+                int length = random.nextInt(1000);
+                ByteBuffer buf = ByteBuffer.allocate(length);
+                c.read(machine(), offset, buf);
+                int n = Math.min(length, plain.length - offset);
+                assertEquals(n, buf.position());
+                for (int i = 0; i < n; i += 1) {
+                    assertEquals(plain[offset + i], buf.get(i));
+                }
+            }
+            c.verify(machine());
+        }
+    }
+
+    @Test
+    public void checkEmpty() throws IOException {
+        Path path = container(new byte[0], 100);
+        try (FileChannel file = FileChannel.open(path,
+                                                 StandardOpenOption.READ)) {
+            BlockContainer c = new BlockContainer(file);
+            assertEquals(0, c.length());
+            assertEquals(0, c.blocks());
+            c.verify(machine());
+        }
+    }
+
+    @Test
+    public void checkVerifyFindsCorruption() throws IOException {
+        Path path = container(data(1000), 100);
+        byte[] stored = Files.readAllBytes(path);
+        stored[BlockContainer.HEADER_SIZE + 450] ^= 1;
+        Files.write(path, stored);
+        try (FileChannel file = FileChannel.open(path,
+                                                 StandardOpenOption.READ)) {
+            new BlockContainer(file).verify(machine());
+            fail("corruption not detected");
+        } catch (EnigmaException excp) {
+            assertEquals("block 4 is corrupt", excp.getMessage());
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkWrongKey() throws IOException {
+        Path path = container(data(10), 100);
+        try (FileChannel file = FileChannel.open(path,
+                                                 StandardOpenOption.READ)) {
+            new BlockContainer(file).check(
+                CONFIG, BlockContainer.keyDigest("* B BETA I II III AAAB"));
+        }
+    }
+
+    @Test
+    public void checkCommandLine() throws IOException {
+        Path config = Files.createTempFile("enigma", ".conf");
+        Path in = Files.createTempFile("enigma", ".bin");
+        Path out = Files.createTempFile("enigma", ".ctr");
+        Path copy = Files.createTempFile("enigma", ".bin");
+        for (Path p : new Path[] { config, in, out, copy }) {
+            p.toFile().deleteOnExit();
+        }
+        Files.write(config, String.join("\n",
+            "[\\u0000-\\u00FF] 5 3", " B R @1", " BETA N @2", " I MQ @3",
+            " II ME @4", " III MV @5", "").getBytes());
+        byte[] plain = data(5000);
+        Files.write(in, plain);
+        String key = "* B BETA I II III AAAA";
+        BlockContainer.main("write", config.toString(), key, in.toString(),
+                            out.toString(), "1000");
+        BlockContainer.main("read", config.toString(), key, out.toString(),
+                            copy.toString(), "100", "3000000000");
+        assertArrayEquals(Arrays.copyOfRange(plain, 100, plain.length),
+                          Files.readAllBytes(copy));
+    }
+
+}
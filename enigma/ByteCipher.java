@@ -0,0 +1,180 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** An Enigma machine applied to arbitrary binary data rather than text.
+ *  The machine's alphabet must have exactly 256 characters, and byte
+ *  value b is treated as the character with index b: there is no
+ *  character decoding, no case folding, no line structure and no
+ *  grouping of the output.  A suitable configuration declares the
+ *  alphabet as [\\u0000-\\u00FF] and gives generated wirings such as
+ *  "I MA @1" (see Main.readRotor).
+ *  @author A.R. LOEFFLER
+ */
+class ByteCipher {
+
+    /** A cipher that converts bytes with MACHINE, whose rotors must
+     *  already be inserted and set. */
+    ByteCipher(Machine machine) {
+        if (machine.alphabet().size() != SYMBOLS) {
+            throw error("byte cipher needs an alphabet of %d characters",
+                        SYMBOLS);
+        }
+        _machine = machine;
+    }
+
+    /** Convert the remaining bytes of SRC into DST, stopping when either
+     *  runs out.  Both buffers' positions advance past the bytes read and
+     *  written.  Either may be direct; heap buffers are converted in
+     *  place in their backing arrays, and direct buffers through a
+     *  scratch array, so that the inner loop is the same in both
+     *  cases.  Converting a byte has exactly the same effect on the
+     *  machine as Machine.convert. */
+    void convert(ByteBuffer src, ByteBuffer dst) {
+        int n = Math.min(src.remaining(), dst.remaining());
+        if (src.hasArray() && dst.hasArray() && !dst.isReadOnly()) {
+            int in = src.arrayOffset() + src.position();
+            int out = dst.arrayOffset() + dst.position();
+            convert(src.array(), in, dst.array(), out, n);
+            src.position(src.position() + n);
+            dst.position(dst.position() + n);
+            return;
+        }
+        while (n > 0) {
+            int k = Math.min(n, _scratch.length);
+            src.get(_scratch, 0, k);
+            convert(_scratch, 0, _scratch, 0, k);
+            dst.put(_scratch, 0, k);
+            n -= k;
+        }
+    }
+
+    /** Convert the N bytes of SRC starting at IN into DST starting at
+     *  OUT.  SRC and DST may be the same array. */
+    void convert(byte[] src, int in, byte[] dst, int out, int n) {
+        Machine m = _machine;
+        Rotor[] rotors = m.usedRotors();
+        int last = rotors.length - 1;
+        Permutation[] wirings = wirings(rotors);
+        Permutation plugboard = m.plugboard();
+        for (int i = 0; i < n; i += 1) {
+            m.step();
+            int c = src[in + i] & BYTE_MASK;
+            if (plugboard != null) {
+                c = plugboard.permute(c);
+            }
+            for (int r = last; r >= 0; r -= 1) {
+                int s = rotors[r].setting();
+                c = (wirings[r].permute((c + s) & BYTE_MASK) - s) & BYTE_MASK;
+            }
+            for (int r = 1; r <= last; r += 1) {
+                int s = rotors[r].setting();
+                c = (wirings[r].invert((c + s) & BYTE_MASK) - s) & BYTE_MASK;
+            }
+            if (plugboard != null) {
+                c = plugboard.invert(c);
+            }
+            dst[out + i] = (byte) c;
+        }
+    }
+
+    /** Return the wirings of ROTORS, reusing those found by the last call
+     *  unless the rotors or their ring settings have changed since. */
+    private Permutation[] wirings(Rotor[] rotors) {
+        boolean same = _wired != null && _wired.length == rotors.length;
+        for (int i = 0; same && i < rotors.length; i += 1) {
+            same = _wired[i] == rotors[i]
+                && _wirings[i] == rotors[i].wiring();
+        }
+        if (!same) {
+            _wired = rotors.clone();
+            _wirings = new Permutation[rotors.length];
+            for (int i = 0; i < rotors.length; i += 1) {
+                _wirings[i] = rotors[i].wiring();
+            }
+        }
+        return _wirings;
+    }
+
+    /** Convert all of IN into OUT. */
+    void convert(FileChannel in, FileChannel out) throws IOException {
+        ByteBuffer src = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        ByteBuffer dst = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        while (in.read(src) >= 0 || src.position() > 0) {
+            src.flip();
+            convert(src, dst);
+            src.compact();
+            dst.flip();
+            while (dst.hasRemaining()) {
+                out.write(dst);
+            }
+            dst.clear();
+        }
+    }
+
+    /** Encrypt or decrypt a file.  ARGS[0] is the configuration file,
+     *  ARGS[1] a settings line (such as "* B III II I AAA"), and ARGS[2]
+     *  and ARGS[3] the input and output files. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 4) {
+                throw error("Usage: java enigma.ByteCipher CONFIG SETTINGS "
+                            + "INPUT OUTPUT");
+            }
+            Scanner config = Main.getInput(args[0]);
+            Main setup = new Main(config);
+            Machine machine = setup.readConfig();
+            config.close();
+            setup.setUp(machine, args[1]);
+            ByteCipher cipher = new ByteCipher(machine);
+            try (FileChannel in = FileChannel.open(Paths.get(args[2]),
+                                                   StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(Paths.get(args[3]),
+                         StandardOpenOption.WRITE,
+                         StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                cipher.convert(in, out);
+            } catch (IOException excp) {
+                throw error("could not convert %s: %s", args[2],
+                            excp.getMessage());
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Number of distinct byte values. */
+    static final int SYMBOLS = 256;
+
+    /** Mask converting a signed byte to its unsigned value, and also
+     *  reducing an integer modulo SYMBOLS. */
+    private static final int BYTE_MASK = 0xFF;
+
+    /** Size of the buffers used to convert files. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Size of the scratch array used for direct buffers. */
+    private static final int SCRATCH_SIZE = 1 << 13;
+
+    /** The machine doing the conversion. */
+    private final Machine _machine;
+
+    /** Scratch space for converting direct buffers. */
+    private final byte[] _scratch = new byte[SCRATCH_SIZE];
+
+    /** The rotors whose wirings are _wirings. */
+    private Rotor[] _wired;
+
+    /** The wirings of the rotors in _wired. */
+    private Permutation[] _wirings;
+
+}
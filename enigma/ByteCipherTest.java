@@ -0,0 +1,95 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ByteCipher class.
+ *  @author A.R. LOEFFLER
+ */
+public class ByteCipherTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return byteMachine with a plugboard and notches such that the
+     *  middle rotors move now and then. */
+    private Machine machine() {
+        Machine m = byteMachine("\u0002\u0080");
+        m.setPlugboard(new Permutation("(\u0000\u00FF) (AZ)", BYTES));
+        return m;
+    }
+
+    /** Return N random bytes. */
+    private byte[] data(int n) {
+        byte[] result = new byte[n];
+        new Random(61).nextBytes(result);
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRandomWirings() {
+        Permutation p = Permutation.random(BYTES, 7, true);
+        assertTrue(p.derangement());
+        for (int i = 0; i < BYTES.size(); i += 1) {
+            assertEquals(i, p.permute(p.permute(i)));
+        }
+        Permutation q = Permutation.random(BYTES, 7, false);
+        int moved = 0;
+        for (String cycle : q.cycles()) {
+            for (int j = 0; j < cycle.length(); j += 1) {
+                char next = cycle.charAt((j + 1) % cycle.length());
+                assertEquals(next, q.permute(cycle.charAt(j)));
+            }
+            moved += cycle.length();
+        }
+        for (int i = 0; i < BYTES.size(); i += 1) {
+            assertEquals(i, q.invert(q.permute(i)));
+            if (q.permute(i) != i) {
+                moved -= 1;
+            }
+        }
+        assertEquals(0, moved);
+    }
+
+    @Test
+    public void checkMatchesMachine() {
+        byte[] plain = data(5000);
+        Machine m = machine();
+        byte[] cipher = new byte[plain.length];
+        new ByteCipher(machine()).convert(plain, 0, cipher, 0,
+                                          plain.length);
+        for (int i = 0; i < plain.length; i += 1) {
+            assertEquals((byte) m.convert(plain[i] & 0xFF), cipher[i]);
+        }
+    }
+
+    @Test
+    public void checkBuffers() {
+        byte[] plain = data(20000);
+        ByteBuffer direct = ByteBuffer.allocateDirect(plain.length);
+        direct.put(plain).flip();
+        ByteBuffer out = ByteBuffer.allocateDirect(plain.length);
+        new ByteCipher(machine()).convert(direct, out);
+        assertFalse(direct.hasRemaining());
+        assertFalse(out.hasRemaining());
+        out.flip();
+
+        ByteBuffer heap = ByteBuffer.allocate(plain.length);
+        ByteCipher decrypt = new ByteCipher(machine());
+        decrypt.convert(out, heap);
+        assertArrayEquals(plain, heap.array());
+    }
+
+}
@@ -0,0 +1,198 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** An Alphabet consisting of an arbitrary set of Unicode characters in a
+ *  given order.  Characters are found by a single table lookup: a dense
+ *  table indexed by character when the characters are small enough for
+ *  that to be cheap, and otherwise a collision-free multiplicative hash.
+ *  @author A.R. LOEFFLER
+ */
+class CharacterSet extends Alphabet {
+
+    /** An alphabet consisting of the characters of CHARS, in order. */
+    CharacterSet(String chars) {
+        if (chars.isEmpty()) {
+            throw error("empty set of characters");
+        }
+        _chars = chars.toCharArray();
+        char max = 0;
+        for (char ch : _chars) {
+            max = (char) Math.max(max, ch);
+        }
+        if (max < DENSE_LIMIT || max < DENSE_RATIO * _chars.length
+            || !hash()) {
+            _dense = new int[max + 1];
+            Arrays.fill(_dense, -1);
+            for (int i = 0; i < _chars.length; i += 1) {
+                if (_dense[_chars[i]] >= 0) {
+                    throw error("duplicate character '%c' in alphabet",
+                                _chars[i]);
+                }
+                _dense[_chars[i]] = i;
+            }
+        }
+    }
+
+    /** Return the alphabet described by DECL, a list of characters and
+     *  ranges of characters such as "A-Za-z0-9.,".  A '-' between two
+     *  characters denotes the range between them; elsewhere it stands for
+     *  itself.  Any character may also be written as a Java-style escape
+     *  \\uXXXX, and a backslash as \\\\. */
+    static CharacterSet parse(String decl) {
+        StringBuilder chars = new StringBuilder();
+        int[] pos = { 0 };
+        while (pos[0] < decl.length()) {
+            char first = nextChar(decl, pos);
+            if (pos[0] + 1 < decl.length() && decl.charAt(pos[0]) == '-') {
+                pos[0] += 1;
+                char last = nextChar(decl, pos);
+                if (first > last) {
+                    throw error("empty range of characters");
+                }
+                for (char ch = first; ch < last; ch += 1) {
+                    chars.append(ch);
+                }
+                chars.append(last);
+            } else {
+                chars.append(first);
+            }
+        }
+        return new CharacterSet(chars.toString());
+    }
+
+    /** Return the (possibly escaped) character at position POS[0] of
+     *  DECL, advancing POS[0] past it. */
+    private static char nextChar(String decl, int[] pos) {
+        char ch = decl.charAt(pos[0]);
+        pos[0] += 1;
+        if (ch != '\\') {
+            return ch;
+        }
+        if (decl.startsWith("\\", pos[0])) {
+            pos[0] += 1;
+            return ch;
+        }
+        if (!decl.startsWith("u", pos[0]) || pos[0] + 5 > decl.length()) {
+            throw error("bad escape in alphabet");
+        }
+        try {
+            ch = (char) Integer.parseInt(decl.substring(pos[0] + 1,
+                                                        pos[0] + 5), 16);
+        } catch (NumberFormatException excp) {
+            throw error("bad escape in alphabet");
+        }
+        pos[0] += 5;
+        return ch;
+    }
+
+    /** Try to find a multiplier for which (ch * multiplier) >>> _shift is
+     *  different for every character in _chars, and if found, fill in
+     *  _keys and _slots accordingly and return true. */
+    private boolean hash() {
+        int bits = 32 - Integer.numberOfLeadingZeros(2 * _chars.length - 1);
+        for (; bits <= MAX_HASH_BITS; bits += 1) {
+            int m = 1 << bits;
+            char[] keys = new char[m];
+            int[] slots = new int[m];
+            int multiplier = HASH_SEED;
+            for (int tries = 0; tries < HASH_TRIES; tries += 1) {
+                multiplier = (multiplier * HASH_STEP + 1) | 1;
+                Arrays.fill(slots, -1);
+                boolean ok = true;
+                for (int i = 0; ok && i < _chars.length; i += 1) {
+                    int h = (_chars[i] * multiplier) >>> (32 - bits);
+                    if (slots[h] >= 0 && keys[h] == _chars[i]) {
+                        throw error("duplicate character '%c' in alphabet",
+                                    _chars[i]);
+                    }
+                    ok = slots[h] < 0;
+                    keys[h] = _chars[i];
+                    slots[h] = i;
+                }
+                if (ok) {
+                    _keys = keys;
+                    _slots = slots;
+                    _multiplier = multiplier;
+                    _shift = 32 - bits;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    int size() {
+        return _chars.length;
+    }
+
+    @Override
+    boolean contains(char ch) {
+        if (_dense != null) {
+            return ch < _dense.length && _dense[ch] >= 0;
+        }
+        int h = (ch * _multiplier) >>> _shift;
+        return _keys[h] == ch && _slots[h] >= 0;
+    }
+
+    @Override
+    char toChar(int index) {
+        return _chars[index];
+    }
+
+    @Override
+    int toInt(char ch) {
+        int result;
+        if (_dense != null) {
+            result = ch < _dense.length ? _dense[ch] : -1;
+        } else {
+            int h = (ch * _multiplier) >>> _shift;
+            result = _keys[h] == ch ? _slots[h] : -1;
+        }
+        if (result < 0) {
+            throw error("character out of range");
+        }
+        return result;
+    }
+
+    /** Largest character for which a dense table is always used. */
+    private static final int DENSE_LIMIT = 4096;
+
+    /** A dense table is also used if its size is less than this multiple
+     *  of the alphabet size. */
+    private static final int DENSE_RATIO = 8;
+
+    /** Largest hash table (as a power of 2) to try before falling back to
+     *  a dense table. */
+    private static final int MAX_HASH_BITS = 18;
+
+    /** Multipliers tried per hash table size. */
+    private static final int HASH_TRIES = 64;
+
+    /** Constants of the sequence of multipliers tried. */
+    private static final int HASH_SEED = 0x9E3779B9, HASH_STEP = 0x2C1B3C6D;
+
+    /** My characters, in order: _chars[i] is toChar(i). */
+    private final char[] _chars;
+
+    /** If not null, _dense[ch] is toInt(ch) for ch in the alphabet and -1
+     *  for other characters less than _dense.length. */
+    private int[] _dense;
+
+    /** For the hashed representation, slot h = (ch * _multiplier) >>>
+     *  _shift holds the character _keys[h], whose index is _slots[h]. */
+    private char[] _keys;
+
+    /** See _keys. */
+    private int[] _slots;
+
+    /** Hash multiplier. */
+    private int _multiplier;
+
+    /** Hash shift. */
+    private int _shift;
+
+}
@@ -0,0 +1,66 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the CharacterSet class.
+ *  @author A.R. LOEFFLER
+ */
+public class CharacterSetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that ALPHA holds exactly the characters of CHARS, in order. */
+    private void checkChars(Alphabet alpha, String chars) {
+        assertEquals(chars.length(), alpha.size());
+        for (int i = 0; i < chars.length(); i += 1) {
+            char ch = chars.charAt(i);
+            assertTrue(alpha.contains(ch));
+            assertEquals(i, alpha.toInt(ch));
+            assertEquals(ch, alpha.toChar(i));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkParse() {
+        checkChars(CharacterSet.parse("A-E0-2.,"), "ABCDE012.,");
+        checkChars(CharacterSet.parse("-AB"), "-AB");
+        checkChars(CharacterSet.parse("AB-"), "AB-");
+        checkChars(CharacterSet.parse("\\u0041-\\u0043\\\\"), "ABC\\");
+        assertFalse(CharacterSet.parse("A-Z").contains('a'));
+    }
+
+    @Test
+    public void checkHashed() {
+        String chars = "A\u4E00\u4E8C\u4E09\uAC00\uFFEF";
+        Alphabet alpha = new CharacterSet(chars);
+        checkChars(alpha, chars);
+        assertFalse(alpha.contains('B'));
+        assertFalse(alpha.contains('\0'));
+        assertFalse(alpha.contains('\u4E01'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDuplicate() {
+        new CharacterSet("ABCA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDuplicateHashed() {
+        new CharacterSet("\u4E00A\u4E00");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkOutOfRange() {
+        CharacterSet.parse("A-Z").toInt('a');
+    }
+
+}
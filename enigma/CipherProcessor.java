@@ -0,0 +1,309 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+
+/** A reactive stage that applies a Machine to chunks of text.  Each
+ *  chunk received (a String, CharBuffer or other CharSequence) is
+ *  converted in order, as by Machine.convert(char[], int, int, char[],
+ *  int), and published as one CharBuffer.  A Settings item instead
+ *  re-configures the machine, as a settings line in Main's input does,
+ *  and publishes nothing.
+ *
+ *  I never request more chunks from upstream than my subscriber has
+ *  requested from me, so nothing is buffered however slow it is.
+ *  Published buffers come from a pool; a subscriber that passes each
+ *  one back to release once it is done with it lets steady-state
+ *  operation run without allocating.  A conversion error cancels the
+ *  upstream subscription and is passed on to the subscriber.  If
+ *  upstream completes or fails before I have a subscriber, that is
+ *  passed on as soon as one subscribes.
+ *  @author A.R. LOEFFLER
+ */
+class CipherProcessor implements Flow.Processor<CharSequence, CharBuffer> {
+
+    /** An item that sets up the machine according to a settings line
+     *  rather than being converted. */
+    static final class Settings implements CharSequence {
+
+        /** An item applying the settings line LINE. */
+        Settings(String line) {
+            _line = line;
+        }
+
+        @Override
+        public int length() {
+            return _line.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return _line.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return _line.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return _line;
+        }
+
+        /** The settings line. */
+        private final String _line;
+    }
+
+    /** A stage that converts chunks with MACHINE, whose rotors must
+     *  already be inserted and set.  Settings items are applied with
+     *  MAIN.setUp. */
+    CipherProcessor(Main main, Machine machine) {
+        _main = main;
+        _machine = machine;
+        _pool = new ArrayBlockingQueue<>(POOL_SIZE);
+    }
+
+    /** Return BUF, which I published, to the pool for reuse.  BUF must
+     *  not be used after this. */
+    void release(CharBuffer buf) {
+        buf.clear();
+        _pool.offer(buf);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super CharBuffer> subscriber) {
+        boolean first, terminated = false;
+        synchronized (this) {
+            first = _subscriber == null;
+            if (first) {
+                _subscriber = subscriber;
+                subscriber.onSubscribe(new Downstream());
+                terminated = _terminated;
+            }
+        }
+        if (terminated) {
+            signal(subscriber, _error);
+        }
+        if (first) {
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(
+            new IllegalStateException("CipherProcessor has a subscriber"));
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        long demand;
+        synchronized (this) {
+            if (_upstream != null || _done) {
+                subscription.cancel();
+                return;
+            }
+            _upstream = subscription;
+            demand = _pendingDemand;
+            _pendingDemand = 0;
+        }
+        if (demand > 0) {
+            requestUpstream(demand);
+        }
+    }
+
+    @Override
+    public void onNext(CharSequence item) {
+        if (_done) {
+            return;
+        }
+        try {
+            if (item instanceof Settings) {
+                _main.setUp(_machine, item.toString());
+                requestUpstream(1);
+                return;
+            }
+            CharBuffer out = convert(item);
+            if (out == null) {
+                requestUpstream(1);
+            } else {
+                _subscriber.onNext(out);
+            }
+        } catch (EnigmaException excp) {
+            Flow.Subscription upstream = _upstream;
+            _done = true;
+            upstream.cancel();
+            _subscriber.onError(excp);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        terminate(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        terminate(null);
+    }
+
+    /** Pass on the error ERROR, or completion if ERROR is null, unless
+     *  I am already done.  If I have no subscriber yet, the signal is
+     *  recorded and passed on when one subscribes. */
+    private void terminate(Throwable error) {
+        Flow.Subscriber<? super CharBuffer> subscriber;
+        synchronized (this) {
+            if (_done) {
+                return;
+            }
+            _done = true;
+            subscriber = _subscriber;
+            if (subscriber == null) {
+                _terminated = true;
+                _error = error;
+                return;
+            }
+        }
+        signal(subscriber, error);
+    }
+
+    /** Send SUBSCRIBER the error ERROR, or completion if ERROR is
+     *  null. */
+    private static void signal(Flow.Subscriber<? super CharBuffer> subscriber,
+                               Throwable error) {
+        if (error == null) {
+            subscriber.onComplete();
+        } else {
+            subscriber.onError(error);
+        }
+    }
+
+    /** Return ITEM converted into a buffer from my pool, or null if
+     *  the conversion is empty. */
+    private CharBuffer convert(CharSequence item) {
+        int n = item.length();
+        char[] src;
+        int from;
+        if (item instanceof CharBuffer && ((CharBuffer) item).hasArray()) {
+            CharBuffer buf = (CharBuffer) item;
+            src = buf.array();
+            from = buf.arrayOffset() + buf.position();
+        } else {
+            if (_scratch.length < n) {
+                _scratch = new char[Math.max(n, 2 * _scratch.length)];
+            }
+            src = _scratch;
+            from = 0;
+            if (item instanceof String) {
+                ((String) item).getChars(0, n, src, 0);
+            } else {
+                for (int i = 0; i < n; i += 1) {
+                    src[i] = item.charAt(i);
+                }
+            }
+        }
+        CharBuffer out = _pool.poll();
+        if (out == null || out.capacity() < n) {
+            out = CharBuffer.allocate(Math.max(n, CHUNK_SIZE));
+        }
+        int k = _machine.convert(src, from, from + n, out.array(), 0);
+        if (k == 0) {
+            release(out);
+            return null;
+        }
+        out.limit(k);
+        return out;
+    }
+
+    /** Request N more items from upstream, or remember them until I am
+     *  subscribed.  Calls are serialized, as Flow.Subscription
+     *  requires. */
+    private synchronized void requestUpstream(long n) {
+        if (_upstream == null) {
+            _pendingDemand = addCapped(_pendingDemand, n);
+        } else if (!_done) {
+            _upstream.request(n);
+        }
+    }
+
+    /** Return A + B, or Long.MAX_VALUE if that overflows. */
+    private static long addCapped(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /** The subscription of my subscriber, which passes its demand
+     *  upstream. */
+    private class Downstream implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                onError(new IllegalArgumentException(
+                    "non-positive request: " + n));
+                cancel();
+                return;
+            }
+            requestUpstream(n);
+        }
+
+        @Override
+        public void cancel() {
+            Flow.Subscription upstream;
+            synchronized (CipherProcessor.this) {
+                _done = true;
+                upstream = _upstream;
+            }
+            if (upstream != null) {
+                upstream.cancel();
+            }
+        }
+    }
+
+    /** Number of buffers kept in the pool. */
+    static final int POOL_SIZE = 16;
+
+    /** Minimum size of a published buffer. */
+    static final int CHUNK_SIZE = 1 << 12;
+
+    /** Applies settings items. */
+    private final Main _main;
+
+    /** The machine doing the conversion. */
+    private final Machine _machine;
+
+    /** Buffers available for publishing. */
+    private final BlockingQueue<CharBuffer> _pool;
+
+    /** Holds chunks that are not array-backed while they are
+     *  converted. */
+    private char[] _scratch = new char[CHUNK_SIZE];
+
+    /** My subscriber, or null if none yet. */
+    private Flow.Subscriber<? super CharBuffer> _subscriber;
+
+    /** The upstream subscription, or null if not yet subscribed. */
+    private Flow.Subscription _upstream;
+
+    /** Demand requested before I was subscribed upstream. */
+    private long _pendingDemand;
+
+    /** True once I have completed, failed or been cancelled. */
+    private volatile boolean _done;
+
+    /** True iff upstream completed or failed before I had a
+     *  subscriber. */
+    private boolean _terminated;
+
+    /** The error with which upstream failed before I had a subscriber,
+     *  or null. */
+    private Throwable _error;
+
+}
@@ -0,0 +1,243 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CipherProcessor class.
+ *  @author A.R. LOEFFLER
+ */
+public class CipherProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Name of the configuration used in these tests. */
+    private static final String CONFIG = "testing/correct/default.conf";
+
+    /** Settings used by most tests. */
+    private static final String SETTINGS = "* B BETA III IV I AXLE (YF) (ZH)";
+
+    /** A publisher of a fixed list of items, which delivers them
+     *  synchronously as they are requested and records the total
+     *  demand. */
+    private static class ListPublisher
+        implements Flow.Publisher<CharSequence> {
+
+        /** A publisher of ITEMS. */
+        ListPublisher(List<CharSequence> items) {
+            _items = items;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super CharSequence> sub) {
+            sub.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    requested += n;
+                    if (_delivering) {
+                        return;
+                    }
+                    _delivering = true;
+                    while (!cancelled && _next < _items.size()
+                           && _next < requested) {
+                        _next += 1;
+                        sub.onNext(_items.get(_next - 1));
+                    }
+                    _delivering = false;
+                    if (_next == _items.size() && !cancelled
+                        && !_completed) {
+                        _completed = true;
+                        sub.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+
+        /** Total number of items requested. */
+        private long requested;
+
+        /** True once cancelled. */
+        private boolean cancelled;
+
+        /** The items. */
+        private final List<CharSequence> _items;
+
+        /** Index of the next item to deliver. */
+        private int _next;
+
+        /** True while in the delivery loop. */
+        private boolean _delivering;
+
+        /** True once completed. */
+        private boolean _completed;
+    }
+
+    /** A subscriber that collects what it receives, requesting one item
+     *  initially and one more after each of the first LIMIT - 1 it
+     *  receives. */
+    private static class Collector implements Flow.Subscriber<CharBuffer> {
+
+        /** A collector that takes at most LIMIT items from PROCESSOR,
+         *  releasing each to it. */
+        Collector(CipherProcessor processor, int limit) {
+            _processor = processor;
+            _limit = limit;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(CharBuffer item) {
+            text.append(item);
+            items += 1;
+            _processor.release(item);
+            if (items < _limit) {
+                _subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable excp) {
+            error = excp;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+
+        /** All text received. */
+        private final StringBuilder text = new StringBuilder();
+
+        /** Number of items received. */
+        private int items;
+
+        /** Error received, if any. */
+        private Throwable error;
+
+        /** True iff completed. */
+        private boolean complete;
+
+        /** The subscription. */
+        private Flow.Subscription _subscription;
+
+        /** The processor. */
+        private final CipherProcessor _processor;
+
+        /** Maximum number of items to request. */
+        private final int _limit;
+    }
+
+    /** Return a processor and machine from CONFIG set up according to
+     *  SETTINGS. */
+    private CipherProcessor processor() {
+        Main config = new Main(Main.getInput(CONFIG));
+        Machine m = config.readConfig();
+        config.setUp(m, SETTINGS);
+        return new CipherProcessor(config, m);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkConversionAndSettings() {
+        String other = "* B BETA I II III AAAA (AB)";
+        List<CharSequence> items = new ArrayList<>();
+        items.add("HELLO WORLD");
+        items.add(CharBuffer.wrap("xxFROMHIS".toCharArray(), 2, 7));
+        items.add(new StringBuilder("   "));
+        items.add(new CipherProcessor.Settings(other));
+        items.add("HELLOWORLD");
+        CipherProcessor processor = processor();
+        Collector collector = new Collector(processor, Integer.MAX_VALUE);
+        processor.subscribe(collector);
+        new ListPublisher(items).subscribe(processor);
+        assertNull(collector.error);
+        assertTrue(collector.complete);
+        assertEquals(3, collector.items);
+        assertEquals(machine(CONFIG, SETTINGS).convert("HELLOWORLDFROMHIS")
+                     + machine(CONFIG, other).convert("HELLOWORLD"),
+                     collector.text.toString());
+    }
+
+    @Test
+    public void checkBackpressure() {
+        List<CharSequence> items = new ArrayList<>();
+        for (int i = 0; i < 100; i += 1) {
+            items.add("ABCDEFGHIJ");
+        }
+        CipherProcessor processor = processor();
+        Collector collector = new Collector(processor, 3);
+        processor.subscribe(collector);
+        ListPublisher publisher = new ListPublisher(items);
+        publisher.subscribe(processor);
+        assertEquals(3, collector.items);
+        assertEquals(3, publisher.requested);
+        assertFalse(collector.complete);
+    }
+
+    @Test
+    public void checkErrorCancelsUpstream() {
+        List<CharSequence> items = new ArrayList<>();
+        items.add("HELLO");
+        items.add("HELLO, WORLD");
+        items.add("HELLO");
+        CipherProcessor processor = processor();
+        Collector collector = new Collector(processor, Integer.MAX_VALUE);
+        processor.subscribe(collector);
+        ListPublisher publisher = new ListPublisher(items);
+        publisher.subscribe(processor);
+        assertEquals(1, collector.items);
+        assertTrue(collector.error instanceof EnigmaException);
+        assertTrue(publisher.cancelled);
+        assertFalse(collector.complete);
+    }
+
+    @Test
+    public void checkTerminationBeforeSubscriber() {
+        CipherProcessor completed = processor();
+        completed.onComplete();
+        completed.onError(new IllegalStateException("late"));
+        Collector collector = new Collector(completed, Integer.MAX_VALUE);
+        completed.subscribe(collector);
+        assertTrue(collector.complete);
+        assertNull(collector.error);
+        assertEquals(0, collector.items);
+
+        CipherProcessor failed = processor();
+        IllegalStateException excp = new IllegalStateException("failed");
+        failed.onError(excp);
+        failed.onComplete();
+        collector = new Collector(failed, Integer.MAX_VALUE);
+        failed.subscribe(collector);
+        assertEquals(excp, collector.error);
+        assertFalse(collector.complete);
+
+        Collector second = new Collector(failed, Integer.MAX_VALUE);
+        failed.subscribe(second);
+        assertEquals("CipherProcessor has a subscriber",
+                     second.error.getMessage());
+    }
+
+}
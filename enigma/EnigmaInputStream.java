@@ -0,0 +1,76 @@
+package enigma;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** An InputStream that converts the bytes read from another InputStream
+ *  with a ByteCipher.  Bytes are converted in bulk, in place in the
+ *  caller's buffer, and the machine's state carries over from one read
+ *  to the next.  Reading allocates nothing.
+ *  @author A.R. LOEFFLER
+ */
+class EnigmaInputStream extends FilterInputStream {
+
+    /** A stream that converts the bytes of IN with MACHINE, whose rotors
+     *  must already be inserted and set, and whose alphabet must have
+     *  ByteCipher.SYMBOLS characters. */
+    EnigmaInputStream(InputStream in, Machine machine) {
+        super(in);
+        _cipher = new ByteCipher(machine);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            _cipher.convert(b, off, b, off, n);
+        }
+        return n;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(_one, 0, 1) <= 0 ? -1 : Byte.toUnsignedInt(_one[0]);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n) {
+            int k = read(_skip, 0, (int) Math.min(n - skipped, _skip.length));
+            if (k < 0) {
+                break;
+            }
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("reset not supported");
+    }
+
+    /** Size of the buffer used by skip. */
+    private static final int SKIP_SIZE = 1 << 10;
+
+    /** The cipher doing the conversion. */
+    private final ByteCipher _cipher;
+
+    /** Buffer for single-byte reads. */
+    private final byte[] _one = new byte[1];
+
+    /** Buffer for skipped bytes. */
+    private final byte[] _skip = new byte[SKIP_SIZE];
+
+}
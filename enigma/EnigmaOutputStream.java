@@ -0,0 +1,51 @@
+package enigma;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** An OutputStream that converts bytes with a ByteCipher before writing
+ *  them to another OutputStream.  Bytes are converted in bulk through a
+ *  buffer of my own, so the caller's data is never modified, and the
+ *  machine's state carries over from one write to the next.  Writing
+ *  allocates nothing.
+ *  @author A.R. LOEFFLER
+ */
+class EnigmaOutputStream extends FilterOutputStream {
+
+    /** A stream that converts bytes with MACHINE, whose rotors must
+     *  already be inserted and set, and whose alphabet must have
+     *  ByteCipher.SYMBOLS characters, and writes them to OUT. */
+    EnigmaOutputStream(OutputStream out, Machine machine) {
+        super(out);
+        _cipher = new ByteCipher(machine);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int k = Math.min(len, _buffer.length);
+            _cipher.convert(b, off, _buffer, 0, k);
+            out.write(_buffer, 0, k);
+            off += k;
+            len -= k;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        _buffer[0] = (byte) b;
+        _cipher.convert(_buffer, 0, _buffer, 0, 1);
+        out.write(_buffer, 0, 1);
+    }
+
+    /** Size of my conversion buffer. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** The cipher doing the conversion. */
+    private final ByteCipher _cipher;
+
+    /** Buffer holding converted bytes. */
+    private final byte[] _buffer = new byte[BUFFER_SIZE];
+
+}
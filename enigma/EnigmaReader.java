@@ -0,0 +1,90 @@
+package enigma;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/** A Reader that converts the characters read from another Reader with
+ *  a Machine.  Characters are converted in bulk, in place in the
+ *  caller's buffer, as by Machine.convert(char[], int, int, char[], int),
+ *  so characters outside the machine's alphabet are handled by its
+ *  passthrough policy (an EnigmaException if it rejects them).  The
+ *  machine's state carries over from one read to the next, and reading
+ *  allocates nothing.
+ *  @author A.R. LOEFFLER
+ */
+class EnigmaReader extends FilterReader {
+
+    /** A Reader that converts the characters of IN with MACHINE, whose
+     *  rotors must already be inserted and set. */
+    EnigmaReader(Reader in, Machine machine) {
+        super(in);
+        _machine = machine;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            int n = in.read(cbuf, off, len);
+            if (n <= 0) {
+                return n;
+            }
+            n = _machine.convert(cbuf, off, off + n, cbuf, off);
+            if (n > 0) {
+                return n;
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(_one, 0, 1) < 0 ? -1 : _one[0];
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n < 0) {
+            throw new IllegalArgumentException("negative skip");
+        }
+        long skipped = 0;
+        while (skipped < n) {
+            int k = read(_skip, 0, (int) Math.min(n - skipped, _skip.length));
+            if (k < 0) {
+                break;
+            }
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset not supported");
+    }
+
+    /** Size of the buffer used by skip. */
+    private static final int SKIP_SIZE = 1 << 10;
+
+    /** The machine doing the conversion. */
+    private final Machine _machine;
+
+    /** Buffer for single-character reads. */
+    private final char[] _one = new char[1];
+
+    /** Buffer for skipped characters. */
+    private final char[] _skip = new char[SKIP_SIZE];
+
+}
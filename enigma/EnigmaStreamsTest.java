@@ -0,0 +1,137 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaReader, EnigmaWriter,
+ *  EnigmaInputStream and EnigmaOutputStream classes.
+ *  @author A.R. LOEFFLER
+ */
+public class EnigmaStreamsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine over the letters. */
+    private Machine letters() {
+        return machine("testing/correct/default.conf",
+                       "* B BETA III IV I AXLE (YF) (ZH)");
+    }
+
+    /** Return byteMachine with notches at two positions of the fast
+     *  rotor. */
+    private Machine bytes() {
+        return byteMachine("\u0000\u0080");
+    }
+
+    /** Return a message of N random letters and blanks. */
+    private String message(int n) {
+        Random random = new Random(40);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            int k = random.nextInt(27);
+            result.append(k == 26 ? ' ' : (char) ('A' + k));
+        }
+        return result.toString();
+    }
+
+    /** Return N random bytes. */
+    private byte[] data(int n) {
+        byte[] result = new byte[n];
+        new Random(40).nextBytes(result);
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkReader() throws IOException {
+        String msg = message(20000);
+        String expected = letters().convert(msg);
+        Reader in = new EnigmaReader(new StringReader(msg), letters());
+        StringBuilder result = new StringBuilder();
+        char[] buf = new char[37];
+        result.append((char) in.read());
+        for (int n = in.read(buf, 5, 30); n >= 0;
+             n = in.read(buf, 5, 30)) {
+            result.append(buf, 5, n);
+        }
+        assertEquals(expected, result.toString());
+    }
+
+    @Test
+    public void checkReaderSkip() throws IOException {
+        String msg = message(1000);
+        String expected = letters().convert(msg);
+        Reader in = new EnigmaReader(new StringReader(msg), letters());
+        assertEquals(100, in.skip(100));
+        char[] buf = new char[10];
+        for (int k = 0; k < buf.length; ) {
+            k += in.read(buf, k, buf.length - k);
+        }
+        assertEquals(expected.substring(100, 110), new String(buf));
+    }
+
+    @Test
+    public void checkWriter() throws IOException {
+        String msg = message(20000);
+        String expected = letters().convert(msg);
+        StringWriter result = new StringWriter();
+        char[] chars = msg.toCharArray();
+        try (Writer out = new EnigmaWriter(result, letters())) {
+            out.write(chars[0]);
+            out.write(chars, 1, 9990);
+            out.write(msg, 9991, msg.length() - 9991);
+        }
+        assertEquals(expected, result.toString());
+        assertArrayEquals(msg.toCharArray(), chars);
+    }
+
+    @Test
+    public void checkStreamsInvert() throws IOException {
+        byte[] plain = data(30000);
+        ByteArrayOutputStream cipher = new ByteArrayOutputStream();
+        try (OutputStream out = new EnigmaOutputStream(cipher, bytes())) {
+            out.write(plain[0]);
+            out.write(plain, 1, plain.length - 1);
+        }
+        byte[] expected = plain.clone();
+        new ByteCipher(bytes()).convert(expected, 0, expected, 0,
+                                        expected.length);
+        assertArrayEquals(expected, cipher.toByteArray());
+        InputStream in = new EnigmaInputStream(
+            new ByteArrayInputStream(cipher.toByteArray()), bytes());
+        byte[] result = new byte[plain.length];
+        result[0] = (byte) in.read();
+        assertEquals(99, in.skip(99));
+        int k = 100;
+        while (k < result.length) {
+            k += in.read(result, k, Math.min(1000, result.length - k));
+        }
+        assertEquals(-1, in.read());
+        assertEquals(plain.length, k);
+        assertEquals(plain[0], result[0]);
+        for (int i = 100; i < plain.length; i += 1) {
+            assertEquals(plain[i], result[i]);
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package enigma;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/** A Writer that converts characters with a Machine before writing them
+ *  to another Writer.  Characters are converted in bulk through a buffer
+ *  of my own, so the caller's data is never modified, as by
+ *  Machine.convert(char[], int, int, char[], int): characters outside
+ *  the machine's alphabet are handled by its passthrough policy (an
+ *  EnigmaException if it rejects them).  The machine's state carries
+ *  over from one write to the next, and writing allocates nothing.
+ *  @author A.R. LOEFFLER
+ */
+class EnigmaWriter extends FilterWriter {
+
+    /** A Writer that converts characters with MACHINE, whose rotors must
+     *  already be inserted and set, and writes them to OUT. */
+    EnigmaWriter(Writer out, Machine machine) {
+        super(out);
+        _machine = machine;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            int k = Math.min(len, _buffer.length);
+            int n = _machine.convert(cbuf, off, off + k, _buffer, 0);
+            out.write(_buffer, 0, n);
+            off += k;
+            len -= k;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            int k = Math.min(len, _buffer.length);
+            str.getChars(off, off + k, _buffer, 0);
+            int n = _machine.convert(_buffer, 0, k, _buffer, 0);
+            out.write(_buffer, 0, n);
+            off += k;
+            len -= k;
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        _buffer[0] = (char) c;
+        int n = _machine.convert(_buffer, 0, 1, _buffer, 0);
+        out.write(_buffer, 0, n);
+    }
+
+    /** Size of my conversion buffer. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** The machine doing the conversion. */
+    private final Machine _machine;
+
+    /** Buffer holding converted characters. */
+    private final char[] _buffer = new char[BUFFER_SIZE];
+
+}
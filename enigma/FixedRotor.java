@@ -14,5 +14,13 @@ class FixedRotor extends Rotor {
 
     }
 
+    @Override
+    Rotor copy() {
+        Rotor result = new FixedRotor(name(), permutation());
+        result.set(setting());
+        result.shareRepresentation(this);
+        return result;
+    }
+
 
 }
@@ -0,0 +1,145 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** An enciphered document that can be edited in place.  The document
+ *  is kept only as ciphertext, together with its key: the machine state
+ *  in which its first character was converted.  Replacing a range of
+ *  plaintext re-enciphers just that range, starting from a machine
+ *  fast-forwarded to it (see Machine.skip), plus, if the number of
+ *  keystrokes in the range changes, the text after it, which is
+ *  deciphered at its old position and enciphered at its new one in a
+ *  single pass.  The result is always the same as enciphering the whole
+ *  edited plaintext from the key.
+ *
+ *  Characters outside the alphabet must convert one-for-one, as with
+ *  the PRESERVE policy, or not appear in the document; replacements
+ *  may contain characters that the key's policy drops.
+ *  @author A.R. LOEFFLER
+ */
+class IncrementalCipher {
+
+    /** A document whose ciphertext is the first LENGTH characters of
+     *  TEXT (which I take over), enciphered starting from KEY's current
+     *  state.  I keep a copy of KEY. */
+    IncrementalCipher(Machine key, char[] text, int length) {
+        if (length < 0 || length > text.length) {
+            throw error("bad document length");
+        }
+        _key = key.copy();
+        _text = text;
+        _length = length;
+    }
+
+    /** An empty document with key KEY. */
+    IncrementalCipher(Machine key) {
+        this(key, new char[INITIAL_SIZE], 0);
+    }
+
+    /** Return my length in characters. */
+    int length() {
+        return _length;
+    }
+
+    /** Return my ciphertext. */
+    String text() {
+        return new String(_text, 0, _length);
+    }
+
+    /** Return my ciphertext characters [FROM .. TO-1]. */
+    String text(int from, int to) {
+        checkRange(from, to);
+        return new String(_text, from, to - from);
+    }
+
+    /** Replace the plaintext of my characters [FROM .. TO-1] with
+     *  REPLACEMENT, re-enciphering what that changes.  Returns the index
+     *  just after the last ciphertext character changed. */
+    int replace(int from, int to, CharSequence replacement) {
+        checkRange(from, to);
+        int n = replacement.length();
+        if (_scratch.length < n) {
+            _scratch = new char[Math.max(n, 2 * _scratch.length)];
+        }
+        for (int i = 0; i < n; i += 1) {
+            _scratch[i] = replacement.charAt(i);
+        }
+        long before = keystrokes(0, from);
+        long oldKeys = keystrokes(from, to);
+        Machine m = _key.copy();
+        m.skip(before);
+        n = m.convert(_scratch, 0, n, _scratch, 0);
+        long newKeys = keystrokes(_scratch, 0, n);
+
+        int end = _length - (to - from) + n;
+        if (end > _text.length) {
+            _text = Arrays.copyOf(_text, Math.max(end, 2 * _text.length));
+        }
+        System.arraycopy(_text, to, _text, from + n, _length - to);
+        System.arraycopy(_scratch, 0, _text, from, n);
+        _length = end;
+        if (newKeys == oldKeys) {
+            return from + n;
+        }
+
+        Machine old = _key.copy();
+        old.skip(before + oldKeys);
+        for (int i = from + n; i < end; i += CHUNK_SIZE) {
+            int k = Math.min(end, i + CHUNK_SIZE);
+            if (old.convert(_text, i, k, _text, i) != k - i
+                || m.convert(_text, i, k, _text, i) != k - i) {
+                throw error("document has characters that are not "
+                            + "converted one-for-one");
+            }
+        }
+        return end;
+    }
+
+    /** Return the number of keystrokes (characters of the alphabet)
+     *  among my characters [FROM .. TO-1]. */
+    private long keystrokes(int from, int to) {
+        return keystrokes(_text, from, to);
+    }
+
+    /** Return the number of characters of my key's alphabet among
+     *  TEXT[FROM .. TO-1].  Converted characters are always in the
+     *  alphabet and preserved ones never are. */
+    private long keystrokes(char[] text, int from, int to) {
+        long result = 0;
+        for (int i = from; i < to; i += 1) {
+            if (_key.member(text[i])) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Check that [FROM .. TO-1] is a range of my characters. */
+    private void checkRange(int from, int to) {
+        if (from < 0 || from > to || to > _length) {
+            throw error("bad range: %d .. %d", from, to);
+        }
+    }
+
+    /** Size of the pieces in which text after an edit is
+     *  re-enciphered. */
+    private static final int CHUNK_SIZE = 1 << 12;
+
+    /** Initial capacity of an empty document. */
+    private static final int INITIAL_SIZE = 256;
+
+    /** The machine in the state used for my first character. */
+    private final Machine _key;
+
+    /** My ciphertext, in _text[0 .. _length-1]. */
+    private char[] _text;
+
+    /** My length. */
+    private int _length;
+
+    /** Holds replacements while they are enciphered. */
+    private char[] _scratch = new char[INITIAL_SIZE];
+
+}
@@ -0,0 +1,108 @@
+package enigma;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the IncrementalCipher class.
+ *  @author A.R. LOEFFLER
+ */
+public class IncrementalCipherTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Name of the configuration used in these tests. */
+    private static final String CONFIG = "testing/correct/default.conf";
+
+    /** The key used in these tests. */
+    private static final String KEY = "* C GAMMA VI VII VIII ZZLY BCDE (AQ)";
+
+    /** Return a machine from CONFIG set up according to KEY, with
+     *  passthrough policy POLICY. */
+    private Machine key(Passthrough policy) {
+        Machine m = machine(CONFIG, KEY);
+        m.setPassthrough(policy);
+        return m;
+    }
+
+    /** Return a random string of length N drawn from CHARS. */
+    private String random(Random r, int n, String chars) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            result.append(chars.charAt(r.nextInt(chars.length())));
+        }
+        return result.toString();
+    }
+
+    /** Apply random edits to a document of plaintext drawn from CHARS,
+     *  which must convert one-for-one under POLICY, checking the result
+     *  against enciphering all of the edited plaintext each time. */
+    private void checkEdits(Passthrough policy, String chars) {
+        Random r = new Random(45);
+        StringBuilder plain = new StringBuilder(random(r, 5000, chars));
+        IncrementalCipher doc = new IncrementalCipher(
+            key(policy), key(policy).convert(plain.toString()).toCharArray(),
+            plain.length());
+        for (int t = 0; t < 200; t += 1) {
+            int from = r.nextInt(plain.length() + 1);
+            int to = Math.min(plain.length(), from + r.nextInt(40));
+            int n = t % 3 == 0 ? to - from : r.nextInt(40);
+            String text = random(r, n, chars);
+            plain.replace(from, to, text);
+            doc.replace(from, to, text);
+            assertEquals(key(policy).convert(plain.toString()), doc.text());
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkEqualLengthTouchesOnlyRange() {
+        String plain = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG".repeat(10);
+        String cipher = key(Passthrough.REJECT).convert(plain);
+        IncrementalCipher doc = new IncrementalCipher(
+            key(Passthrough.REJECT), cipher.toCharArray(), cipher.length());
+        assertEquals(105, doc.replace(100, 105, "HELLO"));
+        String edited = plain.substring(0, 100) + "HELLO"
+            + plain.substring(105);
+        String expected = key(Passthrough.REJECT).convert(edited);
+        assertEquals(expected, doc.text());
+        assertEquals(cipher.substring(105), doc.text(105, doc.length()));
+    }
+
+    @Test
+    public void checkInsertAndDelete() {
+        IncrementalCipher doc = new IncrementalCipher(key(Passthrough.REJECT));
+        doc.replace(0, 0, "Attack at dawn");
+        assertEquals(key(Passthrough.REJECT).convert("ATTACKATDAWN"),
+                     doc.text());
+        assertEquals(16, doc.replace(6, 8, "BEFORE"));
+        assertEquals(key(Passthrough.REJECT).convert("ATTACKBEFOREDAWN"),
+                     doc.text());
+        doc.replace(0, 6, "");
+        assertEquals(key(Passthrough.REJECT).convert("BEFOREDAWN"),
+                     doc.text());
+    }
+
+    @Test
+    public void checkRandomEdits() {
+        checkEdits(Passthrough.REJECT, "ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        checkEdits(Passthrough.PRESERVE, "ABCDEFGHIJKLMNOPQRSTUVWXYZ .,");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkRejectedReplacement() {
+        IncrementalCipher doc = new IncrementalCipher(key(Passthrough.REJECT));
+        doc.replace(0, 0, "HELLO, WORLD");
+    }
+
+}
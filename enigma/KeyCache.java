@@ -0,0 +1,191 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded in-memory cache of recently used keys, for input in which
+ *  the same settings lines recur across many short messages.  Keys are
+ *  settings lines with their white space normalized.  Each holds the
+ *  machine state its line sets up (rotors, positions, rings and any
+ *  plugboard), so that the line need not be parsed and checked again,
+ *  and a keystream table (see KeystreamTable) of its first keystrokes,
+ *  so that messages under it are converted by table lookups.
+ *
+ *  A key's table is only built once the key has been found a few times
+ *  (BUILD_AFTER): building it costs about as much as converting one
+ *  keystroke for every character of the alphabet, which is wasted on
+ *  keys that are seldom reused or that are forgotten again soon because
+ *  the cache is too small for the keys in use.  The table also depends
+ *  on the plugboard in force, which a line without one leaves as it
+ *  was, and is rebuilt if that changes.  When full, the cache forgets
+ *  the least recently used key.  Its methods may be called from several
+ *  threads.
+ *  @author A.R. LOEFFLER
+ */
+class KeyCache {
+
+    /** A cache of at most ENTRIES keys, each with a table of its first
+     *  STEPS keystrokes, reporting hits and misses to STATS if it is not
+     *  null. */
+    KeyCache(int entries, int steps, Stats stats) {
+        if (entries <= 0 || steps <= 0) {
+            throw error("bad key cache size");
+        }
+        _steps = steps;
+        _stats = stats;
+        _keys = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Key> e) {
+                return size() > entries;
+            }
+        };
+    }
+
+    /** If SETTINGS is a settings line I hold, set up machine M (which
+     *  must have the configuration of the machines given to add) as it
+     *  sets it up, using my keystream table for it, and return true.
+     *  Otherwise, return false. */
+    synchronized boolean apply(String settings, Machine m) {
+        Key key = _keys.get(normalize(settings));
+        if (key == null) {
+            _misses += 1;
+            if (_stats != null) {
+                _stats.addKeyCacheMiss();
+            }
+            return false;
+        }
+        _hits += 1;
+        if (_stats != null) {
+            _stats.addKeyCacheHit();
+        }
+        Rotor[] rotors = m.usedRotors();
+        for (int i = 0; i < key.slots.length; i += 1) {
+            m.insertRotor(i, key.slots[i]);
+        }
+        for (int i = 1; i < key.slots.length; i += 1) {
+            rotors[i].setRing(key.rings[i]);
+            rotors[i].set(key.positions[i]);
+        }
+        if (key.plugboard != null) {
+            m.setPlugboard(key.plugboard);
+        }
+        key.hits += 1;
+        if (key.hits < BUILD_AFTER) {
+            return true;
+        }
+        if (key.table == null || !same(key.tablePlugboard, m.plugboard())) {
+            key.table = new KeystreamTable(
+                ByteBuffer.wrap(KeystreamTable.prefix(m, _steps)));
+            key.tablePlugboard = m.plugboard();
+        }
+        m.setKeystream(key.table);
+        return true;
+    }
+
+    /** Record that machine M has just been set up from the settings line
+     *  SETTINGS, which set its plugboard iff PLUGBOARD. */
+    synchronized void add(String settings, Machine m, boolean plugboard) {
+        Rotor[] rotors = m.usedRotors();
+        Key key = new Key(rotors.length);
+        for (int i = 0; i < rotors.length; i += 1) {
+            key.slots[i] = m.allRotors().indexOf(rotors[i]);
+            key.rings[i] = rotors[i].ring();
+            key.positions[i] = rotors[i].setting();
+        }
+        key.plugboard = plugboard ? m.plugboard() : null;
+        _keys.put(normalize(settings), key);
+    }
+
+    /** Return the number of calls of apply() that found their key. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of calls of apply() that did not. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the number of keys I hold. */
+    synchronized int size() {
+        return _keys.size();
+    }
+
+    /** A key: the machine state set up by a settings line. */
+    private static class Key {
+        /** A key for a machine with NUMROTORS slots. */
+        Key(int numRotors) {
+            slots = new int[numRotors];
+            rings = new int[numRotors];
+            positions = new int[numRotors];
+        }
+
+        /** Indices in the machine's list of all rotors of the rotors in
+         *  each slot, and their ring settings and positions. */
+        private final int[] slots, rings, positions;
+
+        /** Plugboard set by the line, or null if it sets none. */
+        private Permutation plugboard;
+
+        /** Keystream table of my first keystrokes, or null if not yet
+         *  built. */
+        private KeystreamTable table;
+
+        /** Plugboard in force when table was built. */
+        private Permutation tablePlugboard;
+
+        /** Number of times I have been found. */
+        private int hits;
+    }
+
+    /** Return SETTINGS with its white space normalized. */
+    private static String normalize(String settings) {
+        return String.join(" ", settings.trim().split("\\s+"));
+    }
+
+    /** Return true iff plugboards A and B (either possibly null) are the
+     *  same permutation. */
+    private static boolean same(Permutation a, Permutation b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        for (int c = 0; c < a.size(); c += 1) {
+            if (a.permute(c) != b.permute(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Default number of keystrokes in each table. */
+    static final int DEFAULT_STEPS = 256;
+
+    /** Number of times a key must be found before its table is
+     *  built. */
+    private static final int BUILD_AFTER = 3;
+
+    /** Initial capacity of _keys. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Load factor of _keys. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** Number of keystrokes in each table. */
+    private final int _steps;
+
+    /** Where to report hits and misses, or null. */
+    private final Stats _stats;
+
+    /** Keys by normalized settings line, least recently used first. */
+    private final LinkedHashMap<String, Key> _keys;
+
+    /** Numbers of hits and misses. */
+    private long _hits, _misses;
+
+}
@@ -0,0 +1,136 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the KeyCache class.
+ *  @author A.R. LOEFFLER
+ */
+public class KeyCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Name of the configuration used in these tests. */
+    private static final String CONFIG = "testing/correct/default.conf";
+
+    /** Keys used in these tests, some without plugboards (which keep
+     *  the plugboard of the key before them). */
+    private static final String[] KEYS = {
+        "* B BETA I II III AAAA", "* C GAMMA VI VII VIII ZZLY BCDE (AQ)",
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "*   B BETA III IV I AXLE", "* B GAMMA V II VII XYZW QQQQ",
+    };
+
+    /** Return a temporary file name with suffix SUFFIX. */
+    private String temp(String suffix) throws IOException {
+        Path path = Files.createTempFile("enigma", suffix);
+        path.toFile().deleteOnExit();
+        return path.toString();
+    }
+
+    /** Return the name of a file of input for CONFIG in which the keys
+     *  in KEYS recur in random order, each followed by a few short
+     *  messages. */
+    private String input() throws IOException {
+        Random r = new Random(49);
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; k < 400; k += 1) {
+            text.append(KEYS[r.nextInt(KEYS.length)]).append('\n');
+            for (int i = r.nextInt(4); i >= 0; i -= 1) {
+                for (int j = r.nextInt(120); j >= 0; j -= 1) {
+                    text.append("ABCDEFGHIJKLMNOPQRSTUVWXYZ "
+                                .charAt(r.nextInt(27)));
+                }
+                text.append('\n');
+            }
+        }
+        String name = temp(".inp");
+        Files.write(Path.of(name), text.toString().getBytes());
+        return name;
+    }
+
+    /** Return the contents of the file named NAME. */
+    private byte[] read(String name) throws IOException {
+        return Files.readAllBytes(Path.of(name));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkCachedRunMatches() throws IOException {
+        String input = input();
+        String expected = temp(".out");
+        Main.main(CONFIG, input, expected);
+        for (String size : new String[] { "1", "3", "64" }) {
+            for (String steps : new String[] { "1", "50", "256" }) {
+                String output = temp(".out");
+                Main.main("--key-cache=" + size, "--key-cache-steps=" + steps,
+                          CONFIG, input, output);
+                assertTrue(size + " " + steps,
+                           Arrays.equals(read(expected), read(output)));
+            }
+        }
+    }
+
+    @Test
+    public void checkHitsAndMisses() {
+        Main config = new Main(Main.getInput(CONFIG));
+        Machine m = config.readConfig();
+        Stats stats = new Stats();
+        KeyCache cache = new KeyCache(2, 100, stats);
+        String[] lines = {
+            KEYS[0], KEYS[1], " " + KEYS[0] + "  ", KEYS[2], KEYS[1],
+            KEYS[0], KEYS[0], KEYS[0],
+        };
+        boolean[] hits = {
+            false, false, true, false, false, false, true, true,
+        };
+        for (int i = 0; i < lines.length; i += 1) {
+            boolean hit = cache.apply(lines[i], m);
+            assertEquals("line " + i, hits[i], hit);
+            if (!hit) {
+                Permutation plugboard = m.plugboard();
+                config.setUp(m, lines[i]);
+                cache.add(lines[i], m, m.plugboard() != plugboard);
+            }
+            assertTrue(cache.size() <= 2);
+        }
+        assertEquals(3, cache.hits());
+        assertEquals(5, cache.misses());
+        assertEquals(3, stats.getKeyCacheHits());
+        assertEquals(5, stats.getKeyCacheMisses());
+    }
+
+    @Test
+    public void checkInheritedPlugboard() {
+        Main config = new Main(Main.getInput(CONFIG));
+        Main other = new Main(Main.getInput(CONFIG));
+        Machine m = config.readConfig(), plain = other.readConfig();
+        KeyCache cache = new KeyCache(8, 40, null);
+        String msg = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        for (int i = 0; i < 12; i += 1) {
+            String line = i % 2 == 0 ? KEYS[3]
+                : i % 4 == 1 ? KEYS[1] : KEYS[2];
+            if (!cache.apply(line, m)) {
+                Permutation plugboard = m.plugboard();
+                config.setUp(m, line);
+                cache.add(line, m, m.plugboard() != plugboard);
+            }
+            other.setUp(plain, line);
+            assertEquals("line " + i, plain.convert(msg), m.convert(msg));
+        }
+    }
+
+}
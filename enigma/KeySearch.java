@@ -0,0 +1,465 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running search of a range of a KeySpace for the keys whose
+ *  decryptions of a ciphertext score best under a set of n-gram tables.
+ *
+ *  The range is cut into fixed-size chunks that worker threads claim one
+ *  at a time.  A chunk's results are merged into the shared best keys in
+ *  the same step that marks it done, so the set of done chunks and the
+ *  best keys always agree.  If a checkpoint file is given, that state and
+ *  the throughput counters are written to it periodically (to a temporary
+ *  file that is then renamed over it), and a search started with an
+ *  existing checkpoint resumes exactly where it left off: finished chunks
+ *  are skipped and unfinished ones are done from the start.
+ *  @author A.R. LOEFFLER
+ */
+class KeySearch {
+
+    /** A search of the keys of SPACE from FROM (inclusive) to TO
+     *  (exclusive) for the LIMIT best decryptions of CIPHERTEXT, scored by
+     *  the sum of TABLES, working in chunks of CHUNK keys. */
+    KeySearch(KeySpace space, long from, long to, String ciphertext,
+              NGramTable[] tables, int limit, long chunk) {
+        if (from < 0 || to > space.size() || from > to || chunk < 1) {
+            throw error("bad search range");
+        }
+        long chunks = (to - from + chunk - 1) / chunk;
+        if (chunks > Integer.MAX_VALUE) {
+            throw error("too many chunks; use larger chunks");
+        }
+        _space = space;
+        _from = from;
+        _to = to;
+        _chunk = chunk;
+        _numChunks = (int) chunks;
+        _tables = tables;
+        _ciphertext = ciphertext;
+        Alphabet alpha = space.newMachine().alphabet();
+        _cipher = new int[ciphertext.length()];
+        for (int i = 0; i < _cipher.length; i += 1) {
+            _cipher[i] = alpha.toInt(ciphertext.charAt(i));
+        }
+        _done = new BitSet(_numChunks);
+        _best = new TopKeys(limit);
+    }
+
+    /** Save my progress to the file named NAME every PERIOD milliseconds
+     *  while running, and when finished.  If the file already exists, it
+     *  must be a checkpoint of this same search, whose progress I take
+     *  up. */
+    void checkpoint(String name, long period) {
+        _checkpoint = new File(name);
+        _period = period;
+        if (_checkpoint.exists()) {
+            restore();
+        }
+    }
+
+    /** Search all unfinished chunks using THREADS worker threads, and
+     *  return when they are all done.  If a worker fails, the others
+     *  stop after their current chunks, the chunks finished are saved
+     *  and an exception is thrown, so that a failed search is never
+     *  reported as complete. */
+    void run(int threads) {
+        int[] pending = new int[_numChunks - _done.cardinality()];
+        for (int c = _done.nextClearBit(0), k = 0; c < _numChunks;
+             c = _done.nextClearBit(c + 1), k += 1) {
+            pending[k] = c;
+        }
+        AtomicInteger next = new AtomicInteger();
+        _started = System.currentTimeMillis();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t += 1) {
+            results.add(workers.submit(() -> {
+                try {
+                    work(pending, next);
+                } catch (RuntimeException | Error excp) {
+                    _failed = true;
+                    throw excp;
+                }
+            }));
+        }
+        workers.shutdown();
+        try {
+            while (!workers.awaitTermination(_period,
+                                             TimeUnit.MILLISECONDS)) {
+                save();
+            }
+        } catch (InterruptedException excp) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+            save();
+            return;
+        }
+        save();
+        for (Future<?> result : results) {
+            try {
+                result.get();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException excp) {
+                Throwable cause = excp.getCause();
+                if (cause instanceof EnigmaException) {
+                    throw (EnigmaException) cause;
+                }
+                throw error("search worker failed: %s", cause);
+            }
+        }
+    }
+
+    /** Claim chunks from PENDING, using NEXT as the index of the next
+     *  unclaimed one, and search them until none remain. */
+    private void work(int[] pending, AtomicInteger next) {
+        Machine m = _space.newMachine();
+        int[] plain = new int[_cipher.length];
+        for (int k = next.getAndIncrement(); k < pending.length && !_failed;
+             k = next.getAndIncrement()) {
+            int c = pending[k];
+            long start = _from + c * _chunk;
+            long end = Math.min(_to, start + _chunk);
+            TopKeys local = new TopKeys(_best.limit());
+            for (long key = start; key < end; key += 1) {
+                _space.apply(key, m);
+                local.offer(key, score(m, plain));
+            }
+            synchronized (this) {
+                _done.set(c);
+                _best.merge(local);
+            }
+            _tested.add(end - start);
+        }
+    }
+
+    /** Return the score of the decryption of my ciphertext by M from its
+     *  current state, using PLAIN as scratch space. */
+    private double score(Machine m, int[] plain) {
+        for (int i = 0; i < _cipher.length; i += 1) {
+            plain[i] = m.convert(_cipher[i]);
+        }
+        double sum = 0;
+        for (NGramTable table : _tables) {
+            sum += table.score(plain);
+        }
+        return sum;
+    }
+
+    /** Return the best keys found in finished chunks so far. */
+    synchronized TopKeys best() {
+        TopKeys result = new TopKeys(_best.limit());
+        result.merge(_best);
+        return result;
+    }
+
+    /** Return the number of keys in my range. */
+    long total() {
+        return _to - _from;
+    }
+
+    /** Return the number of keys in finished chunks. */
+    synchronized long finished() {
+        long result = (long) _done.cardinality() * _chunk;
+        if (_numChunks > 0 && _done.get(_numChunks - 1)) {
+            result -= (long) _numChunks * _chunk - (_to - _from);
+        }
+        return result;
+    }
+
+    /** Return the number of keys tested per second during this run. */
+    double rate() {
+        long elapsed = System.currentTimeMillis() - _started;
+        return elapsed <= 0 ? 0 : _tested.sum() * 1000.0 / elapsed;
+    }
+
+    /** Return the estimated number of seconds until the search finishes,
+     *  or -1 if unknown. */
+    long eta() {
+        double rate = rate();
+        return rate <= 0 ? -1 : (long) ((total() - finished()) / rate);
+    }
+
+    /** Return the number of keys tested by this and all earlier runs. */
+    long tested() {
+        return _previouslyTested + _tested.sum();
+    }
+
+    /** Return the text identifying this search in its checkpoint. */
+    private String identity() {
+        return String.format("keys %d %d chunk %d limit %d cipher %08x",
+                             _from, _to, _chunk, _best.limit(),
+                             (_ciphertext + _space.settings(0)).hashCode());
+    }
+
+    /** Write my current state to my checkpoint file, if any. */
+    synchronized void save() {
+        if (_checkpoint == null) {
+            return;
+        }
+        File tmp = new File(_checkpoint.getPath() + ".tmp");
+        long elapsed =
+            _previousElapsed + System.currentTimeMillis() - _started;
+        try (PrintStream out = new PrintStream(tmp)) {
+            out.println(CHECKPOINT_HEADER);
+            out.println(identity());
+            out.printf("tested %d elapsed %d%n", tested(), elapsed);
+            for (int c = _done.nextSetBit(0); c >= 0;
+                 c = _done.nextSetBit(_done.nextClearBit(c))) {
+                out.printf("done %d %d%n", c, _done.nextClearBit(c));
+            }
+            for (TopKeys.Entry e : _best.entries()) {
+                out.printf("top %d %s%n", e.key(), Double.toString(e.score()));
+            }
+            out.println("end");
+            if (out.checkError()) {
+                throw error("could not write %s", tmp);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", tmp);
+        }
+        try {
+            Files.move(tmp.toPath(), _checkpoint.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not replace %s", _checkpoint);
+        }
+    }
+
+    /** Take up the progress recorded in my checkpoint file. */
+    private void restore() {
+        Scanner in = Main.getInput(_checkpoint.getPath());
+        if (!in.hasNextLine() || !in.nextLine().equals(CHECKPOINT_HEADER)
+            || !in.hasNextLine() || !in.nextLine().equals(identity())) {
+            throw error("%s is not a checkpoint of this search", _checkpoint);
+        }
+        boolean complete = false;
+        while (in.hasNext() && !complete) {
+            switch (in.next()) {
+            case "tested":
+                _previouslyTested = in.nextLong();
+                in.next();
+                _previousElapsed = in.nextLong();
+                break;
+            case "done":
+                _done.set(in.nextInt(), in.nextInt());
+                break;
+            case "top":
+                _best.offer(in.nextLong(), Double.parseDouble(in.next()));
+                break;
+            case "end":
+                complete = true;
+                break;
+            default:
+                throw error("bad checkpoint file %s", _checkpoint);
+            }
+        }
+        if (!complete) {
+            throw error("truncated checkpoint file %s", _checkpoint);
+        }
+    }
+
+    /** Return S seconds formatted as H:MM:SS. */
+    static String hms(long s) {
+        return String.format("%d:%02d:%02d", s / 3600, s / 60 % 60, s % 60);
+    }
+
+    /** Run a resumable search.  ARGS[0] names a configuration file,
+     *  ARGS[1] a file holding the ciphertext, ARGS[2] the checkpoint file
+     *  and the remaining arguments n-gram frequency files.  These may be
+     *  preceded by the options --threads=N, --top=K, --chunk=N,
+     *  --every=SECONDS (between checkpoints) and --from=SETTINGS and
+     *  --to=SETTINGS, which give the first and last keys to try as
+     *  settings lines (a plugboard on --from is used with every key), and
+     *  --rings, which tries every ring setting too.
+     *  Shows progress on the standard error and prints the best keys when
+     *  done.  Progress is also saved if the search is interrupted. */
+    public static void main(String... args) {
+        try {
+            int threads = Runtime.getRuntime().availableProcessors();
+            int limit = DEFAULT_LIMIT;
+            long chunk = DEFAULT_CHUNK;
+            long period = DEFAULT_PERIOD;
+            String first = null, last = null;
+            boolean rings = false;
+            int a;
+            for (a = 0; a < args.length && args[a].startsWith("--"); a += 1) {
+                if (args[a].equals("--rings")) {
+                    rings = true;
+                    continue;
+                }
+                String[] opt = args[a].split("=", 2);
+                if (opt.length < 2) {
+                    throw error("bad option %s", args[a]);
+                }
+                switch (opt[0]) {
+                case "--threads":
+                    threads = Integer.parseInt(opt[1]);
+                    break;
+                case "--top":
+                    limit = Integer.parseInt(opt[1]);
+                    break;
+                case "--chunk":
+                    chunk = Long.parseLong(opt[1]);
+                    break;
+                case "--every":
+                    period = 1000 * Long.parseLong(opt[1]);
+                    break;
+                case "--from":
+                    first = opt[1];
+                    break;
+                case "--to":
+                    last = opt[1];
+                    break;
+                default:
+                    throw error("unknown option %s", opt[0]);
+                }
+            }
+            if (args.length - a < 4) {
+                throw error("Usage: java enigma.KeySearch [OPTIONS] CONFIG "
+                            + "CIPHERTEXT CHECKPOINT NGRAMS...");
+            }
+            Main config = new Main(Main.getInput(args[a]));
+            Machine machine = config.readConfig();
+            Permutation plugboard = null;
+            if (first != null) {
+                config.setUp(machine, first);
+                plugboard = machine.plugboard();
+            }
+            KeySpace space = new KeySpace(machine, plugboard, rings);
+            long from = first == null ? 0 : space.key(first);
+            long to = last == null ? space.size() : space.key(last) + 1;
+            StringBuilder text = new StringBuilder();
+            Scanner in = Main.getInput(args[a + 1]);
+            while (in.hasNext()) {
+                text.append(in.next().toUpperCase());
+            }
+            NGramTable[] tables = new NGramTable[args.length - a - 3];
+            for (int i = 0; i < tables.length; i += 1) {
+                tables[i] = NGramTable.load(args[a + 3 + i],
+                                            machine.alphabet());
+            }
+            KeySearch search = new KeySearch(space, from, to, text.toString(),
+                                             tables, limit, chunk);
+            search.checkpoint(args[a + 2], period);
+            report(search, threads);
+            for (TopKeys.Entry e : search.best().entries()) {
+                System.out.printf("%.2f %s%n", e.score(),
+                                  space.settings(e.key()));
+            }
+            return;
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Run SEARCH with THREADS workers, showing its progress on the
+     *  standard error once a second. */
+    private static void report(KeySearch search, int threads) {
+        Thread progress = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(1000);
+                    long eta = search.eta();
+                    System.err.printf("\r%6.2f%% %12.0f keys/s  ETA %s   ",
+                                      100.0 * search.finished()
+                                      / Math.max(1, search.total()),
+                                      search.rate(),
+                                      eta < 0 ? "?" : hms(eta));
+                }
+            } catch (InterruptedException excp) {
+                return;
+            }
+        });
+        progress.setDaemon(true);
+        progress.start();
+        Thread saver = new Thread(search::save);
+        Runtime.getRuntime().addShutdownHook(saver);
+        try {
+            search.run(threads);
+        } finally {
+            Runtime.getRuntime().removeShutdownHook(saver);
+            progress.interrupt();
+        }
+        System.err.printf("\r%d keys tested%30s%n", search.tested(), "");
+    }
+
+    /** First line of every checkpoint file. */
+    static final String CHECKPOINT_HEADER = "enigma key search checkpoint 1";
+
+    /** Default number of best keys kept. */
+    static final int DEFAULT_LIMIT = 10;
+
+    /** Default number of keys per chunk. */
+    static final long DEFAULT_CHUNK = 1 << 16;
+
+    /** Default milliseconds between checkpoints. */
+    static final long DEFAULT_PERIOD = 30000;
+
+    /** The keys searched. */
+    private final KeySpace _space;
+
+    /** The range of keys searched: _from <= key < _to. */
+    private final long _from, _to;
+
+    /** Number of keys per chunk. */
+    private final long _chunk;
+
+    /** Number of chunks in the range. */
+    private final int _numChunks;
+
+    /** Scoring tables. */
+    private final NGramTable[] _tables;
+
+    /** The ciphertext. */
+    private final String _ciphertext;
+
+    /** The ciphertext as alphabet indices. */
+    private final int[] _cipher;
+
+    /** The chunks finished. */
+    private final BitSet _done;
+
+    /** The best keys in the finished chunks. */
+    private final TopKeys _best;
+
+    /** Keys tested in this run. */
+    private final LongAdder _tested = new LongAdder();
+
+    /** Keys tested and milliseconds spent in earlier runs. */
+    private long _previouslyTested, _previousElapsed;
+
+    /** Time at which this run started. */
+    private long _started;
+
+    /** True once a worker has failed. */
+    private volatile boolean _failed;
+
+    /** Checkpoint file, or null. */
+    private File _checkpoint;
+
+    /** Milliseconds between checkpoints. */
+    private long _period = DEFAULT_PERIOD;
+
+}
@@ -0,0 +1,216 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the KeySearch and TopKeys classes.
+ *  @author A.R. LOEFFLER
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Name of the configuration used in these tests. */
+    private static final String CONFIG = "testing/correct/default.conf";
+
+    /** Settings line of the first key searched. */
+    private static final String FIRST = "* B BETA I II III AAAA";
+
+    /** Number of keys searched, and keys per chunk. */
+    private static final long KEYS = 12000, CHUNK = 500;
+
+    /** Text whose bigrams score decryptions. */
+    private static final String SAMPLE =
+        "ATTACKATDAWNWITHTHEWHOLEFLEETANDHOLDTHEBRIDGEUNTILRELIEVED";
+
+    /** A bigram table that fails once it has scored a given number of
+     *  texts. */
+    private static class FailingTable extends NGramTable {
+        /** A table like bigrams(ALPHA) that fails after scoring CALLS
+         *  texts. */
+        FailingTable(Alphabet alpha, int calls) {
+            super(alpha, 2, FLOOR);
+            addSample(this);
+            _calls = new AtomicInteger(calls);
+        }
+
+        @Override
+        double score(int[] text) {
+            if (_calls.decrementAndGet() < 0) {
+                throw new IllegalStateException("table failed");
+            }
+            return super.score(text);
+        }
+
+        /** Number of texts left to score before failing. */
+        private final AtomicInteger _calls;
+    }
+
+    /** Score of bigrams not in SAMPLE. */
+    private static final float FLOOR = -5;
+
+    /** Add the bigrams of SAMPLE to TABLE, returning it. */
+    private static NGramTable addSample(NGramTable table) {
+        for (int i = 0; i + 2 <= SAMPLE.length(); i += 1) {
+            int packed = table.pack(SAMPLE.substring(i, i + 2));
+            table.setScore(packed, table.score(packed) + 1);
+        }
+        return table;
+    }
+
+    /** Return a bigram table built from SAMPLE. */
+    private NGramTable bigrams(Alphabet alpha) {
+        return addSample(new NGramTable(alpha, 2, FLOOR));
+    }
+
+    /** Return the key space of CONFIG. */
+    private KeySpace space() {
+        return new KeySpace(new Main(Main.getInput(CONFIG)).readConfig(),
+                            null);
+    }
+
+    /** Return a search of KEYS keys of SPACE from FIRST for the best 5
+     *  decryptions of a ciphertext made with one of them, scored by
+     *  TABLE. */
+    private KeySearch search(KeySpace space, NGramTable table) {
+        long from = space.key(FIRST);
+        Machine m = space.newMachine();
+        space.apply(from + KEYS / 3, m);
+        String cipher = m.convert(SAMPLE);
+        return new KeySearch(space, from, from + KEYS, cipher,
+                             new NGramTable[] { table }, 5, CHUNK);
+    }
+
+    /** Return the name of a checkpoint file that does not exist yet. */
+    private String checkpointName() throws IOException {
+        File file = File.createTempFile("enigma", ".ckpt");
+        file.delete();
+        file.deleteOnExit();
+        new File(file.getPath() + ".tmp").deleteOnExit();
+        return file.getPath();
+    }
+
+    /** Return the keys and scores of TOP, best first, as strings. */
+    private ArrayList<String> entries(TopKeys top) {
+        ArrayList<String> result = new ArrayList<>();
+        for (TopKeys.Entry e : top.entries()) {
+            result.add(e.key() + " " + e.score());
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSearchFindsKey() {
+        KeySpace space = space();
+        KeySearch search = search(space, bigrams(space.newMachine()
+                                                 .alphabet()));
+        search.run(3);
+        assertEquals(KEYS, search.finished());
+        assertEquals(KEYS, search.tested());
+        assertEquals(space.key(FIRST) + KEYS / 3,
+                     search.best().entries().get(0).key());
+    }
+
+    @Test
+    public void checkResumeMatchesUninterruptedRun() throws IOException {
+        KeySpace space = space();
+        Alphabet alpha = space.newMachine().alphabet();
+        NGramTable table = bigrams(alpha);
+        KeySearch whole = search(space, table);
+        whole.run(2);
+
+        String name = checkpointName();
+        KeySearch failed = search(space, new FailingTable(alpha,
+                                                          (int) KEYS / 2));
+        failed.checkpoint(name, KeySearch.DEFAULT_PERIOD);
+        try {
+            failed.run(3);
+            fail("failed search completed");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        assertTrue(failed.finished() > 0);
+        assertTrue(failed.finished() < KEYS);
+        assertEquals(failed.finished(), failed.tested());
+
+        KeySearch resumed = search(space, table);
+        resumed.checkpoint(name, KeySearch.DEFAULT_PERIOD);
+        assertEquals(failed.finished(), resumed.finished());
+        assertEquals(entries(failed.best()), entries(resumed.best()));
+        resumed.run(3);
+        assertEquals(KEYS, resumed.finished());
+        assertEquals(KEYS, resumed.tested());
+        assertEquals(entries(whole.best()), entries(resumed.best()));
+
+        KeySearch again = search(space, new FailingTable(alpha, 0));
+        again.checkpoint(name, KeySearch.DEFAULT_PERIOD);
+        again.run(2);
+        assertEquals(KEYS, again.tested());
+        assertEquals(entries(whole.best()), entries(again.best()));
+    }
+
+    @Test
+    public void checkTopKeysTies() {
+        TopKeys forward = new TopKeys(3), backward = new TopKeys(3);
+        for (long key = 0; key < 10; key += 1) {
+            forward.offer(key, 1.0);
+            backward.offer(9 - key, 1.0);
+        }
+        assertEquals(entries(forward), entries(backward));
+        ArrayList<TopKeys.Entry> best = forward.entries();
+        assertEquals(0, best.get(0).key());
+        assertEquals(1, best.get(1).key());
+        assertEquals(2, best.get(2).key());
+    }
+
+    @Test
+    public void checkTopKeysLimit() {
+        TopKeys top = new TopKeys(4);
+        assertEquals(Double.NEGATIVE_INFINITY, top.threshold(), 0);
+        for (long key = 0; key < 20; key += 1) {
+            top.offer(key, key % 7);
+        }
+        top.offer(13, 100);
+        assertEquals(4, top.size());
+        assertEquals(4, top.limit());
+        String[] expected = { "6 6.0", "13 6.0", "5 5.0", "12 5.0" };
+        assertArrayEquals(expected, entries(top).toArray());
+        assertEquals(5.0, top.threshold(), 0);
+        TopKeys none = new TopKeys(0);
+        none.offer(1, 1);
+        assertEquals(0, none.size());
+    }
+
+    @Test
+    public void checkTopKeysMerge() {
+        Random r = new Random(29);
+        TopKeys all = new TopKeys(6);
+        TopKeys[] parts = { new TopKeys(6), new TopKeys(6), new TopKeys(6) };
+        for (long key = 0; key < 300; key += 1) {
+            double score = r.nextInt(40);
+            all.offer(key, score);
+            parts[r.nextInt(parts.length)].offer(key, score);
+        }
+        TopKeys merged = new TopKeys(6);
+        for (TopKeys part : parts) {
+            merged.merge(part);
+        }
+        merged.merge(parts[0]);
+        assertEquals(entries(all), entries(merged));
+    }
+
+}
@@ -0,0 +1,374 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Scanner;
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import static enigma.EnigmaException.*;
+
+/** The set of all keys for the rotors of a configuration: every choice of
+ *  reflector, rotor order and start positions, and optionally of ring
+ *  settings, with an optional fixed plugboard.  Slot 0 holds a
+ *  reflector, the last numPawls() slots hold distinct moving rotors and
+ *  the slots between hold distinct rotors that neither move nor reflect.
+ *
+ *  Each key is a long in the range 0 .. size()-1: the rotor order number
+ *  times rings() plus the ring setting number, all times positions(),
+ *  plus the start position number.  Rotor orders are numbered as a
+ *  mixed-radix numeral whose digit for each slot says which of the
+ *  rotors still available for that slot is chosen (the reflector being
+ *  most significant); start positions are numbered by reading the rotor
+ *  settings as a numeral in base alphabet-size, and ring settings in the
+ *  same way.  If rings are not enumerated, rings() is 1 and every ring
+ *  is at the first character.  Keys are decoded arithmetically, so no
+ *  key is ever materialized as an object.
+ *  @author A.R. LOEFFLER
+ */
+class KeySpace {
+
+    /** The key space for the rotors available to CATALOG (a configured
+     *  machine, whose current rotors and settings are irrelevant), using
+     *  PLUGBOARD, or no plugboard if PLUGBOARD is null. */
+    KeySpace(Machine catalog, Permutation plugboard) {
+        this(catalog, plugboard, false);
+    }
+
+    /** As for KeySpace(CATALOG, PLUGBOARD), but enumerating ring
+     *  settings as well iff RINGS. */
+    KeySpace(Machine catalog, Permutation plugboard, boolean rings) {
+        _catalog = catalog;
+        _plugboard = plugboard;
+        _size = catalog.alphabet().size();
+        _numRotors = catalog.numRotors();
+        ArrayList<Rotor> all = catalog.allRotors();
+        ArrayList<Integer> reflectors = new ArrayList<>(),
+            fixed = new ArrayList<>(), moving = new ArrayList<>();
+        for (int i = 0; i < all.size(); i += 1) {
+            Rotor r = all.get(i);
+            if (r.reflecting()) {
+                reflectors.add(i);
+            } else if (r.rotates()) {
+                moving.add(i);
+            } else {
+                fixed.add(i);
+            }
+        }
+        int firstMoving = _numRotors - catalog.numPawls();
+        _candidates = new int[_numRotors][];
+        _groupStart = new int[_numRotors];
+        for (int slot = 0; slot < _numRotors; slot += 1) {
+            ArrayList<Integer> group;
+            if (slot == 0) {
+                group = reflectors;
+            } else if (slot < firstMoving) {
+                group = fixed;
+                _groupStart[slot] = 1;
+            } else {
+                group = moving;
+                _groupStart[slot] = firstMoving;
+            }
+            _candidates[slot] = new int[group.size()];
+            for (int k = 0; k < group.size(); k += 1) {
+                _candidates[slot][k] = group.get(k);
+            }
+        }
+        _radix = new int[_numRotors];
+        _weight = new long[_numRotors];
+        long orders = 1;
+        for (int slot = _numRotors - 1; slot >= 0; slot -= 1) {
+            _radix[slot] = Math.max(0, _candidates[slot].length
+                                    - (slot - _groupStart[slot]));
+            _weight[slot] = orders;
+            orders = Math.multiplyExact(orders, (long) _radix[slot]);
+        }
+        _orders = orders;
+        long positions = 1;
+        for (int slot = 1; slot < _numRotors; slot += 1) {
+            positions = Math.multiplyExact(positions, (long) _size);
+        }
+        _positions = positions;
+        _rings = rings ? positions : 1;
+        _keys = Math.multiplyExact(Math.multiplyExact(_orders, _rings),
+                                   _positions);
+    }
+
+    /** Return the number of keys. */
+    long size() {
+        return _keys;
+    }
+
+    /** Return the number of rotor orders. */
+    long orders() {
+        return _orders;
+    }
+
+    /** Return the number of start positions for each rotor order and
+     *  ring setting. */
+    long positions() {
+        return _positions;
+    }
+
+    /** Return the number of ring settings for each rotor order. */
+    long rings() {
+        return _rings;
+    }
+
+    /** Return my plugboard, or null if I have none. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Return a new machine to which my keys may be applied, independent
+     *  of all others. */
+    Machine newMachine() {
+        Machine result = _catalog.copy();
+        if (_plugboard != null) {
+            result.setPlugboard(_plugboard);
+        }
+        return result;
+    }
+
+    /** Insert the rotors of KEY into M (a machine from newMachine()) and
+     *  set them to its ring settings and start positions. */
+    void apply(long key, Machine m) {
+        checkKey(key);
+        long order = key / _positions / _rings;
+        long ring = key / _positions % _rings;
+        long position = key % _positions;
+        Rotor[] used = m.usedRotors();
+        ArrayList<Rotor> all = m.allRotors();
+        for (int slot = 0; slot < _numRotors; slot += 1) {
+            int digit = (int) (order / _weight[slot] % _radix[slot]);
+            for (int index : _candidates[slot]) {
+                Rotor r = all.get(index);
+                boolean taken = false;
+                for (int s = _groupStart[slot]; s < slot; s += 1) {
+                    taken |= used[s] == r;
+                }
+                if (!taken) {
+                    if (digit == 0) {
+                        m.insertRotor(slot, index);
+                        break;
+                    }
+                    digit -= 1;
+                }
+            }
+        }
+        for (int slot = _numRotors - 1; slot > 0; slot -= 1) {
+            used[slot].set((int) (position % _size));
+            position /= _size;
+            used[slot].setRing((int) (ring % _size));
+            ring /= _size;
+        }
+        used[0].set(0);
+    }
+
+    /** Return the key named by SETTINGS, a settings line (as in an input
+     *  file) whose plugboard, if any, is ignored.  Its ring settings must
+     *  be those of the first character unless I enumerate rings. */
+    long key(String settings) {
+        Scanner in = new Scanner(settings);
+        if (!in.hasNext() || !in.next().equals("*")) {
+            throw error("settings line must start with *");
+        }
+        ArrayList<Rotor> all = _catalog.allRotors();
+        int[] chosen = new int[_numRotors];
+        long order = 0;
+        for (int slot = 0; slot < _numRotors; slot += 1) {
+            String name = in.next();
+            int digit = 0;
+            chosen[slot] = -1;
+            for (int index : _candidates[slot]) {
+                if (all.get(index).name().equals(name)) {
+                    chosen[slot] = index;
+                    break;
+                }
+                boolean taken = false;
+                for (int s = _groupStart[slot]; s < slot; s += 1) {
+                    taken |= chosen[s] == index;
+                }
+                if (!taken) {
+                    digit += 1;
+                }
+            }
+            for (int s = _groupStart[slot]; s < slot; s += 1) {
+                if (chosen[s] == chosen[slot]) {
+                    chosen[slot] = -1;
+                }
+            }
+            if (chosen[slot] < 0) {
+                throw error("rotor %s cannot go in slot %d", name, slot);
+            }
+            order += digit * _weight[slot];
+        }
+        String setting = in.next();
+        long position = number(setting);
+        long ring = 0;
+        if (in.hasNext() && !in.hasNext("\\(.*")) {
+            ring = number(in.next());
+        }
+        if (ring >= _rings) {
+            throw error("ring settings are not enumerated");
+        }
+        return (order * _rings + ring) * _positions + position;
+    }
+
+    /** Return the number of the rotor or ring settings SETTING. */
+    private long number(String setting) {
+        if (setting.length() != _numRotors - 1) {
+            throw error("wrong number of rotor settings");
+        }
+        long result = 0;
+        Alphabet alpha = _catalog.alphabet();
+        for (int i = 0; i < setting.length(); i += 1) {
+            result = result * _size + alpha.toInt(setting.charAt(i));
+        }
+        return result;
+    }
+
+    /** Return the settings line for KEY, including my plugboard. */
+    String settings(long key) {
+        Machine m = newMachine();
+        apply(key, m);
+        StringBuilder result = new StringBuilder("*");
+        for (Rotor r : m.usedRotors()) {
+            result.append(' ').append(r.name());
+        }
+        result.append(' ');
+        for (int slot = 1; slot < _numRotors; slot += 1) {
+            result.append(m.alphabet().toChar(m.usedRotors()[slot].setting()));
+        }
+        if (_rings > 1) {
+            result.append(' ');
+            for (int slot = 1; slot < _numRotors; slot += 1) {
+                result.append(m.alphabet().toChar(m.usedRotors()[slot].ring()));
+            }
+        }
+        if (_plugboard != null) {
+            for (String cycle : _plugboard.cycles()) {
+                result.append(" (").append(cycle).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return a sequential stream of the keys from FROM (inclusive) to TO
+     *  (exclusive), which splits evenly when made parallel. */
+    LongStream keys(long from, long to) {
+        return StreamSupport.longStream(spliterator(from, to), false);
+    }
+
+    /** Return a sequential stream of all my keys. */
+    LongStream keys() {
+        return keys(0, _keys);
+    }
+
+    /** Return a spliterator over the keys from FROM (inclusive) to TO
+     *  (exclusive). */
+    Spliterator.OfLong spliterator(long from, long to) {
+        if (from < 0 || to > _keys || from > to) {
+            throw error("key range out of bounds");
+        }
+        return new KeySpliterator(from, to);
+    }
+
+    /** Check that KEY is one of mine. */
+    private void checkKey(long key) {
+        if (key < 0 || key >= _keys) {
+            throw error("key out of range");
+        }
+    }
+
+    /** A spliterator over a range of keys, which splits by halving the
+     *  range. */
+    private static class KeySpliterator implements Spliterator.OfLong {
+
+        /** A spliterator over NEXT (inclusive) to END (exclusive). */
+        KeySpliterator(long next, long end) {
+            _next = next;
+            _end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (_next >= _end) {
+                return false;
+            }
+            action.accept(_next);
+            _next += 1;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            long end = _end;
+            for (long key = _next; key < end; key += 1) {
+                action.accept(key);
+            }
+            _next = end;
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            long half = (_end - _next) / 2;
+            if (half < 1) {
+                return null;
+            }
+            KeySpliterator prefix = new KeySpliterator(_next, _next + half);
+            _next += half;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return _end - _next;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | DISTINCT | NONNULL
+                | IMMUTABLE;
+        }
+
+        /** Next key to be delivered. */
+        private long _next;
+
+        /** Key just past my range. */
+        private final long _end;
+    }
+
+    /** The machine whose rotors I choose from. */
+    private final Machine _catalog;
+
+    /** Plugboard applied with every key, or null. */
+    private final Permutation _plugboard;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** _candidates[s] lists the indices in the catalog's rotor list of the
+     *  rotors that may occupy slot s. */
+    private final int[][] _candidates;
+
+    /** _groupStart[s] is the first slot sharing slot s's candidates. */
+    private final int[] _groupStart;
+
+    /** _radix[s] is the number of choices left for slot s once earlier
+     *  slots of its group are filled; _weight[s] is the product of the
+     *  radices of the later slots. */
+    private final int[] _radix;
+
+    /** See _radix. */
+    private final long[] _weight;
+
+    /** Numbers of rotor orders, positions per order and ring setting,
+     *  ring settings per order, and keys. */
+    private final long _orders, _positions, _rings, _keys;
+
+}
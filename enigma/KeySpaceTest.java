@@ -0,0 +1,93 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySpace class.
+ *  @author A.R. LOEFFLER
+ */
+public class KeySpaceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Name of the configuration used in these tests. */
+    private static final String CONFIG = "testing/correct/default.conf";
+
+    /** Return a machine configured from CONFIG. */
+    private Machine catalog() {
+        return new Main(Main.getInput(CONFIG)).readConfig();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSize() {
+        KeySpace space = new KeySpace(catalog(), null);
+        assertEquals(2 * 2 * 8 * 7 * 6, space.orders());
+        assertEquals(26 * 26 * 26 * 26, space.positions());
+        assertEquals(space.orders() * space.positions(), space.size());
+    }
+
+    @Test
+    public void checkKeyRoundTrip() {
+        KeySpace space = new KeySpace(catalog(), null);
+        String[] lines = {
+            "* B BETA I II III AAAA",
+            "* C GAMMA VIII VII VI ZZZZ",
+            "* B GAMMA III I V AXLE",
+        };
+        for (String line : lines) {
+            assertEquals(line, space.settings(space.key(line)));
+        }
+        assertEquals(0, space.key(lines[0]));
+        assertEquals(space.size() - 1, space.key(lines[1]));
+    }
+
+    @Test
+    public void checkApplyMatchesSetUp() {
+        String line = "* B GAMMA III I V AXLE (AQ) (EP)";
+        Machine expected = machine(CONFIG, line);
+        KeySpace space = new KeySpace(expected, expected.plugboard());
+        Machine m = space.newMachine();
+        space.apply(space.key(line), m);
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        assertEquals(expected.convert(msg), m.convert(msg));
+    }
+
+    @Test
+    public void checkRings() {
+        String line = "* B GAMMA III I V AXLE QBZA (AQ) (EP)";
+        Machine expected = machine(CONFIG, line);
+        KeySpace space = new KeySpace(expected, expected.plugboard(), true);
+        assertEquals(space.positions(), space.rings());
+        assertEquals(space.orders() * space.rings() * space.positions(),
+                     space.size());
+        assertEquals(line, space.settings(space.key(line)));
+        Machine m = space.newMachine();
+        space.apply(space.key(line), m);
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        assertEquals(expected.convert(msg), m.convert(msg));
+        KeySpace plain = new KeySpace(expected, null);
+        assertEquals(1, plain.rings());
+        plain.apply(0, m);
+        assertEquals(0, m.usedRotors()[1].ring());
+    }
+
+    @Test
+    public void checkParallelStreamCoversRange() {
+        KeySpace space = new KeySpace(catalog(), null);
+        long from = 12345, to = 12345 + 100000;
+        assertEquals(to - from, space.keys(from, to).parallel().count());
+        long expected = (from + to - 1) * (to - from) / 2;
+        assertEquals(expected, space.keys(from, to).parallel().sum());
+    }
+
+}
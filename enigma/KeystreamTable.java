@@ -0,0 +1,253 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** The keystream of one key: for each keystroke from the key's start
+ *  state, the permutation of alphabet indices that the machine applies
+ *  to the character typed, with plugboard, rotors and reflector all
+ *  folded together.  Since the rotor settings eventually repeat, only
+ *  the keystrokes up to the first repeated state are kept (a TAIL of
+ *  keystrokes followed by a cycle that repeats forever), together with
+ *  the rotor settings before each one, so that a machine's state can be
+ *  checked against the table.  Converting a character is then a single
+ *  lookup.  A table may instead cover just the first keystrokes of a
+ *  key (see prefix), with no cycle.
+ *
+ *  Tables are kept in the layout written by write and read in place
+ *  from a buffer (normally a read-only mapping of a file written by
+ *  TableStore), with no copy on the heap: a header of HEADER_SIZE bytes
+ *  (MAGIC, alphabet size, number of rotor slots, entry width in bytes,
+ *  tail length or -1 for no cycle, and number of rows, as ints), then
+ *  one row per keystroke holding the settings of rotor slots
+ *  1 .. slots-1 before it and the permutation after it, each entry an
+ *  unsigned byte, or an unsigned char for alphabets of more than 256
+ *  characters.
+ *  @author A.R. LOEFFLER
+ */
+class KeystreamTable {
+
+    /** The table laid out in DATA, which I do not copy.  Throws an
+     *  exception if DATA does not hold a table. */
+    KeystreamTable(ByteBuffer data) {
+        if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw error("not a keystream table");
+        }
+        _data = data;
+        _size = data.getInt(Integer.BYTES);
+        _slots = data.getInt(2 * Integer.BYTES);
+        _width = data.getInt(3 * Integer.BYTES);
+        _tail = data.getInt(4 * Integer.BYTES);
+        _rows = data.getInt(5 * Integer.BYTES);
+        _rowSize = (_slots - 1 + _size) * _width;
+        if (_size <= 0 || _slots < 2 || _width != width(_size)
+            || _tail < -1 || _tail >= _rows
+            || (long) _rows * _rowSize != data.capacity() - HEADER_SIZE) {
+            throw error("malformed keystream table");
+        }
+    }
+
+    /** Return the table of machine M's current key, laid out in a new
+     *  array, or null if its rotor settings do not repeat within
+     *  MAXBYTES bytes of table.  M is not changed. */
+    static byte[] write(Machine m, long maxBytes) {
+        Layout layout = layout(m, maxBytes);
+        return layout == null ? null : fill(m, layout);
+    }
+
+    /** Return the table of the first STEPS keystrokes of machine M's
+     *  current key, laid out in a new array.  M is not changed. */
+    static byte[] prefix(Machine m, int steps) {
+        return fill(m, new Layout(-1, steps, rowSize(m)));
+    }
+
+    /** Return the table of machine M's current key with layout
+     *  LAYOUT. */
+    private static byte[] fill(Machine m, Layout layout) {
+        int n = m.alphabet().size(), slots = m.numRotors();
+        int width = width(n);
+        ByteBuffer out = ByteBuffer.allocate((int) layout.bytes());
+        out.putInt(MAGIC).putInt(n).putInt(slots).putInt(width)
+            .putInt(layout._tail).putInt(layout._rows);
+        out.position(HEADER_SIZE);
+        Machine key = m.copy();
+        key.setStats(null);
+        int[] perm = new int[n], inner = new int[n];
+        Arrays.fill(inner, -1);
+        for (int r = 0; r < layout._rows; r += 1) {
+            Rotor[] rotors = key.usedRotors();
+            for (int i = 1; i < slots; i += 1) {
+                put(out, width, rotors[i].setting());
+            }
+            key.keystroke(perm, inner);
+            for (int c = 0; c < n; c += 1) {
+                put(out, width, perm[c]);
+            }
+        }
+        return out.array();
+    }
+
+    /** Return the row of the keystroke whose rotor settings before it
+     *  are those of ROTORS (a machine's used rotors), trying HINT first,
+     *  or -1 if there is none. */
+    int find(Rotor[] rotors, int hint) {
+        if (hint >= 0 && hint < _rows && matches(rotors, hint)) {
+            return hint;
+        }
+        for (int r = 0; r < _rows; r += 1) {
+            if (matches(rotors, r)) {
+                return r;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the index to which the keystroke of ROW converts the
+     *  index C. */
+    int get(int row, int c) {
+        return entry(HEADER_SIZE + row * _rowSize + (_slots - 1 + c) * _width);
+    }
+
+    /** Return the row of the keystroke after that of ROW, or -1 if I do
+     *  not cover it. */
+    int next(int row) {
+        return row + 1 == _rows ? _tail : row + 1;
+    }
+
+    /** Return my number of rows. */
+    int rows() {
+        return _rows;
+    }
+
+    /** Return the number of keystrokes before my rows start to cycle,
+     *  or -1 if they do not. */
+    int tail() {
+        return _tail;
+    }
+
+    /** Return true iff the rotor settings of ROTORS are those before the
+     *  keystroke of ROW. */
+    private boolean matches(Rotor[] rotors, int row) {
+        int p = HEADER_SIZE + row * _rowSize;
+        for (int i = 1; i < _slots; i += 1, p += _width) {
+            if (rotors[i].setting() != entry(p)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the entry at byte P of my data. */
+    private int entry(int p) {
+        return _width == 1 ? _data.get(p) & BYTE_MASK : _data.getChar(p);
+    }
+
+    /** Write V to OUT as an entry of WIDTH bytes. */
+    private static void put(ByteBuffer out, int width, int v) {
+        if (width == 1) {
+            out.put((byte) v);
+        } else {
+            out.putChar((char) v);
+        }
+    }
+
+    /** Return the size of a row of a table for machine M. */
+    private static int rowSize(Machine m) {
+        int n = m.alphabet().size();
+        return (m.numRotors() - 1 + n) * width(n);
+    }
+
+    /** Return the width of an entry for an alphabet of N characters. */
+    private static int width(int n) {
+        return n <= BYTE_MASK + 1 ? 1 : Character.BYTES;
+    }
+
+    /** The shape of a table. */
+    private static class Layout {
+        /** A table of ROWS rows of ROWSIZE bytes whose cycle starts at
+         *  row TAIL (-1 for none). */
+        Layout(int tail, int rows, int rowSize) {
+            _tail = tail;
+            _rows = rows;
+            _rowSize = rowSize;
+        }
+
+        /** Return the size of the table in bytes. */
+        long bytes() {
+            return HEADER_SIZE + (long) _rows * _rowSize;
+        }
+
+        /** Tail length, number of rows and row size. */
+        private final int _tail, _rows, _rowSize;
+    }
+
+    /** Return the layout of the table of machine M's current key, or
+     *  null if it would take more than MAXBYTES bytes.  The tail and
+     *  cycle are found by stepping copies of M with Brent's algorithm,
+     *  which needs no record of the states seen. */
+    private static Layout layout(Machine m, long maxBytes) {
+        int rowSize = rowSize(m);
+        long maxRows = Math.min((maxBytes - HEADER_SIZE) / rowSize,
+                                (Integer.MAX_VALUE - HEADER_SIZE) / rowSize);
+        Machine slow = m.copy(), fast = m.copy();
+        fast.step();
+        long power = 1, cycle = 1;
+        while (!sameState(slow, fast)) {
+            if (cycle == power) {
+                if (power >= maxRows) {
+                    return null;
+                }
+                slow = fast.copy();
+                power *= 2;
+                cycle = 0;
+            }
+            fast.step();
+            cycle += 1;
+        }
+        slow = m.copy();
+        fast = m.copy();
+        fast.skip(cycle);
+        long tail = 0;
+        for (; !sameState(slow, fast) && tail + cycle <= maxRows;
+             tail += 1) {
+            slow.step();
+            fast.step();
+        }
+        if (tail + cycle > maxRows) {
+            return null;
+        }
+        return new Layout((int) tail, (int) (tail + cycle), rowSize);
+    }
+
+    /** Return true iff the rotors of A and B have the same settings. */
+    private static boolean sameState(Machine a, Machine b) {
+        for (int i = 1; i < a.numRotors(); i += 1) {
+            if (a.usedRotors()[i].setting() != b.usedRotors()[i].setting()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Magic number at the start of a table. */
+    static final int MAGIC = 0x454b5331;
+
+    /** Size of the header of a table, in bytes. */
+    static final int HEADER_SIZE = 32;
+
+    /** Mask selecting an unsigned byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Where the table is laid out. */
+    private final ByteBuffer _data;
+
+    /** Alphabet size, number of rotor slots, entry width in bytes and
+     *  row size in bytes. */
+    private final int _size, _slots, _width, _rowSize;
+
+    /** Number of rows, and the row at which they start to cycle. */
+    private final int _tail, _rows;
+
+}
@@ -0,0 +1,173 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** An Aho-Corasick automaton recognizing any of a set of words, fed one
+ *  alphabet index at a time.  After compilation the transition function
+ *  is a single flat table, so each character costs one array lookup no
+ *  matter how many words there are.
+ *  @author A.R. LOEFFLER
+ */
+class KeywordAutomaton {
+
+    /** An automaton, initially with no words, over ALPHA. */
+    KeywordAutomaton(Alphabet alpha) {
+        _alphabet = alpha;
+        _size = alpha.size();
+        _words = new ArrayList<>();
+        _delta = new int[INITIAL_STATES * _size];
+        Arrays.fill(_delta, -1);
+        _word = new int[INITIAL_STATES];
+        Arrays.fill(_word, -1);
+        _numStates = 1;
+    }
+
+    /** Return an automaton over ALPHA recognizing the words in the file
+     *  named NAME, which are separated by whitespace.  Words are
+     *  upper-cased, and those containing characters outside ALPHA are
+     *  skipped. */
+    static KeywordAutomaton load(String name, Alphabet alpha) {
+        KeywordAutomaton result = new KeywordAutomaton(alpha);
+        Scanner in = Main.getInput(name);
+        while (in.hasNext()) {
+            String word = in.next().toUpperCase();
+            boolean ok = true;
+            for (int i = 0; i < word.length(); i += 1) {
+                ok &= alpha.contains(word.charAt(i));
+            }
+            if (ok) {
+                result.add(word);
+            }
+        }
+        in.close();
+        result.compile();
+        return result;
+    }
+
+    /** Add WORD, a non-empty string of characters in my alphabet, to the
+     *  words I recognize.  Not allowed after compile(). */
+    void add(String word) {
+        if (_compiled) {
+            throw error("automaton already compiled");
+        }
+        if (word.isEmpty()) {
+            throw error("empty keyword");
+        }
+        int state = 0;
+        for (int i = 0; i < word.length(); i += 1) {
+            int c = _alphabet.toInt(word.charAt(i));
+            if (_delta[state * _size + c] < 0) {
+                _delta[state * _size + c] = newState();
+            }
+            state = _delta[state * _size + c];
+        }
+        if (_word[state] < 0) {
+            _word[state] = _words.size();
+            _words.add(word);
+        }
+    }
+
+    /** Complete the transition table, so that next() follows failure
+     *  links implicitly.  Must be called after the last add(). */
+    void compile() {
+        int[] fail = new int[_numStates];
+        int[] queue = new int[_numStates];
+        int head = 0, tail = 0;
+        for (int c = 0; c < _size; c += 1) {
+            int child = _delta[c];
+            if (child < 0) {
+                _delta[c] = 0;
+            } else {
+                queue[tail] = child;
+                tail += 1;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head];
+            head += 1;
+            if (_word[state] < 0) {
+                _word[state] = _word[fail[state]];
+            }
+            for (int c = 0; c < _size; c += 1) {
+                int child = _delta[state * _size + c];
+                int fallback = _delta[fail[state] * _size + c];
+                if (child < 0) {
+                    _delta[state * _size + c] = fallback;
+                } else {
+                    fail[child] = fallback;
+                    queue[tail] = child;
+                    tail += 1;
+                }
+            }
+        }
+        _delta = Arrays.copyOf(_delta, _numStates * _size);
+        _word = Arrays.copyOf(_word, _numStates);
+        _compiled = true;
+    }
+
+    /** Return the state reached from STATE on alphabet index C.  The
+     *  initial state is 0. */
+    int next(int state, int c) {
+        return _delta[state * _size + c];
+    }
+
+    /** Return true iff the characters that led to STATE end with one of
+     *  my words. */
+    boolean matches(int state) {
+        return _word[state] >= 0;
+    }
+
+    /** Return one of my words that the characters leading to STATE end
+     *  with, or null if there is none. */
+    String word(int state) {
+        return _word[state] < 0 ? null : _words.get(_word[state]);
+    }
+
+    /** Return the number of distinct words I recognize. */
+    int numWords() {
+        return _words.size();
+    }
+
+    /** Return the number of a newly allocated state. */
+    private int newState() {
+        if (_numStates == _word.length) {
+            int old = _word.length;
+            _word = Arrays.copyOf(_word, 2 * old);
+            Arrays.fill(_word, old, 2 * old, -1);
+            _delta = Arrays.copyOf(_delta, 2 * old * _size);
+            Arrays.fill(_delta, old * _size, 2 * old * _size, -1);
+        }
+        _numStates += 1;
+        return _numStates - 1;
+    }
+
+    /** Number of states allocated before the first expansion. */
+    private static final int INITIAL_STATES = 64;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** My words, in order of addition. */
+    private final ArrayList<String> _words;
+
+    /** _delta[s * _size + c] is the state following s on c (or -1 for
+     *  a missing trie edge before compilation). */
+    private int[] _delta;
+
+    /** _word[s] is the index in _words of a word ending at s, or -1. */
+    private int[] _word;
+
+    /** Number of states in use. */
+    private int _numStates;
+
+    /** True once compile() has run. */
+    private boolean _compiled;
+
+}
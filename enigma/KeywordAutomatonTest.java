@@ -0,0 +1,68 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeywordAutomaton class.
+ *  @author A.R. LOEFFLER
+ */
+public class KeywordAutomatonTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the first word found by AUTOMATON in TEXT, followed by the
+     *  number of characters read to find it, or null if none is found. */
+    private String scan(KeywordAutomaton automaton, String text) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            state = automaton.next(state, UPPER.toInt(text.charAt(i)));
+            if (automaton.matches(state)) {
+                return automaton.word(state) + " " + (i + 1);
+            }
+        }
+        return null;
+    }
+
+    /** Return a compiled automaton over UPPER for WORDS. */
+    private KeywordAutomaton automaton(String... words) {
+        KeywordAutomaton result = new KeywordAutomaton(UPPER);
+        for (String word : words) {
+            result.add(word);
+        }
+        result.compile();
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSingleWord() {
+        KeywordAutomaton a = automaton("ATTACK");
+        assertEquals("ATTACK 8", scan(a, "ATATTACKNOW"));
+        assertNull(scan(a, "ATTACATTAC"));
+    }
+
+    @Test
+    public void checkOverlappingWords() {
+        KeywordAutomaton a = automaton("HERS", "SHE", "HIS");
+        assertEquals("SHE 4", scan(a, "USHERS"));
+        assertEquals("HERS 4", scan(a, "HERS"));
+        assertEquals("HIS 5", scan(a, "AHHIS"));
+    }
+
+    @Test
+    public void checkSuffixWord() {
+        KeywordAutomaton a = automaton("ABCDE", "CD");
+        assertEquals("CD 4", scan(a, "ABCDE"));
+        assertEquals(2, a.numWords());
+    }
+
+}
@@ -0,0 +1,158 @@
+package enigma;
+
+import java.util.Scanner;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Audits a slice of a KeySpace by deciphering a ciphertext under each of
+ *  its keys and reporting those whose output contains a word from a
+ *  dictionary.  Each candidate decryption is fed straight from the machine
+ *  into a KeywordAutomaton, one alphabet index at a time, and abandoned
+ *  at the first match; no strings are built except for reported hits.
+ *  @author A.R. LOEFFLER
+ */
+class KeywordSearch {
+
+    /** A search for the words recognized by WORDS in decryptions of
+     *  CIPHERTEXT (characters of the alphabet of SPACE) under keys of
+     *  SPACE.  Each worker thread uses its own machine. */
+    KeywordSearch(KeySpace space, String ciphertext, KeywordAutomaton words) {
+        _space = space;
+        _words = words;
+        Machine m = space.newMachine();
+        _cipher = new int[ciphertext.length()];
+        for (int i = 0; i < _cipher.length; i += 1) {
+            _cipher[i] = m.alphabet().toInt(ciphertext.charAt(i));
+        }
+    }
+
+    /** Try each key of my key space from FROM (inclusive) to TO
+     *  (exclusive) in parallel, passing a Hit to HITS for each one whose
+     *  decryption contains a word.  HITS may be called from several
+     *  threads at once. */
+    void search(long from, long to, Consumer<Hit> hits) {
+        ThreadLocal<Machine> machines =
+            ThreadLocal.withInitial(_space::newMachine);
+        _space.keys(from, to).parallel().forEach(key -> {
+            Machine m = machines.get();
+            _space.apply(key, m);
+            int state = 0;
+            for (int i = 0; i < _cipher.length; i += 1) {
+                state = _words.next(state, m.convert(_cipher[i]));
+                if (_words.matches(state)) {
+                    hits.accept(new Hit(key, _space.settings(key),
+                                        _words.word(state), i + 1));
+                    return;
+                }
+            }
+        });
+    }
+
+    /** A key whose decryption contains a dictionary word. */
+    static class Hit {
+
+        /** A hit for KEY, whose settings line is SETTING, where WORD ends
+         *  after the first END characters of the decryption. */
+        Hit(long key, String setting, String word, int end) {
+            _key = key;
+            _setting = setting;
+            _word = word;
+            _end = end;
+        }
+
+        /** Return my key. */
+        long key() {
+            return _key;
+        }
+
+        /** Return the settings line of my key. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the word found. */
+        String word() {
+            return _word;
+        }
+
+        /** Return the number of characters of decryption up to and
+         *  including the end of word(). */
+        int end() {
+            return _end;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d %s %d %s", _key, _word, _end, _setting);
+        }
+
+        /** The key. */
+        private final long _key;
+
+        /** Settings line of _key. */
+        private final String _setting;
+
+        /** Word found. */
+        private final String _word;
+
+        /** End of _word in the decryption. */
+        private final int _end;
+    }
+
+    /** Search for dictionary words.  ARGS[0] names a configuration file,
+     *  ARGS[1] a file holding the ciphertext and ARGS[2] a file of words.
+     *  The optional ARGS[3] and ARGS[4] are settings lines giving the
+     *  first and last keys to try; a plugboard on ARGS[3] is used with
+     *  every key.  By default all keys are tried without a plugboard.
+     *  Prints each hit as it is found. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 3 && args.length != 5) {
+                throw error("Usage: java enigma.KeywordSearch CONFIG "
+                            + "CIPHERTEXT WORDS [FIRST LAST]");
+            }
+            Main config = new Main(Main.getInput(args[0]));
+            Machine machine = config.readConfig();
+            Permutation plugboard = null;
+            if (args.length == 5) {
+                config.setUp(machine, args[3]);
+                plugboard = machine.plugboard();
+            }
+            KeySpace space = new KeySpace(machine, plugboard);
+            StringBuilder text = new StringBuilder();
+            Scanner in = Main.getInput(args[1]);
+            while (in.hasNext()) {
+                text.append(in.next().toUpperCase());
+            }
+            KeywordAutomaton words =
+                KeywordAutomaton.load(args[2], machine.alphabet());
+            KeywordSearch search =
+                new KeywordSearch(space, text.toString(), words);
+            long from = 0, to = space.size();
+            if (args.length == 5) {
+                from = space.key(args[3]);
+                to = space.key(args[4]) + 1;
+            }
+            search.search(from, to, hit -> {
+                synchronized (System.out) {
+                    System.out.println(hit);
+                }
+            });
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** The keys searched. */
+    private final KeySpace _space;
+
+    /** Recognizer for the dictionary. */
+    private final KeywordAutomaton _words;
+
+    /** The ciphertext as alphabet indices. */
+    private final int[] _cipher;
+
+}
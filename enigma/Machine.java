@@ -15,6 +15,15 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, allRotors, DEFAULT_TABLE_BUDGET);
+        setTableBudget(DEFAULT_TABLE_BUDGET);
+    }
+
+    /** A machine as above whose rotors keep the wiring representations
+     *  they have, which were chosen for a table budget of BUDGET
+     *  bytes. */
+    private Machine(Alphabet alpha, int numRotors, int pawls,
+                    Collection<Rotor> allRotors, long budget) {
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
@@ -23,8 +32,34 @@ class Machine {
             _allRotors.add(i);
         }
         _usedRotors = new Rotor[numRotors];
+        _advancing = new boolean[numRotors];
         hasPlugboard = false;
+        _passthrough = Passthrough.REJECT;
+        int limit = 0;
+        for (int i = 0; i < alpha.size(); i += 1) {
+            limit = Math.max(limit, alpha.toChar(i) + 1);
+        }
+        _members = new long[(limit + BITS - 1) / BITS];
+        for (int i = 0; i < alpha.size(); i += 1) {
+            char ch = alpha.toChar(i);
+            _members[ch / BITS] |= 1L << ch;
+        }
+        _tableBudget = budget;
+    }
 
+    /** Choose how each of my rotors stores its wiring so that together
+     *  they use at most about BUDGET bytes of tables (see
+     *  Rotor.choose): small alphabets get per-setting tables, larger
+     *  ones offset arithmetic on plain or compact arrays. */
+    void setTableBudget(long budget) {
+        _tableBudget = budget;
+        long share = budget / Math.max(1, _allRotors.size());
+        for (Rotor r : _allRotors) {
+            Rotor.Representation kind = r.choose(share);
+            if (kind != r.representation()) {
+                r.represent(kind);
+            }
+        }
     }
 
     /** Returns true if I have a plugboard. */
@@ -61,6 +96,17 @@ class Machine {
             }
         }
         _fastRotor = _usedRotors[_usedRotors.length - 1];
+        _keystream = null;
+    }
+
+    /** Put the rotor numbered INDEX in my list of all rotors into rotor
+     *  slot SLOT (0 being the reflector), without looking up names. */
+    void insertRotor(int slot, int index) {
+        _usedRotors[slot] = _allRotors.get(index);
+        if (slot == _usedRotors.length - 1) {
+            _fastRotor = _usedRotors[slot];
+        }
+        _keystream = null;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
@@ -74,11 +120,34 @@ class Machine {
         }
     }
 
+    /** Set the ring settings of my rotors according to RINGS, a string
+     *  of numRotors()-1 characters of my alphabet like the argument of
+     *  setRotors, or to the first character of my alphabet if RINGS is
+     *  null. */
+    void setRings(String rings) {
+        if (rings != null && rings.length() != _numRotors - 1) {
+            throw error("wrong number of ring settings");
+        }
+        for (int i = 1; i < _numRotors; i += 1) {
+            if (rings == null) {
+                _usedRotors[i].setRing(0);
+            } else {
+                _usedRotors[i].setRing(rings.charAt(i - 1));
+            }
+        }
+        _keystream = null;
+    }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = new Reflector("plugboard", plugboard);
         hasPlugboard = true;
+        _keystream = null;
+    }
 
+    /** Returns my plugboard permutation, or null if I have none. */
+    Permutation plugboard() {
+        return hasPlugboard ? _plugboard.permutation() : null;
     }
 
     /** Returns the result of converting the input character C (as an
@@ -86,30 +155,127 @@ class Machine {
 
      *  the machine. */
     int convert(int c) {
+        if (_trace != null) {
+            _trace.before(_usedRotors);
+        }
+        step();
+        int curr = c;
+        if (hasPlugboard) {
+            curr = _plugboard.convertForward(curr);
+        }
+        curr = scramble(curr);
+        if (hasPlugboard) {
+            curr = _plugboard.convertBackward(curr);
+        }
+        if (_trace != null) {
+            _trace.after(_usedRotors, c, curr);
+        }
 
-        ArrayList<Rotor> toAdv = new ArrayList<>();
-        for (int i = _usedRotors.length - 2; i >= 0; i -= 1) {
-            Rotor currRotor = _usedRotors[i];
-            Rotor prevRotor = _usedRotors[i + 1];
-            if (currRotor.rotates()) {
-                if (prevRotor.atNotch()) {
-                    toAdv.add(currRotor);
-                    if (prevRotor != _fastRotor) {
-                        if (!toAdv.contains(prevRotor)) {
-                            toAdv.add(prevRotor);
-                        }
-                    }
+        return curr;
+    }
+
+    /** Advance my rotors by one keystroke and store in PERM the
+     *  permutation of indices that convert(int) would then apply, without
+     *  tracing or counting the conversion.  INNER holds the permutation
+     *  applied between the fast rotor's forward and backward passes,
+     *  which is only recomputed when a rotor other than the fast one
+     *  moves; fill it with -1 before the first call. */
+    void keystroke(int[] perm, int[] inner) {
+        long notchSteps = _notchSteps;
+        step();
+        int last = _usedRotors.length - 1;
+        if (inner[0] < 0 || _notchSteps != notchSteps) {
+            for (int c = 0; c < inner.length; c += 1) {
+                int curr = c;
+                for (int i = last - 1; i >= 0; i -= 1) {
+                    curr = _usedRotors[i].convertForward(curr);
+                }
+                for (int i = 1; i < last; i += 1) {
+                    curr = _usedRotors[i].convertBackward(curr);
                 }
+                inner[c] = curr;
             }
         }
-        toAdv.add(_fastRotor);
-        for (Rotor r : toAdv) {
-            r.advance();
+        Rotor fast = _usedRotors[last];
+        for (int c = 0; c < perm.length; c += 1) {
+            int curr = hasPlugboard ? _plugboard.convertForward(c) : c;
+            curr = fast.convertBackward(inner[fast.convertForward(curr)]);
+            perm[c] = hasPlugboard ? _plugboard.convertBackward(curr) : curr;
         }
-        int curr = c;
-        if (hasPlugboard) {
-            curr = _plugboard.convertForward(curr);
+    }
+
+    /** Advance my rotors by one keystroke, as happens before each
+     *  character is converted. */
+    void step() {
+        int last = _usedRotors.length - 1;
+        for (int i = last - 1; i >= 0; i -= 1) {
+            if (_usedRotors[i].rotates() && _usedRotors[i + 1].atNotch()) {
+                _advancing[i] = true;
+                if (i + 1 != last) {
+                    _advancing[i + 1] = true;
+                }
+            }
+        }
+        for (int i = 0; i < last; i += 1) {
+            if (_advancing[i]) {
+                _usedRotors[i].advance();
+                _advancing[i] = false;
+                _notchSteps += 1;
+            }
+        }
+        _usedRotors[last].advance();
+    }
+
+    /** Advance my rotors by N keystrokes, leaving them as N calls of
+     *  step() would, without converting anything.  Runs of keystrokes
+     *  that move only the fast rotor (everything between its notches,
+     *  unless another pawl is engaged) are taken in one jump, so this
+     *  takes time proportional to the number of notches passed rather
+     *  than to N. */
+    void skip(long n) {
+        int last = _usedRotors.length - 1;
+        Rotor fast = _usedRotors[last];
+        int size = _alphabet.size();
+        while (n > 0) {
+            if (!fast.rotates()) {
+                if (!engaged(last - 1)) {
+                    return;
+                }
+            } else if (!engaged(last - 1)) {
+                long run = n;
+                if (_usedRotors[last - 1].rotates()
+                    && fast.notchDistance() >= 0) {
+                    run = Math.min(n, fast.notchDistance());
+                }
+                fast.set((int) ((fast.setting() + run) % size));
+                n -= run;
+                if (n == 0) {
+                    return;
+                }
+            }
+            step();
+            n -= 1;
+        }
+    }
+
+    /** Return true iff some pawl left of slot LIMIT would push on the
+     *  next step(): the rotor in some slot I < LIMIT rotates and the
+     *  one in slot I + 1 is at a notch. */
+    private boolean engaged(int limit) {
+        for (int i = 0; i < limit; i += 1) {
+            if (_usedRotors[i].rotates() && _usedRotors[i + 1].atNotch()) {
+                return true;
+            }
         }
+        return false;
+    }
+
+    /** Returns the result of passing C (an index in the range
+     *  0..alphabet size - 1) through my rotors, reflector and back
+     *  again at their current settings, bypassing the plugboard and
+     *  without advancing anything. */
+    int scramble(int c) {
+        int curr = c;
         int currRotorInd = _usedRotors.length - 1;
         while (currRotorInd >= 0) {
             Rotor currRotor = _usedRotors[currRotorInd];
@@ -122,47 +288,246 @@ class Machine {
             curr = currRotor.convertBackward(curr);
             currRotorInd += 1;
         }
-        if (hasPlugboard) {
-            curr = _plugboard.convertBackward(curr);
-        }
-
         return curr;
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
-     *  the rotors accordingly. */
+     *  the rotors accordingly.  Characters outside my alphabet are
+     *  treated according to passthrough(). */
     String convert(String msg) {
+        char[] buf = msg.toCharArray();
+        int n = convert(buf, 0, buf.length, buf, 0);
+        return new String(buf, 0, n);
+    }
 
-        msg = msg.toUpperCase();
-        msg = msg.replaceAll(" ", "");
+    /** Convert the characters SRC[FROM .. TO-1] into DST starting at
+     *  index OUT, returning the number of characters written.  This is
+     *  less than TO - FROM if passthrough() drops characters.  SRC and
+     *  DST may be the same array.  A character not in my alphabet is
+     *  first upper-cased; if that does not help, it is passed through
+     *  according to passthrough() without advancing the rotors. */
+    int convert(char[] src, int from, int to, char[] dst, int out) {
+        int k = out;
+        long converted = 0, notchSteps = _notchSteps;
+        int row = keystreamRow();
+        long tabled = 0;
+        try {
+            for (int i = from; i < to; i += 1) {
+                int c = code(src[i]);
+                if (c >= 0) {
+                    if (row >= 0) {
+                        dst[k] = _alphabet.toChar(_keystream.get(row, c));
+                        row = _keystream.next(row);
+                        tabled += 1;
+                        if (row < 0) {
+                            syncKeystream(tabled, row);
+                            tabled = 0;
+                        }
+                    } else {
+                        dst[k] = _alphabet.toChar(convert(c));
+                    }
+                    k += 1;
+                    converted += 1;
+                } else if (c != DROPPED) {
+                    dst[k] = (char) (-1 - c);
+                    k += 1;
+                }
+            }
+        } finally {
+            if (tabled > 0) {
+                syncKeystream(tabled, row);
+            }
+        }
+        if (_stats != null) {
+            _stats.addCharacters(converted);
+            _stats.addNotchSteps(_notchSteps - notchSteps);
+        }
+        return k - out;
+    }
 
-        if (msg.length() == 0) {
-            return "";
+    /** Return the code of CH used by encode: its index in my alphabet
+     *  (after upper-casing it if it is not in the alphabet), -1 - CH if
+     *  it is not in the alphabet and passthrough() preserves it, or
+     *  DROPPED if it is dropped.  Throws an exception if it is
+     *  rejected, with the same message as before passthrough policies
+     *  existed. */
+    private int code(char ch) {
+        if (member(ch)) {
+            return _alphabet.toInt(ch);
+        }
+        char upper = Character.toUpperCase(ch);
+        if (member(upper)) {
+            return _alphabet.toInt(upper);
+        }
+        if (_passthrough == Passthrough.PRESERVE) {
+            return -1 - ch;
+        } else if (_passthrough == Passthrough.REJECT && ch != ' ') {
+            throw error("character out of range");
         }
+        return DROPPED;
+    }
 
-        String output = "";
-        for (int i = 0; i < msg.length(); i += 1) {
-            output += convertFromMessage(msg.charAt(i));
+    /** Store in DST starting at OUT the codes of the characters
+     *  SRC[FROM .. TO-1] that are not dropped, returning their number.
+     *  A code is the character's index in my alphabet, or -1 - CH for a
+     *  character CH that passthrough() preserves.  Converting the codes
+     *  with convert(int[], ...) has the same result and effect as
+     *  converting the characters with convert(char[], ...), and the
+     *  codes may be converted by any machine with my alphabet and
+     *  passthrough policy. */
+    int encode(char[] src, int from, int to, int[] dst, int out) {
+        int k = out;
+        for (int i = from; i < to; i += 1) {
+            int c = code(src[i]);
+            if (c != DROPPED) {
+                dst[k] = c;
+                k += 1;
+            }
         }
-        return output;
+        return k - out;
     }
 
-    /** If character CH is a whitespace, returns whitespace,
-     * otherwise returns the result of passing the
-     * converted character (into an integer) into the convert
-     * method and then converting that result into a String. */
+    /** Convert the codes SRC[FROM .. TO-1] produced by encode into DST
+     *  starting at OUT, returning the number of characters written
+     *  (always TO - FROM). */
+    int convert(int[] src, int from, int to, char[] dst, int out) {
+        int k = out;
+        long converted = 0, notchSteps = _notchSteps;
+        int row = keystreamRow();
+        long tabled = 0;
+        for (int i = from; i < to; i += 1) {
+            int c = src[i];
+            if (c >= 0) {
+                if (row >= 0) {
+                    dst[k] = _alphabet.toChar(_keystream.get(row, c));
+                    row = _keystream.next(row);
+                    tabled += 1;
+                    if (row < 0) {
+                        syncKeystream(tabled, row);
+                        tabled = 0;
+                    }
+                } else {
+                    dst[k] = _alphabet.toChar(convert(c));
+                }
+                converted += 1;
+            } else {
+                dst[k] = (char) (-1 - c);
+            }
+            k += 1;
+        }
+        if (tabled > 0) {
+            syncKeystream(tabled, row);
+        }
+        if (_stats != null) {
+            _stats.addCharacters(converted);
+            _stats.addNotchSteps(_notchSteps - notchSteps);
+        }
+        return k - out;
+    }
+
+    /** Convert characters with TABLE, which must be the keystream table
+     *  of my current rotors and plugboard (see TableStore), instead of by
+     *  passing them through the rotors, or stop if TABLE is null.  The
+     *  rotors are still advanced, so my state is the same either way.
+     *  Changing the rotors, rings or plugboard stops the use of TABLE, as
+     *  does reaching rotor settings or keystrokes TABLE does not cover,
+     *  and it is not used while tracing. */
+    void setKeystream(KeystreamTable table) {
+        _keystream = table;
+        _keystreamRow = 0;
+    }
 
-    String convertFromMessage(char ch) {
-        char curr = ch;
-        char convertChar;
-        if (curr == ' ') {
-            return Character.toString(curr);
+    /** Advance my rotors by the N keystrokes just converted with my
+     *  keystream table, whose row for the next keystroke is ROW, or -1
+     *  if the table has run out (I then stop using it). */
+    private void syncKeystream(long n, int row) {
+        skip(n);
+        _keystreamRow = row;
+        if (row < 0) {
+            _keystream = null;
         }
-        int convertInt = _alphabet.toInt(curr);
-        convertInt = convert(convertInt);
-        convertChar = _alphabet.toChar(convertInt);
+    }
 
-        return Character.toString(convertChar);
+    /** Return the row of my keystream table for my current rotor
+     *  settings, or -1 if I am not using one. */
+    private int keystreamRow() {
+        if (_keystream == null || _trace != null) {
+            return -1;
+        }
+        int row = _keystream.find(_usedRotors, _keystreamRow);
+        if (row < 0) {
+            _keystream = null;
+        }
+        return row;
+    }
+
+    /** Returns true iff CH is in my alphabet. */
+    boolean member(char ch) {
+        int word = ch / BITS;
+        return word < _members.length && (_members[word] & 1L << ch) != 0;
+    }
+
+    /** Report characters converted by convert(char[], ...) and
+     *  convert(String), and notch-driven rotor advances, to STATS, or
+     *  to nothing if STATS is null. */
+    void setStats(Stats stats) {
+        _stats = stats;
+    }
+
+    /** Record every character converted by convert(int) in TRACE, or
+     *  stop tracing if TRACE is null. */
+    void setTrace(StepTrace trace) {
+        _trace = trace;
+    }
+
+    /** Returns the number of times a rotor other than the fast one has
+     *  advanced since I was made. */
+    long notchSteps() {
+        return _notchSteps;
+    }
+
+    /** Returns my policy for characters not in my alphabet. */
+    Passthrough passthrough() {
+        return _passthrough;
+    }
+
+    /** Set passthrough() to POLICY. */
+    void setPassthrough(Passthrough policy) {
+        _passthrough = policy;
+    }
+
+    /** Returns a machine with the same configuration, rotor order,
+     *  rotor settings and plugboard as mine, but with its own rotors, so
+     *  that the two can be advanced independently (e.g., on different
+     *  threads).  The copy's rotors share my rotors' wiring tables, and
+     *  it keeps my table budget. */
+    Machine copy() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (Rotor r : _allRotors) {
+            rotors.add(r.copy());
+        }
+        Machine result =
+            new Machine(_alphabet, _numRotors, _pawls, rotors, _tableBudget);
+        for (int i = 0; i < _usedRotors.length; i += 1) {
+            if (_usedRotors[i] != null) {
+                Rotor r = rotors.get(_allRotors.indexOf(_usedRotors[i]));
+                r.set(_usedRotors[i].setting());
+                result._usedRotors[i] = r;
+            }
+        }
+        result._fastRotor = result._usedRotors[_usedRotors.length - 1];
+        result._plugboard = _plugboard;
+        result.hasPlugboard = hasPlugboard;
+        result._passthrough = _passthrough;
+        result._stats = _stats;
+        result._keystream = _keystream;
+        result._keystreamRow = _keystreamRow;
+        return result;
+    }
+
+    /** Returns my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
     }
 
     /** Returns my list of all rotors. */
@@ -196,4 +561,43 @@ class Machine {
     /** My furthest-right rotor. */
     private Rotor _fastRotor;
 
+    /** Scratch flags used by step() to mark the rotors that advance. */
+    private final boolean[] _advancing;
+
+    /** What to do with characters not in my alphabet. */
+    private Passthrough _passthrough;
+
+    /** Where to report statistics, or null. */
+    private Stats _stats;
+
+    /** Trace of my steps, or null. */
+    private StepTrace _trace;
+
+    /** Keystream table of my current key, or null. */
+    private KeystreamTable _keystream;
+
+    /** Row of _keystream for the next keystroke, if my rotors have not
+     *  been moved by other means. */
+    private int _keystreamRow;
+
+    /** Number of advances of rotors other than the fast one. */
+    private long _notchSteps;
+
+    /** Bit ch % BITS of _members[ch / BITS] is set iff character ch is in
+     *  my alphabet. */
+    private final long[] _members;
+
+    /** Limit on the total size of my rotors' wiring tables, in bytes,
+     *  for which their representations were chosen. */
+    private long _tableBudget;
+
+    /** Default total size of my rotors' wiring tables, in bytes. */
+    static final long DEFAULT_TABLE_BUDGET = 1 << 22;
+
+    /** Number of bits in each element of _members. */
+    private static final int BITS = 64;
+
+    /** Code (see code) of a character that is dropped. */
+    private static final int DROPPED = Integer.MIN_VALUE;
+
 }
@@ -0,0 +1,203 @@
+package enigma;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author A.R. LOEFFLER
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Name of the configuration used in these tests. */
+    private static final String CONFIG = "testing/correct/default.conf";
+
+    /** Set up M, a machine from CONFIG, according to SETTINGS. */
+    private void setUp(Machine m, String settings) {
+        Main config = new Main(Main.getInput(CONFIG));
+        config.readConfig();
+        config.setUp(m, settings);
+    }
+
+    /** Number of steps in the long skip tested by checkSkip. */
+    private static final int LONG_SKIP = 100003;
+
+    /** Settings used by most tests. */
+    private static final String SETTINGS = "* B BETA III IV I AXLE (YF) (ZH)";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRejectDropsBlanksOnly() {
+        Machine m = machine(CONFIG, SETTINGS);
+        assertEquals(machine(CONFIG, SETTINGS).convert("HELLOWORLD"),
+                     m.convert("Hello World"));
+        try {
+            m.convert("HELLO, WORLD");
+            fail("expected an error");
+        } catch (EnigmaException excp) {
+            assertEquals("character out of range", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void checkPreserve() {
+        String plain = "HELLOWORLD";
+        String cipher = machine(CONFIG, SETTINGS).convert(plain);
+        Machine m = machine(CONFIG, SETTINGS);
+        m.setPassthrough(Passthrough.PRESERVE);
+        assertEquals(cipher.substring(0, 5) + ", " + cipher.substring(5)
+                     + "! 42", m.convert("Hello, World! 42"));
+    }
+
+    @Test
+    public void checkDrop() {
+        String cipher = machine(CONFIG, SETTINGS).convert("HELLOWORLD");
+        Machine m = machine(CONFIG, SETTINGS);
+        m.setPassthrough(Passthrough.DROP);
+        assertEquals(cipher, m.convert("Hello, World! 42\t"));
+    }
+
+    @Test
+    public void checkBulkInPlace() {
+        String cipher = machine(CONFIG, SETTINGS).convert("HELLOWORLD");
+        Machine m = machine(CONFIG, SETTINGS);
+        m.setPassthrough(Passthrough.DROP);
+        char[] buf = "..hello, world..".toCharArray();
+        assertEquals(10, m.convert(buf, 2, 14, buf, 0));
+        assertEquals(cipher, new String(buf, 0, 10));
+    }
+
+    @Test
+    public void checkRepresentationsAgree() {
+        String plain = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG".repeat(30);
+        String expected = machine(CONFIG, SETTINGS).convert(plain);
+        for (Rotor.Representation kind : Rotor.Representation.values()) {
+            Machine m = machine(CONFIG, SETTINGS);
+            for (Rotor r : m.allRotors()) {
+                r.represent(kind);
+            }
+            assertEquals(kind.toString(), expected, m.convert(plain));
+        }
+        Machine m = machine(CONFIG, SETTINGS);
+        m.setTableBudget(0);
+        assertEquals(Rotor.Representation.OFFSET,
+                     m.allRotors().get(0).representation());
+        assertEquals(expected, m.convert(plain));
+        Machine copy = machine(CONFIG, SETTINGS);
+        copy.setTableBudget(0);
+        copy = copy.copy();
+        for (Rotor r : copy.allRotors()) {
+            assertEquals(Rotor.Representation.OFFSET, r.representation());
+        }
+        assertEquals(expected, copy.convert(plain));
+        copy = copy.copy();
+        copy.setTableBudget(Machine.DEFAULT_TABLE_BUDGET);
+        assertEquals(Rotor.Representation.TABLE,
+                     copy.copy().allRotors().get(0).representation());
+    }
+
+    @Test
+    public void checkLargeAlphabet() {
+        Alphabet alpha = CharacterSet.parse("\\u0000-\\uFFFF");
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", Permutation.random(alpha, 1, true)));
+        rotors.add(new MovingRotor("L", Permutation.random(alpha, 2, false),
+                                   "A"));
+        rotors.add(new MovingRotor("F", Permutation.random(alpha, 3, false),
+                                   "B"));
+        Machine m = new Machine(alpha, 3, 2, rotors);
+        assertEquals(Rotor.Representation.COMPACT,
+                     rotors.get(1).representation());
+        m.insertRotors(new String[] { "R", "L", "F" });
+        m.setRotors("AZ");
+        Machine copy = m.copy();
+        char[] text = new char[100000];
+        for (int i = 0; i < text.length; i += 1) {
+            text[i] = (char) (i * 7919);
+        }
+        char[] cipher = new char[text.length];
+        m.convert(text, 0, text.length, cipher, 0);
+        copy.convert(cipher, 0, cipher.length, cipher, 0);
+        assertArrayEquals(text, cipher);
+    }
+
+    @Test
+    public void checkMembership() {
+        Machine m = machine(CONFIG, SETTINGS);
+        assertTrue(m.member('A'));
+        assertTrue(m.member('Z'));
+        assertFalse(m.member('a'));
+        assertFalse(m.member('\uFFFF'));
+        assertFalse(m.member('@'));
+    }
+
+    @Test
+    public void checkRings() {
+        assertEquals("BDZGO", machine(CONFIG, "* B BETA I II III AAAA AAAA")
+                     .convert("AAAAA"));
+        assertEquals("EWTYX", machine(CONFIG, "* B BETA I II III AAAA ABBB")
+                     .convert("AAAAA"));
+        Machine m = machine(CONFIG, "* B BETA I II III AAAA ABBB");
+        m.setTableBudget(0);
+        assertEquals("EWTYX", m.convert("AAAAA"));
+        String plain = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG".repeat(30);
+        String ringed = "* B BETA III IV I AXLE QRST (YF) (ZH)";
+        String expected = machine(CONFIG, ringed).convert(plain);
+        for (Rotor.Representation kind : Rotor.Representation.values()) {
+            m = machine(CONFIG, SETTINGS);
+            for (Rotor r : m.allRotors()) {
+                r.represent(kind);
+            }
+            setUp(m, ringed);
+            assertEquals(kind.toString(), expected, m.convert(plain));
+            assertEquals(expected,
+                         machine(CONFIG, ringed).copy().convert(plain));
+        }
+        m = machine(CONFIG, ringed);
+        setUp(m, SETTINGS);
+        assertEquals(machine(CONFIG, SETTINGS).convert(plain),
+                     m.convert(plain));
+    }
+
+    @Test
+    public void checkSkip() {
+        String[] keys = {
+            SETTINGS, "* B BETA I II III AADU", "* C GAMMA VI VII VIII ZZLY",
+            "* B BETA VIII I VI AZMZ QRST",
+        };
+        for (String key : keys) {
+            Machine start = machine(CONFIG, key), stepped = start.copy();
+            for (int n = 0; n < 2000; n += 1) {
+                Machine skipped = start.copy();
+                skipped.skip(n);
+                for (int i = 0; i < stepped.numRotors(); i += 1) {
+                    assertEquals(key + " " + n,
+                                 stepped.usedRotors()[i].setting(),
+                                 skipped.usedRotors()[i].setting());
+                }
+                stepped.step();
+            }
+        }
+        Machine stepped = machine(CONFIG, keys[2]),
+            skipped = machine(CONFIG, keys[2]);
+        for (int n = 0; n < LONG_SKIP; n += 1) {
+            stepped.step();
+        }
+        skipped.skip(LONG_SKIP);
+        String plain = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        assertEquals(stepped.convert(plain), skipped.convert(plain));
+    }
+
+}
@@ -1,10 +1,19 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 
@@ -16,7 +25,45 @@ import static enigma.EnigmaException.*;
 public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
-     *  specified by ARGS, where 1 <= ARGS.length <= 3.
+     *  specified by ARGS, where 1 <= ARGS.length <= 3 after any leading
+     *  options.  Options are:
+     *  --passthrough=POLICY says what to do with message characters
+     *    outside the alphabet: reject (the default; blanks are dropped
+     *    and anything else is an error), preserve (copy them in place;
+     *    output is then not regrouped into fives) or drop (leave them
+     *    out).
+     *  --table-budget=BYTES bounds the memory used for rotor wiring
+     *    tables (see Machine.setTableBudget).
+     *  --table-store=DIR converts with keystream tables kept in DIR and
+     *    shared with other runs (see TableStore).
+     *  --table-store-limit=BYTES bounds the size of the tables in
+     *    --table-store (default 256 MiB).
+     *  --key-cache=ENTRIES keeps up to ENTRIES recently used settings
+     *    lines in memory (see KeyCache).
+     *  --key-cache-steps=N keeps tables of the first N keystrokes
+     *    (default 256) of each --key-cache entry.
+     *  --stats collects counts and timings (see Stats), publishes them
+     *    as the JMX MBean enigma:type=Stats and prints them on the
+     *    standard error on exit.
+     *  --trace=FILE records every step of the machine in FILE (see
+     *    StepTrace; decode it with java enigma.StepTrace).
+     *  --pipeline reads, converts and writes on separate threads (see
+     *    Pipeline), with the same output.
+     *  --checkpoint=FILE (which implies --pipeline and needs input and
+     *    output files) saves the state of the run in FILE.
+     *  --every=SECONDS sets the period of --checkpoint (default 60).
+     *  --resume continues a run from its --checkpoint FILE, appending
+     *    to the output exactly what the stopped run would have written,
+     *    or, with --shards, runs again only the shards the manifest
+     *    does not record as done.
+     *  --shards=N (which needs input and output files) splits the input
+     *    into N shards converted by N worker JVMs (see ShardedRun).
+     *  --manifest=FILE names the manifest of --shards (default: the
+     *    output file name followed by .manifest).
+     *  --shard=K, used by the workers of --shards, converts shard K of
+     *    --manifest.
+     *  --threads=N converts the messages under different settings lines
+     *    on N threads (see ParallelRun), with the same output.
      *  ARGS[0] is the name of a configuration file.
      *  ARGS[1] is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
@@ -26,7 +73,9 @@ public final class Main {
      *  otherwise with code 1. */
     public static void main(String... args) {
         try {
-            new Main(args).process();
+            Main main = new Main(args);
+            main.process();
+            main.finish();
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -36,27 +85,153 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        int a = 0;
+        _passthrough = Passthrough.REJECT;
+        _tableBudget = -1;
+        while (a < args.length && args[a].startsWith("--")) {
+            if (args[a].startsWith("--passthrough=")) {
+                _passthrough = Passthrough.parse(
+                    args[a].substring("--passthrough=".length()));
+            } else if (args[a].startsWith("--table-budget=")) {
+                try {
+                    _tableBudget = Long.parseLong(
+                        args[a].substring("--table-budget=".length()));
+                } catch (NumberFormatException excp) {
+                    throw error("bad table budget: %s", args[a]);
+                }
+            } else if (args[a].startsWith("--table-store=")) {
+                _tableStoreName = args[a].substring(
+                    "--table-store=".length());
+            } else if (args[a].startsWith("--table-store-limit=")) {
+                try {
+                    _tableStoreLimit = Long.parseLong(
+                        args[a].substring("--table-store-limit=".length()));
+                } catch (NumberFormatException excp) {
+                    throw error("bad table store limit: %s", args[a]);
+                }
+            } else if (args[a].startsWith("--key-cache=")) {
+                _keyCacheEntries = cacheSize(args[a], "--key-cache=");
+            } else if (args[a].startsWith("--key-cache-steps=")) {
+                _keyCacheSteps = cacheSize(args[a], "--key-cache-steps=");
+            } else if (args[a].startsWith("--trace=")) {
+                _traceName = args[a].substring("--trace=".length());
+            } else if (args[a].equals("--pipeline")) {
+                _pipeline = true;
+            } else if (args[a].startsWith("--checkpoint=")) {
+                _checkpointName = args[a].substring("--checkpoint=".length());
+                _pipeline = true;
+            } else if (args[a].startsWith("--every=")) {
+                try {
+                    _checkpointPeriod = MILLIS_PER_SECOND * Long.parseLong(
+                        args[a].substring("--every=".length()));
+                } catch (NumberFormatException excp) {
+                    throw error("bad checkpoint period: %s", args[a]);
+                }
+            } else if (args[a].startsWith("--shards=")) {
+                _shards = shardCount(args[a], "--shards=");
+            } else if (args[a].startsWith("--shard=")) {
+                _shard = shardCount(args[a], "--shard=");
+            } else if (args[a].startsWith("--manifest=")) {
+                _manifestName = args[a].substring("--manifest=".length());
+            } else if (args[a].startsWith("--threads=")) {
+                _threads = threadCount(args[a], "--threads=");
+            } else if (args[a].equals("--resume")) {
+                _resume = true;
+            } else if (args[a].equals("--stats")) {
+                _stats = new Stats();
+                _stats.register(MBEAN_NAME);
+            } else {
+                throw error("unknown option: %s", args[a]);
+            }
+            a += 1;
+        }
+        args = Arrays.copyOfRange(args, a, args.length);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
+        if (_resume && _checkpointName == null && _shards == 0) {
+            throw error("--resume needs --checkpoint or --shards");
+        }
+        if ((_shards > 0 || _shard >= 0)
+            && (args.length != 3 || _checkpointName != null)) {
+            throw error("--shards needs input and output files and no "
+                        + "--checkpoint");
+        }
+        if (_shard >= 0 && _manifestName == null) {
+            throw error("--shard needs --manifest");
+        }
+        if (_checkpointName != null && args.length != 3) {
+            throw error("--checkpoint needs input and output files");
+        }
+        if (_threads > 0 && (_pipeline || _shards > 0 || _shard >= 0
+                             || _traceName != null)) {
+            throw error("--threads cannot be combined with --pipeline, "
+                        + "--checkpoint, --shards or --trace");
+        }
 
         _config = getInput(args[0]);
-
-        if (args.length > 1) {
-            _input = getInput(args[1]);
-        } else {
-            _input = new Scanner(System.in);
+        if (_keyCacheEntries > 0) {
+            _keyCache = new KeyCache(_keyCacheEntries, _keyCacheSteps,
+                                     _stats);
+        }
+        if (_tableStoreName != null) {
+            _tableStore = new TableStore(new File(_tableStoreName),
+                                         _tableStoreLimit);
         }
 
-        if (args.length > 2) {
-            _output = getOutput(args[2]);
+        InputStream in = System.in;
+        PrintStream out = System.out;
+        if (_shards > 0) {
+            _files = args;
+            if (_manifestName == null) {
+                _manifestName = args[2] + ".manifest";
+            }
+            if (_resume) {
+                _sharded = ShardedRun.load(new File(_manifestName));
+                _sharded.check(args[1], args[2]);
+            }
+        } else if (_shard >= 0) {
+            _sharded = ShardedRun.load(new File(_manifestName));
+            if (_shard >= _sharded.shards().size()) {
+                throw error("no shard %d in %s", _shard, _manifestName);
+            }
+            ShardedRun.Shard shard = _sharded.shards().get(_shard);
+            _resumeFrom = shard.start();
+            _pipeline = true;
+            in = _sharded.open(_shard, openInput(args[1]));
+            out = getOutput(args[2]);
+        } else if (_checkpointName != null) {
+            FileInputStream file = openInput(args[1]);
+            out = openCheckpointed(file, args[2]);
+            in = file;
         } else {
-            _output = System.out;
+            if (args.length > 1) {
+                in = openInput(args[1]);
+            }
+            if (args.length > 2) {
+                out = getOutput(args[2]);
+            }
+        }
+        if (_stats != null) {
+            in = _stats.counting(in);
+            out = new PrintStream(_stats.counting(out));
         }
+        _inputStream = in;
+        _input = new Scanner(in);
+        _output = out;
+    }
+
+    /** A Main that only reads the machine configuration from CONFIG, for
+     *  use by other tools in this package that need readConfig and
+     *  setUp but do their own input and output. */
+    Main(Scanner config) {
+        _config = config;
+        _passthrough = Passthrough.REJECT;
+        _tableBudget = -1;
     }
 
     /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    static Scanner getInput(String name) {
         try {
             return new Scanner(new File(name));
         } catch (IOException excp) {
@@ -64,6 +239,55 @@ public final class Main {
         }
     }
 
+    /** Return an InputStream reading from the file named NAME. */
+    private FileInputStream openInput(String name) {
+        try {
+            return new FileInputStream(name);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return the non-negative count in ARG, which starts with OPTION. */
+    private static int shardCount(String arg, String option) {
+        try {
+            int n = Integer.parseInt(arg.substring(option.length()));
+            if (n >= 0) {
+                return n;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("bad shard count: %s", arg);
+    }
+
+    /** Return the positive size in ARG, which starts with OPTION. */
+    private static int cacheSize(String arg, String option) {
+        try {
+            int n = Integer.parseInt(arg.substring(option.length()));
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("bad key cache size: %s", arg);
+    }
+
+    /** Return the positive thread count in ARG, which starts with
+     *  OPTION. */
+    private static int threadCount(String arg, String option) {
+        try {
+            int n = Integer.parseInt(arg.substring(option.length()));
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("bad thread count: %s", arg);
+    }
+
     /** Return a PrintStream writing to the file named NAME. */
     private PrintStream getOutput(String name) {
         try {
@@ -73,11 +297,63 @@ public final class Main {
         }
     }
 
+    /** Return a PrintStream writing to the file named NAME, for a run
+     *  that saves checkpoints, and set _outputChannel to its channel.  If
+     *  resuming, first load _resumeFrom, position IN after the input it
+     *  records and cut the output back to what it records. */
+    private PrintStream openCheckpointed(FileInputStream in, String name) {
+        try {
+            if (_resume) {
+                _resumeFrom = PipelineCheckpoint.load(
+                    new File(_checkpointName));
+                try (FileChannel out = FileChannel.open(
+                         Paths.get(name), StandardOpenOption.WRITE)) {
+                    if (out.size() < _resumeFrom.outputBytes()
+                        || in.getChannel().size()
+                           < _resumeFrom.inputBytes()) {
+                        throw error("%s does not match the files",
+                                    _checkpointName);
+                    }
+                    out.truncate(_resumeFrom.outputBytes());
+                }
+                in.getChannel().position(_resumeFrom.inputBytes());
+            }
+            FileOutputStream out = new FileOutputStream(name, _resume);
+            _outputChannel = out.getChannel();
+            return new PrintStream(out);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
     private void process() {
+        long start = clock();
         Machine m = readConfig();
+        lap(Stats.Stage.CONFIG, start);
+        m.setStats(_stats);
+        m.setPassthrough(_passthrough);
+        if (_traceName != null) {
+            _trace = new StepTrace(_traceName, m.numRotors());
+            m.setTrace(_trace);
+        }
+        if (_tableBudget >= 0) {
+            m.setTableBudget(_tableBudget);
+        }
+        if (_shards > 0) {
+            runShards(m);
+            return;
+        }
+        if (_pipeline) {
+            runPipeline(m);
+            return;
+        }
+        if (_threads > 0) {
+            runParallel(m);
+            return;
+        }
 
         boolean settingsRead = false;
         boolean firstRun = true;
@@ -87,7 +363,12 @@ public final class Main {
                 throw error("No configuration line in input");
             }
             if (toRead.startsWith("*")) {
+                start = clock();
                 setUp(m, toRead);
+                lap(Stats.Stage.SETUP, start);
+                if (_stats != null) {
+                    _stats.addSettingsLine();
+                }
                 settingsRead = true;
             } else if (toRead.isEmpty()) {
                 _output.println();
@@ -96,7 +377,18 @@ public final class Main {
                     _output.println();
                 }
                 firstRun = false;
-                printMessageLine(m.convert(toRead));
+                start = clock();
+                String result = m.convert(toRead);
+                long now = lap(Stats.Stage.CONVERT, start);
+                if (_passthrough != Passthrough.PRESERVE) {
+                    result = formatMessageLine(result);
+                }
+                now = lap(Stats.Stage.FORMAT, now);
+                _output.print(result);
+                lap(Stats.Stage.OUTPUT, now);
+                if (_stats != null) {
+                    _stats.addMessage(start);
+                }
             }
         }
         boolean hadLine = false;
@@ -111,18 +403,97 @@ public final class Main {
         }
     }
 
+    /** Apply M to the messages in _input, sending the results to _output,
+     *  using a Pipeline, with checkpoints if requested. */
+    private void runPipeline(Machine m) {
+        Pipeline pipeline =
+            new Pipeline(this, m, new InputStreamReader(_inputStream),
+                         new OutputStreamWriter(_output), _passthrough,
+                         _stats);
+        if (_checkpointName != null) {
+            pipeline.checkpoint(new File(_checkpointName),
+                                _checkpointPeriod, _outputChannel);
+        }
+        if (_resumeFrom != null) {
+            if (_resumeFrom.plugboard() != null) {
+                setUp(m, _resumeFrom.plugboard());
+            }
+            if (_resumeFrom.settings() != null) {
+                setUp(m, _resumeFrom.settings());
+            }
+            int[] settings = _resumeFrom.rotors();
+            Rotor[] rotors = m.usedRotors();
+            if (settings.length != rotors.length) {
+                throw error("%s does not match the configuration",
+                            _checkpointName);
+            }
+            for (int i = 0; i < rotors.length; i += 1) {
+                if (rotors[i] != null) {
+                    rotors[i].set(settings[i]);
+                }
+            }
+            pipeline.resume(_resumeFrom);
+        }
+        pipeline.run();
+    }
+
+    /** Apply copies of M to the messages in _input, sending the results
+     *  to _output, on _threads threads. */
+    private void runParallel(Machine m) {
+        try {
+            new ParallelRun(this, m, _input, new OutputStreamWriter(_output),
+                            _threads, _stats).run();
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Convert _files[1] into _files[2] with worker JVMs, after planning
+     *  the shards with M unless resuming. */
+    private void runShards(Machine m) {
+        File manifest = new File(_manifestName);
+        if (_sharded == null) {
+            _sharded = ShardedRun.plan(this, m, _files[1], _files[2],
+                                       _shards);
+            _sharded.save(manifest);
+        }
+        ArrayList<String> options = new ArrayList<>();
+        options.add("--passthrough=" + _passthrough.name().toLowerCase());
+        if (_tableBudget >= 0) {
+            options.add("--table-budget=" + _tableBudget);
+        }
+        if (_tableStoreName != null) {
+            options.add("--table-store=" + _tableStoreName);
+            options.add("--table-store-limit=" + _tableStoreLimit);
+        }
+        if (_keyCache != null) {
+            options.add("--key-cache=" + _keyCacheEntries);
+            options.add("--key-cache-steps=" + _keyCacheSteps);
+        }
+        _sharded.run(options, _files[0], manifest);
+    }
+
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+     *  file _config.  The alphabet is given either as a range such as A-Z
+     *  or as a bracketed character-set declaration such as [A-Z0-9.,]
+     *  (see CharacterSet.parse). */
+    Machine readConfig() {
         try {
             String alphRange = _config.next();
-            if (!Character.isLetter(alphRange.charAt(0))
-                || (!Character.isLetter(alphRange.charAt(2))
-                || (alphRange.charAt(1) != '-'))) {
-                throw error("Need an alphabet");
+            if (alphRange.length() > 2 && alphRange.startsWith("[")
+                && alphRange.endsWith("]")) {
+                _alphabet = CharacterSet.parse(
+                    alphRange.substring(1, alphRange.length() - 1));
+            } else {
+                if (alphRange.length() != 3
+                    || !Character.isLetter(alphRange.charAt(0))
+                    || (!Character.isLetter(alphRange.charAt(2))
+                    || (alphRange.charAt(1) != '-'))) {
+                    throw error("Need an alphabet");
+                }
+                _alphabet = new CharacterRange(alphRange.charAt(0),
+                        alphRange.charAt(2));
             }
-            _alphabet = new CharacterRange(alphRange.charAt(0),
-                    alphRange.charAt(2));
             try {
                 _numRotors = Integer.parseInt(_config.next());
             } catch (NumberFormatException e) {
@@ -189,10 +560,15 @@ public final class Main {
                 throw error("Wrong rotor types specified");
             }
             String cycles = _config.nextLine().trim();
-            if (cycles.charAt(cycles.length() - 1) != ')') {
-                throw error("cycles must end in parenthesis");
+            Permutation perm;
+            if (cycles.startsWith("@")) {
+                perm = generatedWiring(cycles, typeNotch.charAt(0) == 'R');
+            } else {
+                if (cycles.charAt(cycles.length() - 1) != ')') {
+                    throw error("cycles must end in parenthesis");
+                }
+                perm = new Permutation(cycles, _alphabet);
             }
-            Permutation perm = new Permutation(cycles, _alphabet);
             if (typeNotch.charAt(0) == 'M') {
                 String notches = typeNotch.substring(1);
                 return new MovingRotor(name, perm, notches);
@@ -206,6 +582,22 @@ public final class Main {
         }
     }
 
+    /** Return the wiring described by SPEC, which has the form @SEED
+     *  and stands for a random permutation of the alphabet generated from
+     *  the integer SEED (see Permutation.random).  This lets a
+     *  configuration give wirings for alphabets, such as the 256 byte
+     *  values, whose characters cannot be written out as cycles.
+     *  REFLECTING is true for a reflector's wiring. */
+    private Permutation generatedWiring(String spec, boolean reflecting) {
+        try {
+            return Permutation.random(_alphabet,
+                                      Long.parseLong(spec.substring(1)),
+                                      reflecting);
+        } catch (NumberFormatException excp) {
+            throw error("bad wiring seed: %s", spec);
+        }
+    }
+
     /** Returns number of pawls found in the input file PAWLSFROMSETTINGS.
      * Requires a list of indeces MOVINGROTORINDECES
      * of moving rotors from all rotors */
@@ -223,8 +615,25 @@ public final class Main {
     }
 
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+     *  which must have the format specified in the assignment, except
+     *  that the rotor settings may be followed by ring settings in the
+     *  same form (first character of the alphabet if omitted).  Lines
+     *  found in the key cache, if there is one, are not parsed again. */
+    void setUp(Machine M, String settings) {
+        if (_keyCache == null || !_keyCache.apply(settings, M)) {
+            Permutation plugboard = M.plugboard();
+            readSettings(M, settings);
+            if (_keyCache != null) {
+                _keyCache.add(settings, M, M.plugboard() != plugboard);
+            }
+        }
+        if (_tableStore != null) {
+            M.setKeystream(_tableStore.table(M));
+        }
+    }
+
+    /** Set M according to the settings line SETTINGS, as for setUp. */
+    private void readSettings(Machine M, String settings) {
         Scanner myScan = new Scanner(settings);
         String ast = myScan.next().trim();
         String[] rotorsToSet = new String[M.numRotors()];
@@ -269,12 +678,25 @@ public final class Main {
         if (rotorsSettings.length() < (rotorsToSet.length - 1)) {
             throw error("Insufficient number of settings specified.");
         }
+        if (rotorsSettings.length() > rotorsToSet.length - 1) {
+            throw error("too many rotor settings");
+        }
         for (int i = 0; i < rotorsSettings.length(); i += 1) {
-            if (!Character.isLetter(rotorsSettings.charAt(i))) {
+            if (!_alphabet.contains(rotorsSettings.charAt(i))) {
                 throw error("Incorrect rotor setting type.");
             }
         }
         M.setRotors(rotorsSettings);
+        String rings = null;
+        if (myScan.hasNext() && !myScan.hasNext("\\(.*")) {
+            rings = myScan.next();
+            for (int i = 0; i < rings.length(); i += 1) {
+                if (!_alphabet.contains(rings.charAt(i))) {
+                    throw error("Incorrect ring setting type.");
+                }
+            }
+        }
+        M.setRings(rings);
         if (myScan.hasNext()) {
             String rest = myScan.nextLine().trim();
             Permutation perm = new Permutation(rest, _alphabet);
@@ -282,30 +704,138 @@ public final class Main {
         }
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
+    /** Return MSG in groups of five (except that the last group may
+     *  have fewer letters).  May be called from any thread. */
+    static String formatMessageLine(String msg) {
 
         int charsSoFar = 0;
-        String result = "";
+        StringBuilder result = new StringBuilder();
         for (int i = 0; i < msg.length(); i += 1) {
             char curr = msg.charAt(i);
             if (curr != ' ') {
                 if ((charsSoFar % 5 == 0) && (charsSoFar > 0)) {
-                    result = result +  " ";
+                    result.append(' ');
                 }
-                result = result + curr;
+                result.append(curr);
                 charsSoFar += 1;
             }
         }
 
-        _output.print(result);
+        return result.toString();
+
+    }
+
+    /** Return the current time from System.nanoTime if statistics are
+     *  being kept, and otherwise 0. */
+    private long clock() {
+        return _stats == null ? 0 : System.nanoTime();
+    }
 
+    /** If statistics are being kept, charge the time since START (from
+     *  clock()) to STAGE and return the current time; otherwise return
+     *  0. */
+    private long lap(Stats.Stage stage, long start) {
+        return _stats == null ? 0 : _stats.time(stage, start);
+    }
+
+    /** Close any step trace, and if statistics are being kept, flush the
+     *  output and print them on the standard error. */
+    private void finish() {
+        if (_trace != null) {
+            _trace.close();
+        }
+        if (_stats != null) {
+            _output.flush();
+            System.err.print(_stats.getSummary());
+        }
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
+    /** What to do with message characters not in the alphabet. */
+    private Passthrough _passthrough;
+
+    /** Name of the MBean under which statistics are published. */
+    static final String MBEAN_NAME = "enigma:type=Stats";
+
+    /** True iff messages are processed by a Pipeline. */
+    private boolean _pipeline;
+
+    /** File in which to save pipeline checkpoints, or null. */
+    private String _checkpointName;
+
+    /** Milliseconds between pipeline checkpoints. */
+    private long _checkpointPeriod = DEFAULT_CHECKPOINT_PERIOD;
+
+    /** True iff resuming from the checkpoint in _checkpointName. */
+    private boolean _resume;
+
+    /** The checkpoint being resumed from, or null. */
+    private PipelineCheckpoint _resumeFrom;
+
+    /** Number of shards for a sharded run, or 0. */
+    private int _shards;
+
+    /** Shard converted by a worker of a sharded run, or -1. */
+    private int _shard = -1;
+
+    /** Number of threads converting messages in parallel, or 0 to
+     *  convert them on the calling thread. */
+    private int _threads;
+
+    /** Name of the manifest of a sharded run, or null. */
+    private String _manifestName;
+
+    /** The sharded run being coordinated or worked on, or null. */
+    private ShardedRun _sharded;
+
+    /** Configuration, input and output file names of a sharded run. */
+    private String[] _files;
+
+    /** Channel of the output file, when saving checkpoints. */
+    private FileChannel _outputChannel;
+
+    /** Default time between checkpoints, in milliseconds. */
+    static final long DEFAULT_CHECKPOINT_PERIOD = 60000;
+
+    /** Milliseconds per second. */
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    /** The stream underlying _input. */
+    private InputStream _inputStream;
+
+    /** Name of the step trace file, or null if not tracing. */
+    private String _traceName;
+
+    /** The step trace, or null. */
+    private StepTrace _trace;
+
+    /** Statistics being kept, or null if none. */
+    private Stats _stats;
+
+    /** Limit on the size of rotor tables, or -1 for the default. */
+    private long _tableBudget;
+
+    /** Directory of the store of keystream tables, or null. */
+    private String _tableStoreName;
+
+    /** Limit on the size of the store of keystream tables. */
+    private long _tableStoreLimit = TableStore.DEFAULT_LIMIT;
+
+    /** Store of keystream tables used by setUp, or null. */
+    private TableStore _tableStore;
+
+    /** Maximum number of keys in the key cache, or 0 for none. */
+    private int _keyCacheEntries;
+
+    /** Number of keystrokes in the key cache's tables. */
+    private int _keyCacheSteps = KeyCache.DEFAULT_STEPS;
+
+    /** Cache of keystream tables of recent keys used by setUp, or
+     *  null. */
+    private KeyCache _keyCache;
+
     /** Source of input messages. */
     private Scanner _input;
 
@@ -31,6 +31,18 @@ class MovingRotor extends Rotor {
         return false;
     }
 
+    @Override
+    int notchDistance() {
+        int result = -1;
+        for (int notch : _notches) {
+            int d = permutation().wrap(notch - setting());
+            if (result < 0 || d < result) {
+                result = d;
+            }
+        }
+        return result;
+    }
+
     @Override
     boolean rotates() {
         return true;
@@ -47,6 +59,18 @@ class MovingRotor extends Rotor {
         set(permutation().wrap(setting() + 1));
     }
 
+    @Override
+    Rotor copy() {
+        String notches = "";
+        for (int notch : _notches) {
+            notches += alphabet().toChar(notch);
+        }
+        Rotor result = new MovingRotor(name(), permutation(), notches);
+        result.set(setting());
+        result.shareRepresentation(this);
+        return result;
+    }
+
     /** My number of notches. */
     private int[] _notches;
 
@@ -0,0 +1,359 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Encipherment of one input under many keys in a single pass.  For
+ *  each key (a settings line), the output is exactly what Main would
+ *  write for an input consisting of that line followed by the shared
+ *  input.  The input is read once, a block of lines at a time, and each
+ *  message line is turned into alphabet indices once (see
+ *  Machine.encode); every key's machine is then driven over the block's
+ *  indices while they are still in cache.  Keys are divided among
+ *  threads, each key's machine and output being used by one thread
+ *  only.
+ *  @author A.R. LOEFFLER
+ */
+class MultiKey {
+
+    /** A run that converts with copies of MACHINE set up by MAIN.setUp
+     *  according to each of KEYS, writing to the corresponding member of
+     *  OUTPUTS, using THREADS threads.  Converted messages are grouped in
+     *  fives unless MACHINE's passthrough policy is PRESERVE. */
+    MultiKey(Main main, Machine machine, List<String> keys,
+             List<Writer> outputs, int threads) {
+        if (keys.size() != outputs.size()) {
+            throw error("need one output per key");
+        }
+        _main = main;
+        _machine = machine;
+        _group = machine.passthrough() != Passthrough.PRESERVE;
+        _keys = new Key[keys.size()];
+        for (int i = 0; i < _keys.length; i += 1) {
+            Machine m = machine.copy();
+            main.setUp(m, keys.get(i));
+            _keys[i] = new Key(m, outputs.get(i));
+        }
+        _threads = Math.max(1, Math.min(threads, _keys.length));
+    }
+
+    /** Convert all of INPUT under every key. */
+    void run(Scanner input) throws IOException {
+        ExecutorService pool =
+            _threads > 1 ? Executors.newFixedThreadPool(_threads) : null;
+        try {
+            while (input.hasNext()) {
+                String line = input.nextLine();
+                if (line.startsWith("*")) {
+                    add(SETTINGS, line);
+                } else if (line.isEmpty()) {
+                    add(EMPTY, null);
+                } else {
+                    char[] chars = line.toCharArray();
+                    ensureCodes(_numCodes + chars.length);
+                    _numCodes += _machine.encode(chars, 0, chars.length,
+                                                 _codes, _numCodes);
+                    add(MESSAGE, null);
+                }
+                if (_numCodes >= BLOCK_CODES || _numLines >= BLOCK_LINES) {
+                    flush(pool);
+                }
+            }
+            int trailing = 0;
+            while (input.hasNextLine()) {
+                input.nextLine();
+                trailing += 1;
+            }
+            if (trailing > 0) {
+                for (int i = 0; i <= trailing; i += 1) {
+                    add(EMPTY, null);
+                }
+            }
+            flush(pool);
+            for (Key key : _keys) {
+                key.out.flush();
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /** Add a line of kind KIND to the current block, with SETTINGS
+     *  being its text if it is a settings line.  The codes of a message
+     *  line must already have been added to _codes. */
+    private void add(int kind, String settings) {
+        if (_numLines == _kinds.length) {
+            _kinds = Arrays.copyOf(_kinds, 2 * _numLines);
+            _ends = Arrays.copyOf(_ends, 2 * _numLines);
+            _settings = Arrays.copyOf(_settings, 2 * _numLines);
+        }
+        _kinds[_numLines] = kind;
+        _ends[_numLines] = _numCodes;
+        _settings[_numLines] = settings;
+        _numLines += 1;
+    }
+
+    /** Make room for at least N codes in _codes. */
+    private void ensureCodes(int n) {
+        if (_codes.length < n) {
+            _codes = Arrays.copyOf(_codes, Math.max(n, 2 * _codes.length));
+        }
+    }
+
+    /** Apply every key to the current block, using POOL if it is not
+     *  null, and start a new block. */
+    private void flush(ExecutorService pool) throws IOException {
+        if (pool == null) {
+            for (Key key : _keys) {
+                key.convertBlock();
+            }
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < _threads; t += 1) {
+                int first = t;
+                tasks.add(() -> {
+                    for (int k = first; k < _keys.length; k += _threads) {
+                        _keys[k].convertBlock();
+                    }
+                    return null;
+                });
+            }
+            try {
+                for (Future<Void> done : pool.invokeAll(tasks)) {
+                    done.get();
+                }
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw error("interrupted");
+            } catch (ExecutionException excp) {
+                Throwable cause = excp.getCause();
+                if (cause instanceof EnigmaException) {
+                    throw (EnigmaException) cause;
+                } else if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+        Arrays.fill(_settings, 0, _numLines, null);
+        _numLines = 0;
+        _numCodes = 0;
+    }
+
+    /** The state of the conversion under one key. */
+    private class Key {
+
+        /** A key using MACHINE, writing to OUT. */
+        Key(Machine machine, Writer out) {
+            this.machine = machine;
+            this.out = out;
+        }
+
+        /** Apply me to the lines of the current block, as Main.process
+         *  does. */
+        void convertBlock() throws IOException {
+            int start = 0;
+            for (int i = 0; i < _numLines; i += 1) {
+                switch (_kinds[i]) {
+                case SETTINGS:
+                    _main.setUp(machine, _settings[i]);
+                    break;
+                case EMPTY:
+                    out.write(NL);
+                    break;
+                default:
+                    if (!firstRun) {
+                        out.write(NL);
+                    }
+                    firstRun = false;
+                    int n = _ends[i] - start;
+                    if (buffer.length < 2 * n) {
+                        buffer = new char[2 * n];
+                    }
+                    machine.convert(_codes, start, _ends[i], buffer, 0);
+                    if (_group) {
+                        n = group(buffer, n);
+                    }
+                    out.write(buffer, 0, n);
+                    break;
+                }
+                start = _ends[i];
+            }
+        }
+
+        /** Rewrite the N characters at the start of BUF, which must have
+         *  room for 2N, in groups of five as Main does, returning the
+         *  new length. */
+        private int group(char[] buf, int n) {
+            System.arraycopy(buf, 0, buf, n, n);
+            int k = 0, count = 0;
+            for (int i = n; i < 2 * n; i += 1) {
+                char ch = buf[i];
+                if (ch != ' ') {
+                    if (count % GROUP == 0 && count > 0) {
+                        buf[k] = ' ';
+                        k += 1;
+                    }
+                    buf[k] = ch;
+                    k += 1;
+                    count += 1;
+                }
+            }
+            return k;
+        }
+
+        /** The machine for this key. */
+        private final Machine machine;
+
+        /** Where this key's output goes. */
+        private final Writer out;
+
+        /** True until a message has been written. */
+        private boolean firstRun = true;
+
+        /** Space for converting and grouping a message. */
+        private char[] buffer = new char[INITIAL_SIZE];
+    }
+
+    /** Encipher the input under many keys.  ARGS are optional
+     *  --passthrough=POLICY and --threads=N options (see Main; by
+     *  default, one thread per processor), followed by a configuration
+     *  file, a file of settings lines (one per line; blank lines are
+     *  ignored), an input file, and an output file name containing %d,
+     *  which is replaced by 1, 2, ... to name the output for each key in
+     *  turn. */
+    public static void main(String... args) {
+        try {
+            Passthrough passthrough = Passthrough.REJECT;
+            int threads = Runtime.getRuntime().availableProcessors();
+            int a = 0;
+            for (; a < args.length && args[a].startsWith("--"); a += 1) {
+                if (args[a].startsWith("--passthrough=")) {
+                    passthrough = Passthrough.parse(
+                        args[a].substring("--passthrough=".length()));
+                } else if (args[a].startsWith("--threads=")) {
+                    try {
+                        threads = Integer.parseInt(
+                            args[a].substring("--threads=".length()));
+                    } catch (NumberFormatException excp) {
+                        throw error("bad thread count: %s", args[a]);
+                    }
+                } else {
+                    throw error("unknown option: %s", args[a]);
+                }
+            }
+            if (args.length - a != 4 || !args[a + 3].contains("%d")) {
+                throw error("Usage: java enigma.MultiKey [--passthrough=P] "
+                            + "[--threads=N] CONFIG KEYS INPUT OUTPUT%%d");
+            }
+            Scanner config = Main.getInput(args[a]);
+            Main main = new Main(config);
+            Machine machine = main.readConfig();
+            config.close();
+            machine.setPassthrough(passthrough);
+            List<String> keys = new ArrayList<>();
+            Scanner keyFile = Main.getInput(args[a + 1]);
+            while (keyFile.hasNextLine()) {
+                String line = keyFile.nextLine().trim();
+                if (!line.isEmpty()) {
+                    keys.add(line);
+                }
+            }
+            keyFile.close();
+            List<Writer> outputs = new ArrayList<>();
+            try {
+                for (int i = 1; i <= keys.size(); i += 1) {
+                    String name = String.format(args[a + 3], i);
+                    outputs.add(new BufferedWriter(
+                        new OutputStreamWriter(new FileOutputStream(name)),
+                        OUTPUT_BUFFER_SIZE));
+                }
+                Scanner input = Main.getInput(args[a + 2]);
+                new MultiKey(main, machine, keys, outputs, threads)
+                    .run(input);
+                input.close();
+                for (Writer out : outputs) {
+                    out.close();
+                }
+            } catch (IOException excp) {
+                throw error("I/O error: %s", excp.getMessage());
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Kinds of line. */
+    private static final int SETTINGS = 0, EMPTY = 1, MESSAGE = 2;
+
+    /** A block is applied once it has this many codes... */
+    static final int BLOCK_CODES = 1 << 15;
+
+    /** ... or this many lines. */
+    static final int BLOCK_LINES = 1 << 12;
+
+    /** Size of the groups of output characters. */
+    private static final int GROUP = 5;
+
+    /** Initial size of the per-line arrays and buffers. */
+    private static final int INITIAL_SIZE = 256;
+
+    /** Size of each output's buffer. */
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 14;
+
+    /** The line separator. */
+    private static final String NL = System.lineSeparator();
+
+    /** Applies settings lines. */
+    private final Main _main;
+
+    /** The machine used to encode input; it is never stepped. */
+    private final Machine _machine;
+
+    /** True iff messages are grouped in fives. */
+    private final boolean _group;
+
+    /** The keys. */
+    private final Key[] _keys;
+
+    /** Number of threads used. */
+    private final int _threads;
+
+    /** The kind of each line of the current block. */
+    private int[] _kinds = new int[INITIAL_SIZE];
+
+    /** The codes of message line i of the current block end at
+     *  _ends[i], and start where those of line i - 1 end. */
+    private int[] _ends = new int[INITIAL_SIZE];
+
+    /** The text of each settings line of the current block. */
+    private String[] _settings = new String[INITIAL_SIZE];
+
+    /** Number of lines in the current block. */
+    private int _numLines;
+
+    /** The codes of the message lines of the current block. */
+    private int[] _codes = new int[BLOCK_CODES];
+
+    /** Number of codes in the current block. */
+    private int _numCodes;
+
+}
@@ -0,0 +1,97 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the MultiKey class.
+ *  @author A.R. LOEFFLER
+ */
+public class MultiKeyTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Name of the configuration used in these tests. */
+    private static final String CONFIG = "testing/correct/default.conf";
+
+    /** Keys used in these tests. */
+    private static final String[] KEYS = {
+        "* B BETA III IV I AXLE (YF) (ZH)",
+        "* C GAMMA I II III AAAA",
+        "* B BETA VIII VI V QRST (AB) (CD) (EF)",
+    };
+
+    /** A document with blank lines, settings, and trailing lines. */
+    private static final String DOC =
+        "HELLO world\n\nFROM his shoulder\r\n   \n"
+        + "* B BETA I II III ZZZZ (QR)\nHiawatha\n" + "A".repeat(9000)
+        + "\n\n \n";
+
+    /** Return the output of Main for an input consisting of KEY and
+     *  then DOC, as produced by Pipeline. */
+    private String single(String key) {
+        Main config = new Main(Main.getInput(CONFIG));
+        Machine m = config.readConfig();
+        StringWriter out = new StringWriter();
+        new Pipeline(config, m, new StringReader(key + "\n" + DOC), out,
+                     Passthrough.REJECT, null).run();
+        return out.toString();
+    }
+
+    /** Return the outputs of a MultiKey over KEYS and DOC using
+     *  THREADS threads. */
+    private List<String> multi(int threads) throws IOException {
+        Main config = new Main(Main.getInput(CONFIG));
+        Machine m = config.readConfig();
+        List<String> keys = new ArrayList<>();
+        List<Writer> outputs = new ArrayList<>();
+        for (String key : KEYS) {
+            keys.add(key);
+            outputs.add(new StringWriter());
+        }
+        new MultiKey(config, m, keys, outputs, threads)
+            .run(new Scanner(DOC));
+        List<String> result = new ArrayList<>();
+        for (Writer out : outputs) {
+            result.add(out.toString());
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkMatchesSeparateRuns() throws IOException {
+        for (int threads : new int[] { 1, 2 }) {
+            List<String> outputs = multi(threads);
+            for (int i = 0; i < KEYS.length; i += 1) {
+                assertEquals(single(KEYS[i]), outputs.get(i));
+            }
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBadKey() throws IOException {
+        Main config = new Main(Main.getInput(CONFIG));
+        Machine m = config.readConfig();
+        List<String> keys = new ArrayList<>();
+        keys.add("* B BETA III IV NOSUCH AXLE");
+        List<Writer> outputs = new ArrayList<>();
+        outputs.add(new StringWriter());
+        new MultiKey(config, m, keys, outputs, 1);
+    }
+
+}
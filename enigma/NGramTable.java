@@ -0,0 +1,152 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** A table of log-likelihoods of the n-grams (sequences of N characters)
+ *  over an alphabet, used to score candidate decryptions.  Scores are
+ *  kept in a flat array indexed by packed n-grams: the n-gram
+ *  c0 c1 ... c(n-1) of alphabet indices lives at
+ *  ((c0 * size + c1) * size + ...) + c(n-1).
+ *  @author A.R. LOEFFLER
+ */
+class NGramTable {
+
+    /** A table for n-grams of length N over ALPHA in which every n-gram
+     *  initially has log-likelihood FLOOR. */
+    NGramTable(Alphabet alpha, int n, float floor) {
+        if (n < 1) {
+            throw error("n-grams must have at least one character");
+        }
+        _alphabet = alpha;
+        _n = n;
+        _size = alpha.size();
+        long entries = 1;
+        for (int i = 0; i < n; i += 1) {
+            entries *= _size;
+            if (entries > Integer.MAX_VALUE) {
+                throw error("%d-gram table too large for alphabet", n);
+            }
+        }
+        _scores = new float[(int) entries];
+        Arrays.fill(_scores, floor);
+    }
+
+    /** Return a table read from the local n-gram frequency file named
+     *  NAME over ALPHA.  Each line of the file holds an n-gram followed by
+     *  its count, separated by whitespace (e.g. "TION 4523"); all n-grams
+     *  must have the same length.  N-grams containing characters outside
+     *  ALPHA are ignored.  Scores are base-10 logs of relative frequency;
+     *  unseen n-grams get the score of a tenth of one occurrence. */
+    static NGramTable load(String name, Alphabet alpha) {
+        Scanner in = Main.getInput(name);
+        NGramTable result = read(in, alpha, name);
+        in.close();
+        return result;
+    }
+
+    /** Return a table over ALPHA read from IN, which is in the format
+     *  described for load() and is called NAME in error messages. */
+    static NGramTable read(Scanner in, Alphabet alpha, String name) {
+        int n = -1;
+        NGramTable result = null;
+        double total = 0;
+        long[] counts = null;
+        while (in.hasNext()) {
+            String gram = in.next().toUpperCase();
+            if (!in.hasNextLong()) {
+                throw error("bad count for n-gram %s in %s", gram, name);
+            }
+            long count = in.nextLong();
+            if (n < 0) {
+                n = gram.length();
+                result = new NGramTable(alpha, n, 0);
+                counts = new long[result._scores.length];
+            } else if (gram.length() != n) {
+                throw error("mixed n-gram lengths in %s", name);
+            }
+            int packed = result.pack(gram);
+            if (packed >= 0) {
+                counts[packed] += count;
+                total += count;
+            }
+        }
+        if (result == null || total == 0) {
+            throw error("no n-grams in %s", name);
+        }
+        float floor = (float) Math.log10(0.1 / total);
+        for (int i = 0; i < counts.length; i += 1) {
+            if (counts[i] == 0) {
+                result._scores[i] = floor;
+            } else {
+                result._scores[i] = (float) Math.log10(counts[i] / total);
+            }
+        }
+        return result;
+    }
+
+    /** Return the packed index of the n-gram GRAM, or -1 if GRAM contains
+     *  characters outside my alphabet. */
+    int pack(String gram) {
+        int packed = 0;
+        for (int i = 0; i < _n; i += 1) {
+            char ch = gram.charAt(i);
+            if (!_alphabet.contains(ch)) {
+                return -1;
+            }
+            packed = packed * _size + _alphabet.toInt(ch);
+        }
+        return packed;
+    }
+
+    /** Return the length of my n-grams. */
+    int n() {
+        return _n;
+    }
+
+    /** Return the score of the n-gram whose packed index is PACKED. */
+    float score(int packed) {
+        return _scores[packed];
+    }
+
+    /** Set the score of the n-gram whose packed index is PACKED to
+     *  SCORE. */
+    void setScore(int packed, float score) {
+        _scores[packed] = score;
+    }
+
+    /** Return the score of the n-gram of alphabet indices starting at
+     *  TEXT[START]. */
+    float scoreAt(int[] text, int start) {
+        int packed = 0;
+        for (int i = start; i < start + _n; i += 1) {
+            packed = packed * _size + text[i];
+        }
+        return _scores[packed];
+    }
+
+    /** Return the sum of the scores of all n-grams lying entirely within
+     *  TEXT. */
+    double score(int[] text) {
+        double sum = 0;
+        for (int i = 0; i + _n <= text.length; i += 1) {
+            sum += scoreAt(text, i);
+        }
+        return sum;
+    }
+
+    /** The alphabet of my n-grams. */
+    private final Alphabet _alphabet;
+
+    /** Length of my n-grams. */
+    private final int _n;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Log-likelihood of each n-gram, indexed by packed n-gram. */
+    private final float[] _scores;
+
+}
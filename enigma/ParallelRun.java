@@ -0,0 +1,289 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** The message-processing loop of Main, with messages under different
+ *  settings lines converted in parallel.  The calling thread reads the
+ *  input as Main does and cuts it into batches of about BATCH_CHARS
+ *  characters, each starting at a settings line, so that no batch
+ *  depends on the rotor settings left by another.  The only state that
+ *  does carry over is the plugboard, which a settings line without one
+ *  leaves as it was; each batch therefore records the last settings
+ *  line before it that set a plugboard, which is applied first.  (A
+ *  settings line sets a plugboard iff it has a token after its rotor
+ *  names, positions and any ring settings, as Main.setUp reads it.)
+ *  Batches are converted by a pool of threads, each with its own copy
+ *  of the machine, and their output is written in input order by the
+ *  calling thread, with at most AHEAD batches per thread in hand.  The
+ *  output is exactly that of Main's one-thread loop, up to and
+ *  including that of the message at which any error occurs.
+ *  @author A.R. LOEFFLER
+ */
+class ParallelRun {
+
+    /** A run that applies copies of MACHINE to the messages read from
+     *  IN, writing the results to OUT, using THREADS threads.  Settings
+     *  lines are applied with MAIN.setUp, which must allow calls from
+     *  several threads.  Converted messages are grouped in fives unless
+     *  MACHINE's passthrough policy is PRESERVE.  STATS, if not null,
+     *  receives counts of messages and settings lines and the time
+     *  spent in each stage, which for all but OUTPUT is summed over
+     *  the threads. */
+    ParallelRun(Main main, Machine machine, Scanner in, Writer out,
+                int threads, Stats stats) {
+        if (threads <= 0) {
+            throw error("bad thread count: %d", threads);
+        }
+        _main = main;
+        _machine = machine;
+        _in = in;
+        _out = out;
+        _threads = threads;
+        _group = machine.passthrough() != Passthrough.PRESERVE;
+        _stats = stats;
+        _machines = ThreadLocal.withInitial(machine::copy);
+    }
+
+    /** Convert all of my input. */
+    void run() throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        ArrayDeque<Future<Batch>> ahead = new ArrayDeque<>();
+        try {
+            Batch batch = null;
+            String plugboardLine = null;
+            boolean firstRun = true;
+            while (_in.hasNext()) {
+                String line = _in.nextLine();
+                if (line.startsWith("*")) {
+                    if (batch != null && batch.size >= BATCH_CHARS) {
+                        submit(pool, ahead, batch);
+                        batch = null;
+                    }
+                    boolean plugboard = setsPlugboard(line);
+                    if (batch == null) {
+                        batch = new Batch(plugboard ? null : plugboardLine);
+                    }
+                    batch.add(SETTINGS, line);
+                    if (plugboard) {
+                        plugboardLine = line;
+                    }
+                } else if (batch == null) {
+                    throw error("No configuration line in input");
+                } else if (line.isEmpty()) {
+                    batch.add(EMPTY, null);
+                } else {
+                    batch.add(firstRun ? FIRST_MESSAGE : MESSAGE, line);
+                    firstRun = false;
+                }
+            }
+            if (batch != null) {
+                submit(pool, ahead, batch);
+            }
+            while (!ahead.isEmpty()) {
+                write(ahead.removeFirst());
+            }
+            int trailing = 0;
+            while (_in.hasNextLine()) {
+                _in.nextLine();
+                trailing += 1;
+            }
+            for (int i = 0; trailing > 0 && i <= trailing; i += 1) {
+                _out.write(NL);
+            }
+            _out.flush();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Start converting BATCH on POOL, adding it to the batches in hand,
+     *  AHEAD, after writing the oldest of them if there are too many. */
+    private void submit(ExecutorService pool, ArrayDeque<Future<Batch>> ahead,
+                        Batch batch) throws IOException {
+        if (ahead.size() >= AHEAD * _threads) {
+            write(ahead.removeFirst());
+        }
+        ahead.addLast(pool.submit(() -> convert(batch)));
+    }
+
+    /** Write the output of the batch DONE, once it is converted, and
+     *  throw the error at which it stopped, if any. */
+    private void write(Future<Batch> done) throws IOException {
+        Batch batch;
+        try {
+            batch = done.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause());
+        }
+        long start = clock();
+        _out.write(batch.output.toString());
+        lap(Stats.Stage.OUTPUT, start);
+        if (batch.error != null) {
+            _out.flush();
+            throw batch.error;
+        }
+    }
+
+    /** Convert BATCH with this thread's machine, as Main.process would,
+     *  returning it. */
+    private Batch convert(Batch batch) {
+        Machine m = _machines.get();
+        if (batch.plugboardLine == null && m.plugboard() != null) {
+            m = _machine.copy();
+            _machines.set(m);
+        }
+        StringBuilder out = batch.output;
+        try {
+            if (batch.plugboardLine != null) {
+                long start = clock();
+                _main.setUp(m, batch.plugboardLine);
+                lap(Stats.Stage.SETUP, start);
+            }
+            for (int i = 0; i < batch.kinds.size(); i += 1) {
+                String line = batch.lines.get(i);
+                long start = clock();
+                switch (batch.kinds.get(i)) {
+                case SETTINGS:
+                    _main.setUp(m, line);
+                    lap(Stats.Stage.SETUP, start);
+                    if (_stats != null) {
+                        _stats.addSettingsLine();
+                    }
+                    break;
+                case EMPTY:
+                    out.append(NL);
+                    break;
+                default:
+                    if (batch.kinds.get(i) != FIRST_MESSAGE) {
+                        out.append(NL);
+                    }
+                    String result = m.convert(line);
+                    long now = lap(Stats.Stage.CONVERT, start);
+                    out.append(_group ? Main.formatMessageLine(result)
+                               : result);
+                    lap(Stats.Stage.FORMAT, now);
+                    if (_stats != null) {
+                        _stats.addMessage(start);
+                    }
+                    break;
+                }
+            }
+        } catch (EnigmaException excp) {
+            batch.error = excp;
+        }
+        batch.lines = null;
+        batch.kinds = null;
+        return batch;
+    }
+
+    /** Return the current time from System.nanoTime if statistics are
+     *  being kept, and otherwise 0. */
+    private long clock() {
+        return _stats == null ? 0 : System.nanoTime();
+    }
+
+    /** If statistics are being kept, charge the time since START (from
+     *  clock()) to STAGE and return the current time; otherwise return
+     *  0. */
+    private long lap(Stats.Stage stage, long start) {
+        return _stats == null ? 0 : _stats.time(stage, start);
+    }
+
+    /** Return true iff the settings line LINE sets a plugboard, assuming
+     *  it is well formed. */
+    private boolean setsPlugboard(String line) {
+        String[] tokens = line.trim().split("\\p{javaWhitespace}+");
+        int rest = _machine.numRotors() + 2;
+        if (tokens.length > rest && !tokens[rest].startsWith("(")) {
+            rest += 1;
+        }
+        return tokens.length > rest;
+    }
+
+    /** A run of consecutive input lines starting with a settings line,
+     *  and its output. */
+    private static class Batch {
+        /** An empty batch to be converted after applying the settings
+         *  line PLUGBOARDLINE, unless it is null (as it is when the
+         *  batch's first line sets a plugboard itself). */
+        Batch(String plugboardLine) {
+            this.plugboardLine = plugboardLine;
+        }
+
+        /** Add a line of kind KIND and text LINE (null for an empty
+         *  line). */
+        void add(int kind, String line) {
+            kinds.add(kind);
+            lines.add(line);
+            size += line == null ? 1 : line.length() + 1;
+        }
+
+        /** The last settings line before me that set a plugboard, if
+         *  my first line does not, or null. */
+        private final String plugboardLine;
+
+        /** The kinds and texts of my lines. */
+        private ArrayList<Integer> kinds = new ArrayList<>();
+        private ArrayList<String> lines = new ArrayList<>();
+
+        /** Approximate number of characters in my lines. */
+        private int size;
+
+        /** My output. */
+        private final StringBuilder output = new StringBuilder();
+
+        /** The error at which conversion stopped, or null. */
+        private EnigmaException error;
+    }
+
+    /** Kinds of line. */
+    private static final int SETTINGS = 0, EMPTY = 1, MESSAGE = 2,
+        FIRST_MESSAGE = 3;
+
+    /** Approximate number of input characters in a batch. */
+    static final int BATCH_CHARS = 1 << 16;
+
+    /** Number of batches per thread converted ahead of the output. */
+    private static final int AHEAD = 4;
+
+    /** Line separator used in output. */
+    private static final String NL = System.lineSeparator();
+
+    /** Applies settings lines. */
+    private final Main _main;
+
+    /** The machine copied by each thread. */
+    private final Machine _machine;
+
+    /** Each thread's copy of _machine. */
+    private final ThreadLocal<Machine> _machines;
+
+    /** Source of input lines. */
+    private final Scanner _in;
+
+    /** Destination of output. */
+    private final Writer _out;
+
+    /** Number of threads converting. */
+    private final int _threads;
+
+    /** True iff converted messages are grouped in fives. */
+    private final boolean _group;
+
+    /** Statistics being kept, or null. */
+    private final Stats _stats;
+
+}
@@ -0,0 +1,162 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the ParallelRun class.
+ *  @author A.R. LOEFFLER
+ */
+public class ParallelRunTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Name of the configuration used in these tests. */
+    private static final String CONFIG = "testing/correct/default.conf";
+
+    /** Keys used in these tests, some without plugboards (which keep
+     *  the plugboard of the key before them). */
+    private static final String[] KEYS = {
+        "* B BETA I II III AAAA", "* C GAMMA VI VII VIII ZZLY BCDE (AQ)",
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "*   B BETA III IV I AXLE", "* B GAMMA V II VII XYZW QQQQ",
+        "* C BETA IV V VI ABCD (ZN)",
+    };
+
+    /** Return a temporary file name with suffix SUFFIX. */
+    private String temp(String suffix) throws IOException {
+        Path path = Files.createTempFile("enigma", suffix);
+        path.toFile().deleteOnExit();
+        return path.toString();
+    }
+
+    /** Return the name of a file holding TEXT. */
+    private String file(String text) throws IOException {
+        String name = temp(".inp");
+        Files.write(Path.of(name), text.getBytes());
+        return name;
+    }
+
+    /** Return input of about CHARS characters for CONFIG: keys from KEYS
+     *  in random order, each followed by a few messages of characters
+     *  from LETTERS, with some blank lines, and ending with blank lines
+     *  and an unended line. */
+    private String input(int chars, String letters) {
+        Random r = new Random(50);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < chars) {
+            text.append(KEYS[r.nextInt(KEYS.length)]).append('\n');
+            for (int i = r.nextInt(5); i >= 0; i -= 1) {
+                if (r.nextInt(4) == 0) {
+                    text.append('\n');
+                }
+                for (int j = r.nextInt(2000); j >= 0; j -= 1) {
+                    text.append(letters.charAt(r.nextInt(letters.length())));
+                }
+                text.append('\n');
+            }
+        }
+        return text.append("\n\n\nAB").toString();
+    }
+
+    /** Return the output of Main run with OPTIONS on the input in the
+     *  file INPUT. */
+    private String run(String input, String... options) throws IOException {
+        String output = temp(".out");
+        String[] args = new String[options.length + 3];
+        System.arraycopy(options, 0, args, 0, options.length);
+        args[options.length] = CONFIG;
+        args[options.length + 1] = input;
+        args[options.length + 2] = output;
+        Main.main(args);
+        return new String(Files.readAllBytes(Path.of(output)));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSameOutput() throws IOException {
+        String input = file(input(4 * ParallelRun.BATCH_CHARS,
+                                  "ABCDEFGHIJKLMNOPQRSTUVWXYZ "));
+        String expected = run(input);
+        for (String threads : new String[] { "1", "2", "3", "8" }) {
+            assertEquals(threads, expected,
+                         run(input, "--threads=" + threads));
+        }
+        assertEquals(expected,
+                     run(input, "--threads=4", "--key-cache=3"));
+    }
+
+    @Test
+    public void checkPreserve() throws IOException {
+        String input = file(input(3 * ParallelRun.BATCH_CHARS,
+                                  "ABCDEFGHIJKLMNOPQRSTUVWXYZ .,!"));
+        assertEquals(run(input, "--passthrough=preserve"),
+                     run(input, "--passthrough=preserve", "--threads=3"));
+    }
+
+    @Test
+    public void checkShortInputs() throws IOException {
+        String[] inputs = {
+            "", "* B BETA I II III AAAA", "* B BETA I II III AAAA\n\n",
+            "* B BETA I II III AAAA\nHELLO WORLD\n\n\nFOO\n",
+            KEYS[2] + "\nHELLO\n" + KEYS[3] + "\nHELLO\n\n",
+        };
+        for (String text : inputs) {
+            String input = file(text);
+            assertEquals(run(input), run(input, "--threads=2"));
+        }
+    }
+
+    @Test
+    public void checkErrorStopsOutput() throws IOException {
+        String good = input(3 * ParallelRun.BATCH_CHARS,
+                            "ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        good = good.substring(0, good.lastIndexOf("\n\n\n"));
+        String expected = run(file(good)) + System.lineSeparator();
+        Main config = new Main(Main.getInput(CONFIG));
+        Machine m = config.readConfig();
+        StringWriter out = new StringWriter();
+        ParallelRun run = new ParallelRun(
+            config, m, new Scanner(good + "HELLO1\n" + KEYS[0] + "\nAB\n"),
+            out, 3, null);
+        try {
+            run.run();
+            fail("no error");
+        } catch (EnigmaException excp) {
+            assertEquals(expected, out.toString());
+        }
+    }
+
+    @Test
+    public void checkStats() throws IOException {
+        String text = input(2 * ParallelRun.BATCH_CHARS,
+                            "ABCDEFGHIJKLMNOPQRSTUVWXYZ ");
+        Main config = new Main(Main.getInput(CONFIG));
+        Machine m = config.readConfig();
+        Stats stats = new Stats();
+        new ParallelRun(config, m, new Scanner(text), new StringWriter(), 2,
+                        stats).run();
+        assertTrue(stats.getMessages() > 0);
+        assertTrue(stats.getSettingsLines() > 0);
+        long[] nanos = stats.getStageNanos();
+        for (Stats.Stage stage : new Stats.Stage[] {
+                Stats.Stage.SETUP, Stats.Stage.CONVERT, Stats.Stage.FORMAT,
+                Stats.Stage.OUTPUT }) {
+            assertTrue(stage.toString(), nanos[stage.ordinal()] > 0);
+        }
+    }
+
+}
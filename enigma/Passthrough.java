@@ -0,0 +1,32 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** What a Machine does with characters of a message that are not in its
+ *  alphabet (after upper-casing them fails to help).  None of these
+ *  touches the rotors.
+ *  @author A.R. LOEFFLER
+ */
+enum Passthrough {
+
+    /** Drop blanks and reject anything else as an error.  This is the
+     *  original behavior, and the default. */
+    REJECT,
+
+    /** Copy the character to the output unchanged, in place. */
+    PRESERVE,
+
+    /** Leave the character out of the output. */
+    DROP;
+
+    /** Return the policy named NAME, ignoring case. */
+    static Passthrough parse(String name) {
+        for (Passthrough p : values()) {
+            if (p.name().equalsIgnoreCase(name)) {
+                return p;
+            }
+        }
+        throw error("unknown passthrough policy: %s", name);
+    }
+
+}
@@ -1,6 +1,8 @@
 package enigma;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
 
 import static enigma.EnigmaException.*;
 
@@ -18,7 +20,68 @@ class Permutation {
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
         _cycles = breakDownCycles(cycles);
+        tabulate();
+    }
 
+    /** The permutation of ALPHABET that takes index i to MAPPING[i]. */
+    Permutation(int[] mapping, Alphabet alphabet) {
+        _alphabet = alphabet;
+        if (mapping.length != size()) {
+            throw error("permutation has wrong size");
+        }
+        _forward = mapping.clone();
+        _inverse = new int[size()];
+        Arrays.fill(_inverse, -1);
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (_forward[i] < 0 || _forward[i] >= size()
+                || _inverse[_forward[i]] >= 0) {
+                throw error("mapping is not a permutation");
+            }
+            _inverse[_forward[i]] = i;
+        }
+        _cycles = new ArrayList<>();
+        boolean[] seen = new boolean[size()];
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (!seen[i] && _forward[i] != i) {
+                StringBuilder cycle = new StringBuilder();
+                for (int j = i; !seen[j]; j = _forward[j]) {
+                    seen[j] = true;
+                    cycle.append(_alphabet.toChar(j));
+                }
+                _cycles.add(cycle.toString());
+            }
+        }
+    }
+
+    /** Return a random permutation of ALPHABET generated from SEED.  If
+     *  REFLECTING, the result is its own inverse and has no fixed points,
+     *  as a reflector's must, which requires an alphabet of even size. */
+    static Permutation random(Alphabet alphabet, long seed,
+                              boolean reflecting) {
+        int n = alphabet.size();
+        int[] shuffle = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            shuffle[i] = i;
+        }
+        Random rand = new Random(seed);
+        for (int i = n - 1; i > 0; i -= 1) {
+            int j = rand.nextInt(i + 1);
+            int t = shuffle[i];
+            shuffle[i] = shuffle[j];
+            shuffle[j] = t;
+        }
+        if (!reflecting) {
+            return new Permutation(shuffle, alphabet);
+        }
+        if (n % 2 != 0) {
+            throw error("reflector needs an alphabet of even size");
+        }
+        int[] mapping = new int[n];
+        for (int i = 0; i < n; i += 2) {
+            mapping[shuffle[i]] = shuffle[i + 1];
+            mapping[shuffle[i + 1]] = shuffle[i];
+        }
+        return new Permutation(mapping, alphabet);
     }
 
     /**Breaks down and returns the string CYCLES into an array list of strings,
@@ -50,6 +113,30 @@ class Permutation {
         for (int i = 0; i < holder.size(); i++) {
             _cycles.add(holder.get(i));
         }
+        tabulate();
+    }
+
+    /** Recompute _forward and _inverse from my cycles.  As with the
+     *  original cycle-scanning lookup, a character appearing in more
+     *  than one cycle takes its mapping from the last of them. */
+    private void tabulate() {
+        int n = size();
+        _forward = new int[n];
+        _inverse = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
+        for (String cycle : _cycles) {
+            cycle = cycle.replaceAll("\\s+", "");
+            int len = cycle.length();
+            for (int j = 0; j < len; j += 1) {
+                int curr = _alphabet.toInt(cycle.charAt(j));
+                _forward[curr] = _alphabet.toInt(cycle.charAt((j + 1) % len));
+                _inverse[curr] =
+                    _alphabet.toInt(cycle.charAt((j + len - 1) % len));
+            }
+        }
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -69,51 +156,13 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char ch = _alphabet.toChar(p);
-        char toPermute = ch;
-        for (int i = 0; i < _cycles.size(); i += 1) {
-            for (int j = 0; j < _cycles.get(i).length(); j += 1) {
-                char curr = _cycles.get(i).charAt(j);
-                int cellLength = _cycles.get(i).length();
-                if (curr == ch) {
-                    if (cellLength == 1) {
-                        toPermute = curr;
-                    } else {
-                        if (j + 1 == cellLength) {
-                            toPermute = _cycles.get(i).charAt(0);
-                        } else {
-                            toPermute = _cycles.get(i).charAt(j + 1);
-                        }
-                    }
-                }
-            }
-        }
-        return _alphabet.toInt(toPermute);
+        return _forward[p];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char ch = _alphabet.toChar(c);
-        char toPermute = ch;
-        for (int i = 0; i < _cycles.size(); i += 1) {
-            for (int j = 0; j < _cycles.get(i).length(); j += 1) {
-                char curr = _cycles.get(i).charAt(j);
-                int cellLength = _cycles.get(i).length();
-                if (curr == ch) {
-                    if (cellLength == 1) {
-                        toPermute = curr;
-                    } else {
-                        if (j - 1 < 0) {
-                            toPermute = _cycles.get(i).charAt(cellLength - 1);
-                        } else {
-                            toPermute = _cycles.get(i).charAt(j - 1);
-                        }
-                    }
-                }
-            }
-        }
-        return _alphabet.toInt(toPermute);
+        return _inverse[c];
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -159,4 +208,7 @@ class Permutation {
     /** This permutation's cycles. */
     private ArrayList<String> _cycles;
 
+    /** _forward[p] is permute(p); _inverse[c] is invert(c). */
+    private int[] _forward, _inverse;
+
 }
@@ -0,0 +1,509 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static enigma.EnigmaException.*;
+
+/** The message-processing loop of Main, split into three stages so that
+ *  input, conversion and output overlap: a reader thread fills chunks of
+ *  characters, the calling thread splits them into lines and runs the
+ *  machine over them, and a writer thread drains the results.  Chunks
+ *  pass through bounded queues, so a slow stage holds the others back,
+ *  and come from fixed pools, so nothing is allocated once the line and
+ *  message buffers have grown to the longest line seen (settings lines
+ *  excepted).  The output is exactly that of Main's one-thread loop.
+ *  @author A.R. LOEFFLER
+ */
+class Pipeline {
+
+    /** A pipeline that applies MACHINE to the messages read from IN,
+     *  writing the results to OUT.  Settings lines are applied with
+     *  MAIN.setUp.  Converted messages are grouped in fives unless
+     *  PASSTHROUGH is PRESERVE.  STATS, if not null, receives counts of
+     *  messages and settings lines. */
+    Pipeline(Main main, Machine machine, Reader in, Writer out,
+             Passthrough passthrough, Stats stats) {
+        _main = main;
+        _machine = machine;
+        _in = in;
+        _out = out;
+        _group = passthrough != Passthrough.PRESERVE;
+        _stats = stats;
+        _readFree = new ArrayBlockingQueue<>(DEPTH);
+        _readFull = new ArrayBlockingQueue<>(DEPTH + 1);
+        _writeFree = new ArrayBlockingQueue<>(DEPTH);
+        _writeFull = new ArrayBlockingQueue<>(DEPTH + 1);
+        for (int i = 0; i < DEPTH; i += 1) {
+            _readFree.add(new Chunk());
+            _writeFree.add(new Chunk());
+        }
+    }
+
+    /** Save a checkpoint in FILE about every PERIODMS milliseconds, at
+     *  the end of a line.  OUTPUT is the channel of the file to which my
+     *  output goes, used to find how many bytes have been written.  The
+     *  input must be encoded in the default charset, since input offsets
+     *  are found by re-encoding the characters read. */
+    void checkpoint(File file, long periodMs, FileChannel output) {
+        _checkpointFile = file;
+        _checkpointPeriod = periodMs;
+        _nextCheckpoint = System.currentTimeMillis() + periodMs;
+        _outputChannel = output;
+        _encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /** Continue from the state recorded in CHECKPOINT.  My machine must
+     *  already be set up as it was then, and my input must start just
+     *  after the input it records. */
+    void resume(PipelineCheckpoint checkpoint) {
+        _settingsRead = checkpoint.settingsRead();
+        _firstRun = checkpoint.firstRun();
+        _sawCR = checkpoint.sawCR();
+        _settingsLine = checkpoint.settings();
+        _plugboardLine = checkpoint.plugboard();
+        _inputBytes = checkpoint.inputBytes();
+        _lineEndBytes = _inputBytes;
+    }
+
+    /** Process all of the input, returning when all output has been
+     *  written and flushed. */
+    void run() {
+        Thread reader = new Thread(this::read, "enigma-pipeline-reader");
+        Thread writer = new Thread(this::write, "enigma-pipeline-writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+        try {
+            _current = take(_writeFree);
+            for (Chunk c = take(_readFull); c != END; c = take(_readFull)) {
+                scan(c.buf, c.length);
+                put(_readFree, c);
+            }
+            if (_readFailure != null) {
+                throw error("could not read input: %s",
+                            _readFailure.getMessage());
+            }
+            finish();
+        } finally {
+            reader.interrupt();
+            if (_current != null) {
+                put(_writeFull, _current);
+            }
+            put(_writeFull, END);
+            try {
+                writer.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (_writeFailure != null) {
+            throw error("could not write output: %s",
+                        _writeFailure.getMessage());
+        }
+    }
+
+    /** Body of the reader thread. */
+    private void read() {
+        try {
+            while (true) {
+                Chunk c = _readFree.take();
+                c.length = _in.read(c.buf, 0, c.buf.length);
+                if (c.length < 0) {
+                    break;
+                }
+                _readFull.put(c);
+            }
+        } catch (IOException excp) {
+            _readFailure = excp;
+        } catch (InterruptedException excp) {
+            return;
+        }
+        _readFull.add(END);
+    }
+
+    /** Body of the writer thread.  After a failure, it goes on taking
+     *  and recycling chunks without writing them, so that the other
+     *  stages do not wait for it forever. */
+    private void write() {
+        try {
+            for (Chunk c = _writeFull.take(); c != END;
+                 c = _writeFull.take()) {
+                if (_writeFailure == null) {
+                    write(c);
+                }
+                c.length = 0;
+                c.checkpoint = null;
+                _writeFree.put(c);
+            }
+            if (_writeFailure == null) {
+                _out.flush();
+            }
+        } catch (IOException excp) {
+            _writeFailure = excp;
+        } catch (InterruptedException excp) {
+            _writeFailure = new IOException("writer interrupted");
+        }
+    }
+
+    /** Write C, and then save any checkpoint it carries, recording
+     *  any failure in _writeFailure. */
+    private void write(Chunk c) {
+        try {
+            _out.write(c.buf, 0, c.length);
+            if (c.checkpoint != null) {
+                _out.flush();
+                c.checkpoint.setOutputBytes(_outputChannel.position());
+                c.checkpoint.save(_checkpointFile);
+            }
+        } catch (IOException excp) {
+            _writeFailure = excp;
+        } catch (EnigmaException excp) {
+            _writeFailure = new IOException(excp.getMessage());
+        }
+    }
+
+    /** Split the N characters of BUF into lines, processing each complete
+     *  line.  Line separators are those recognized by Scanner.nextLine. */
+    private void scan(char[] buf, int n) {
+        _counted = 0;
+        for (int i = 0; i < n; i += 1) {
+            char ch = buf[i];
+            if (_sawCR) {
+                _sawCR = false;
+                if (ch == '\n') {
+                    continue;
+                }
+            }
+            switch (ch) {
+            case '\r':
+                _sawCR = true;
+                count(buf, i + 1);
+                endLine();
+                break;
+            case '\n': case '\u2028': case '\u2029': case '\u0085':
+                count(buf, i + 1);
+                endLine();
+                break;
+            default:
+                if (_lineLength == _line.length) {
+                    _line = Arrays.copyOf(_line, 2 * _lineLength);
+                }
+                _line[_lineLength] = ch;
+                _lineLength += 1;
+                if (!Character.isWhitespace(ch)) {
+                    _lineHasToken = true;
+                }
+            }
+        }
+        count(buf, n);
+    }
+
+    /** If checkpointing, add the encoded length of BUF[_counted .. END-1]
+     *  to _inputBytes and set _counted to END. */
+    private void count(char[] buf, int end) {
+        if (_encoder == null) {
+            return;
+        }
+        CharBuffer chars = CharBuffer.wrap(buf, _counted, end - _counted);
+        CoderResult result;
+        do {
+            _encoded.clear();
+            result = _encoder.encode(chars, _encoded, false);
+            _inputBytes += _encoded.position();
+        } while (result.isOverflow());
+        _counted = end;
+    }
+
+    /** Handle the line in _line.  Lines with no tokens are held back until
+     *  it is known whether a token follows them, since Main treats blank
+     *  lines after the last token differently. */
+    private void endLine() {
+        if (_lineHasToken) {
+            int start = 0;
+            while (start < _pending.length()) {
+                int end = _pending.indexOf("\n", start);
+                int len = end - start;
+                if (_message.length < len) {
+                    _message = new char[len];
+                }
+                _pending.getChars(start, end, _message, 0);
+                process(_message, len);
+                start = end + 1;
+            }
+            _pending.setLength(0);
+            _pendingLines = 0;
+            process(_line, _lineLength);
+            _lineEndBytes = _inputBytes;
+            if (_checkpointFile != null
+                && System.currentTimeMillis() >= _nextCheckpoint) {
+                takeCheckpoint();
+            }
+        } else {
+            _pending.append(_line, 0, _lineLength).append('\n');
+            _pendingLines += 1;
+        }
+        _lineLength = 0;
+        _lineHasToken = false;
+    }
+
+    /** Pass the writer a checkpoint of my state after the last line,
+     *  to be saved once the output before it is written. */
+    private void takeCheckpoint() {
+        Rotor[] rotors = _machine.usedRotors();
+        int[] settings = new int[rotors.length];
+        for (int i = 0; i < rotors.length; i += 1) {
+            settings[i] = rotors[i] == null ? 0 : rotors[i].setting();
+        }
+        _current.checkpoint =
+            new PipelineCheckpoint(_lineEndBytes, _settingsLine,
+                                   _plugboardLine, settings, _settingsRead,
+                                   _firstRun, _sawCR);
+        put(_writeFull, _current);
+        _current = take(_writeFree);
+        _nextCheckpoint = System.currentTimeMillis() + _checkpointPeriod;
+    }
+
+    /** Handle the end of the input. */
+    private void finish() {
+        if (_lineLength > 0) {
+            endLine();
+        }
+        for (int i = 0; i < _pendingLines; i += 1) {
+            newline();
+        }
+        if (_pendingLines > 0) {
+            newline();
+        }
+    }
+
+    /** Process the LEN-character line LINE as Main.process does. */
+    private void process(char[] line, int len) {
+        boolean settings = len > 0 && line[0] == '*';
+        if (!_settingsRead && !settings) {
+            throw error("No configuration line in input");
+        }
+        if (settings) {
+            _settingsLine = new String(line, 0, len);
+            Permutation plugboard = _machine.plugboard();
+            _main.setUp(_machine, _settingsLine);
+            if (_machine.plugboard() != plugboard) {
+                _plugboardLine = _settingsLine;
+            }
+            _settingsRead = true;
+            if (_stats != null) {
+                _stats.addSettingsLine();
+            }
+        } else if (len == 0) {
+            newline();
+        } else {
+            long start = _stats == null ? 0 : System.nanoTime();
+            if (!_firstRun) {
+                newline();
+            }
+            _firstRun = false;
+            if (_converted.length < len) {
+                _converted = new char[Math.max(len, 2 * _converted.length)];
+            }
+            int n = _machine.convert(line, 0, len, _converted, 0);
+            int group = 0;
+            for (int i = 0; i < n; i += 1) {
+                char ch = _converted[i];
+                if (!_group) {
+                    emit(ch);
+                } else if (ch != ' ') {
+                    if (group == GROUP) {
+                        emit(' ');
+                        group = 0;
+                    }
+                    emit(ch);
+                    group += 1;
+                }
+            }
+            if (_stats != null) {
+                _stats.addMessage(start);
+            }
+        }
+    }
+
+    /** Add a line separator to the output. */
+    private void newline() {
+        for (int i = 0; i < NEWLINE.length; i += 1) {
+            emit(NEWLINE[i]);
+        }
+    }
+
+    /** Add CH to the output. */
+    private void emit(char ch) {
+        if (_current.length == _current.buf.length) {
+            put(_writeFull, _current);
+            _current = null;
+            _current = take(_writeFree);
+        }
+        _current.buf[_current.length] = ch;
+        _current.length += 1;
+    }
+
+    /** Return the next chunk from QUEUE, waiting if necessary. */
+    private static Chunk take(BlockingQueue<Chunk> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** Add C to QUEUE, waiting if necessary. */
+    private static void put(BlockingQueue<Chunk> queue, Chunk c) {
+        try {
+            queue.put(c);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** A buffer of characters passed between stages. */
+    private static final class Chunk {
+        /** The characters. */
+        private final char[] buf = new char[CHUNK_SIZE];
+        /** Number of characters in use (-1 at end of input). */
+        private int length;
+        /** If not null, a checkpoint to save after writing me. */
+        private PipelineCheckpoint checkpoint;
+    }
+
+    /** Size of each chunk, in characters. */
+    static final int CHUNK_SIZE = 1 << 16;
+
+    /** Number of chunks in each pool. */
+    static final int DEPTH = 4;
+
+    /** Size of the scratch space for counting encoded input. */
+    private static final int ENCODE_SIZE = 1 << 12;
+
+    /** Size of the groups of converted characters. */
+    private static final int GROUP = 5;
+
+    /** The line separator used in output. */
+    private static final char[] NEWLINE =
+        System.lineSeparator().toCharArray();
+
+    /** Marks the end of the chunks on a queue. */
+    private static final Chunk END = new Chunk();
+
+    /** Supplies setUp. */
+    private final Main _main;
+
+    /** The machine converting messages. */
+    private final Machine _machine;
+
+    /** Source of input. */
+    private final Reader _in;
+
+    /** Destination of output. */
+    private final Writer _out;
+
+    /** True iff converted messages are grouped in fives. */
+    private final boolean _group;
+
+    /** Statistics, or null. */
+    private final Stats _stats;
+
+    /** Empty and filled input chunks. */
+    private final BlockingQueue<Chunk> _readFree, _readFull;
+
+    /** Empty and filled output chunks. */
+    private final BlockingQueue<Chunk> _writeFree, _writeFull;
+
+    /** The output chunk being filled. */
+    private Chunk _current;
+
+    /** The line being read. */
+    private char[] _line = new char[CHUNK_SIZE];
+
+    /** Number of characters in _line. */
+    private int _lineLength;
+
+    /** True iff _line contains a non-whitespace character. */
+    private boolean _lineHasToken;
+
+    /** True iff the last character scanned was a carriage return. */
+    private boolean _sawCR;
+
+    /** Lines with no tokens not yet processed, each followed by '\n'. */
+    private final StringBuilder _pending = new StringBuilder();
+
+    /** Number of lines in _pending. */
+    private int _pendingLines;
+
+    /** Space to copy a line out of _pending. */
+    private char[] _message = new char[0];
+
+    /** Space for a converted message. */
+    private char[] _converted = new char[CHUNK_SIZE];
+
+    /** True once a settings line has been processed. */
+    private boolean _settingsRead;
+
+    /** True until the first message has been processed. */
+    private boolean _firstRun = true;
+
+    /** The last settings line, or null. */
+    private String _settingsLine;
+
+    /** The last settings line that set a plugboard, or null. */
+    private String _plugboardLine;
+
+    /** File in which to save checkpoints, or null if none. */
+    private File _checkpointFile;
+
+    /** Milliseconds between checkpoints. */
+    private long _checkpointPeriod;
+
+    /** Time (from System.currentTimeMillis) of the next checkpoint. */
+    private long _nextCheckpoint;
+
+    /** The channel of the output file, when checkpointing. */
+    private FileChannel _outputChannel;
+
+    /** Encoder used to count input bytes when checkpointing, else
+     *  null. */
+    private CharsetEncoder _encoder;
+
+    /** Scratch space for _encoder. */
+    private final ByteBuffer _encoded = ByteBuffer.allocate(ENCODE_SIZE);
+
+    /** Bytes of input encoded so far, when checkpointing. */
+    private long _inputBytes;
+
+    /** Value of _inputBytes at the end of the last line. */
+    private long _lineEndBytes;
+
+    /** Characters of the current chunk that have been counted in
+     *  _inputBytes. */
+    private int _counted;
+
+    /** Any I/O error in the reader thread. */
+    private volatile IOException _readFailure;
+
+    /** Any I/O error in the writer thread. */
+    private volatile IOException _writeFailure;
+
+}
@@ -0,0 +1,181 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** The state of a Pipeline at the end of a line of its input, from which
+ *  a run that was stopped can be resumed.  Checkpoints are only taken
+ *  between lines, so the five-letter grouping of the output always
+ *  starts afresh after one.
+ *  @author A.R. LOEFFLER
+ */
+class PipelineCheckpoint {
+
+    /** A checkpoint after INPUTBYTES bytes of input, when the last
+     *  settings line read was SETTINGS (null if none), the last one that
+     *  set a plugboard was PLUGBOARD (null if none) and the rotors in
+     *  the machine's slots were at ROTORS.  SETTINGSREAD and FIRSTRUN are
+     *  the pipeline's flags of the same names, and SAWCR is true if the
+     *  last line ended in a carriage return, so that a following line
+     *  feed belongs to it. */
+    PipelineCheckpoint(long inputBytes, String settings, String plugboard,
+                       int[] rotors, boolean settingsRead, boolean firstRun,
+                       boolean sawCR) {
+        _inputBytes = inputBytes;
+        _settings = settings;
+        _plugboard = plugboard;
+        _rotors = rotors;
+        _settingsRead = settingsRead;
+        _firstRun = firstRun;
+        _sawCR = sawCR;
+        _outputBytes = -1;
+    }
+
+    /** Return the number of input bytes processed. */
+    long inputBytes() {
+        return _inputBytes;
+    }
+
+    /** Return the number of output bytes written, or -1 if not yet
+     *  known. */
+    long outputBytes() {
+        return _outputBytes;
+    }
+
+    /** Set outputBytes() to BYTES. */
+    void setOutputBytes(long bytes) {
+        _outputBytes = bytes;
+    }
+
+    /** Return the last settings line read, or null. */
+    String settings() {
+        return _settings;
+    }
+
+    /** Return the last settings line read that set a plugboard, or
+     *  null.  A settings line without a plugboard keeps the last one, so
+     *  this line must be applied before settings() on resuming. */
+    String plugboard() {
+        return _plugboard;
+    }
+
+    /** Return the settings of the rotors in each slot. */
+    int[] rotors() {
+        return _rotors;
+    }
+
+    /** Return true iff a settings line had been read. */
+    boolean settingsRead() {
+        return _settingsRead;
+    }
+
+    /** Return true iff no message had yet been converted. */
+    boolean firstRun() {
+        return _firstRun;
+    }
+
+    /** Return true iff the last line ended in a carriage return. */
+    boolean sawCR() {
+        return _sawCR;
+    }
+
+    /** Write me to FILE, replacing its contents atomically so that a
+     *  crash leaves either the old checkpoint or the new one. */
+    void save(File file) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (PrintStream out = new PrintStream(tmp)) {
+            out.println(HEADER);
+            out.printf("input %d output %d%n", _inputBytes, _outputBytes);
+            out.printf("flags %b %b %b%n", _settingsRead, _firstRun, _sawCR);
+            out.print("rotors");
+            for (int r : _rotors) {
+                out.printf(" %d", r);
+            }
+            out.println();
+            out.println("group 0");
+            out.println(_settings == null ? "" : _settings);
+            out.println(_plugboard == null ? "" : _plugboard);
+            if (out.checkError()) {
+                throw error("could not write %s", tmp);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", tmp);
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not replace %s", file);
+        }
+    }
+
+    /** Return the checkpoint saved in FILE. */
+    static PipelineCheckpoint load(File file) {
+        Scanner in = Main.getInput(file.getPath());
+        try {
+            if (!in.nextLine().equals(HEADER)) {
+                throw error("%s is not a pipeline checkpoint", file);
+            }
+            Scanner line = new Scanner(in.nextLine());
+            line.next();
+            long inputBytes = line.nextLong();
+            line.next();
+            long outputBytes = line.nextLong();
+            line = new Scanner(in.nextLine());
+            line.next();
+            boolean settingsRead = line.nextBoolean();
+            boolean firstRun = line.nextBoolean();
+            boolean sawCR = line.nextBoolean();
+            line = new Scanner(in.nextLine());
+            line.next();
+            int[] rotors = line.tokens().mapToInt(Integer::parseInt)
+                .toArray();
+            if (!in.nextLine().equals("group 0")) {
+                throw error("bad checkpoint file %s", file);
+            }
+            String settings = in.nextLine();
+            String plugboard = in.nextLine();
+            PipelineCheckpoint result =
+                new PipelineCheckpoint(inputBytes,
+                                       settings.isEmpty() ? null : settings,
+                                       plugboard.isEmpty() ? null : plugboard,
+                                       rotors, settingsRead, firstRun, sawCR);
+            result.setOutputBytes(outputBytes);
+            return result;
+        } catch (NoSuchElementException | NumberFormatException excp) {
+            throw error("bad checkpoint file %s", file);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** First line of every checkpoint file. */
+    static final String HEADER = "enigma pipeline checkpoint 2";
+
+    /** Input bytes processed. */
+    private final long _inputBytes;
+
+    /** Output bytes written, or -1 if not yet known. */
+    private long _outputBytes;
+
+    /** Last settings line read, or null. */
+    private final String _settings;
+
+    /** Last settings line read that set a plugboard, or null. */
+    private final String _plugboard;
+
+    /** Settings of the rotors in each slot. */
+    private final int[] _rotors;
+
+    /** Pipeline flags. */
+    private final boolean _settingsRead, _firstRun, _sawCR;
+
+}
@@ -0,0 +1,174 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author A.R. LOEFFLER
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the output of a Pipeline on INPUT, using the default
+     *  configuration. */
+    private String run(String input) {
+        Main config = new Main(Main.getInput("testing/correct/default.conf"));
+        Machine m = config.readConfig();
+        StringWriter out = new StringWriter();
+        new Pipeline(config, m, new StringReader(input), out,
+                     Passthrough.REJECT, null).run();
+        return out.toString();
+    }
+
+    /** Return the contents of the file NAME. */
+    private String contents(String name) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(name)));
+    }
+
+    /** Return a temporary file name with suffix SUFFIX. */
+    private String temp(String suffix) throws IOException {
+        File file = File.createTempFile("enigma", suffix);
+        file.deleteOnExit();
+        new File(file.getPath() + ".tmp").deleteOnExit();
+        return file.getPath();
+    }
+
+    /** Return the output of Main run with OPTIONS on the input TEXT. */
+    private String runMain(String text, String... options)
+        throws IOException {
+        String input = temp(".inp"), output = temp(".out");
+        Files.write(Paths.get(input), text.getBytes());
+        runFiles(input, output, options);
+        return contents(output);
+    }
+
+    /** Run Main with OPTIONS on the files INPUT and OUTPUT. */
+    private void runFiles(String input, String output, String... options) {
+        String[] args = new String[options.length + 3];
+        System.arraycopy(options, 0, args, 0, options.length);
+        args[options.length] = "testing/correct/default.conf";
+        args[options.length + 1] = input;
+        args[options.length + 2] = output;
+        Main.main(args);
+    }
+
+    /** Return the output of a checkpointed run of Main that stops after
+     *  the input HEAD and is then resumed on the input HEAD + TAIL. */
+    private String resumed(String head, String tail) throws IOException {
+        String input = temp(".inp"), output = temp(".out");
+        String checkpoint = "--checkpoint=" + temp(".ckpt");
+        Files.write(Paths.get(input), head.getBytes());
+        runFiles(input, output, checkpoint, "--every=0");
+        Files.write(Paths.get(input), (head + tail).getBytes());
+        runFiles(input, output, checkpoint, "--every=0", "--resume");
+        return contents(output);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkMatchesExpectedOutput() throws IOException {
+        String nl = System.lineSeparator();
+        String expected = contents("testing/correct/carroll1def.out")
+            .replace("\n", nl);
+        assertEquals(expected,
+                     run(contents("testing/correct/carroll1def.inp")));
+    }
+
+    @Test
+    public void checkBlankLines() {
+        String nl = System.lineSeparator();
+        assertEquals(nl + "QVPQS OK" + nl + "OILPU BKJZP ISFXD W" + nl + nl,
+                     run("* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)"
+                         + "\r\n\r\nFROM his\r\nshoulder Hiawatha\r\n \n"));
+    }
+
+    @Test
+    public void checkLongLines() {
+        String line = "A".repeat(3 * Pipeline.CHUNK_SIZE + 7);
+        String out = run("* B BETA I II III AAAA\n" + line + "\n" + line);
+        String[] lines = out.split(System.lineSeparator());
+        assertEquals(2, lines.length);
+        assertEquals(line.length() + (line.length() - 1) / 5,
+                     lines[0].length());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkNoSettings() {
+        run("\nHELLO\n");
+    }
+
+    @Test
+    public void checkCheckpointRoundTrip() throws IOException {
+        File file = File.createTempFile("enigma", ".ckpt");
+        try {
+            PipelineCheckpoint saved =
+                new PipelineCheckpoint(1234, "* B BETA I II III AAAA",
+                                       "* B BETA I II III AAAA (AB)",
+                                       new int[] { 0, 0, 3, 7, 25 },
+                                       true, false, true);
+            saved.setOutputBytes(5678);
+            saved.save(file);
+            PipelineCheckpoint loaded = PipelineCheckpoint.load(file);
+            assertEquals(1234, loaded.inputBytes());
+            assertEquals(5678, loaded.outputBytes());
+            assertEquals(saved.settings(), loaded.settings());
+            assertEquals(saved.plugboard(), loaded.plugboard());
+            assertArrayEquals(saved.rotors(), loaded.rotors());
+            assertTrue(loaded.settingsRead());
+            assertFalse(loaded.firstRun());
+            assertTrue(loaded.sawCR());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void checkResumeKeepsPlugboard() throws IOException {
+        String head = String.join("\n",
+            "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+            "HELLO WORLD",
+            "* B BETA III IV I AXLE",
+            "HELLO WORLD", "");
+        String tail = "HELLO WORLD\nHELLO WORLD\n";
+        String expected = runMain(head + tail);
+        assertEquals("TPKZV ODWJV",
+                     expected.split(System.lineSeparator())[2]);
+        assertEquals(expected, resumed(head, tail));
+    }
+
+    @Test
+    public void checkResumeMatchesUninterruptedRun() throws IOException {
+        String[] lines = {
+            "* B BETA I II III AAAA (AQ) (BZ)", "HELLO WORLD", "",
+            "FROM HERE TO THERE", "* C GAMMA VI VII VIII ZZLY BCDE",
+            "THE QUICK BROWN FOX", "", "", "JUMPS OVER THE LAZY DOG",
+            "* B BETA III IV I AXLE (HQ) (EX)", "A", "* B BETA I II III ZZZZ",
+            "LAST LINE", "", "",
+        };
+        String text = String.join("\n", lines);
+        String expected = runMain(text);
+        int cut = text.indexOf('\n');
+        while (cut >= 0) {
+            String head = text.substring(0, cut + 1);
+            assertEquals(head, expected,
+                         resumed(head, text.substring(cut + 1)));
+            cut = text.indexOf('\n', cut + 1);
+        }
+    }
+
+}
@@ -0,0 +1,496 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers the plugboard of a machine whose rotor order and positions are
+ *  already known by hill climbing with simulated annealing over plug
+ *  pairs, scoring candidate decryptions with n-gram tables.
+ *
+ *  Because the plugboard is applied on both sides of the rotors, the
+ *  decryption of ciphertext letter c at step i under plugboard P is
+ *  P(S_i(P(c))), where S_i is the permutation performed by the rotors and
+ *  reflector at step i.  The S_i do not depend on P, so they are computed
+ *  once, and each trial swap only recomputes the letters whose input or
+ *  output involves one of the swapped characters, rescoring just the
+ *  n-grams that overlap them.  Those positions are found from lists of
+ *  the positions of each ciphertext letter and of each letter of the
+ *  current decryption, so a trial costs time proportional to the
+ *  positions it affects rather than to the length of the ciphertext.
+ *  @author A.R. LOEFFLER
+ */
+class PlugboardSolver {
+
+    /** A solver for CIPHERTEXT (a string of characters in the alphabet of
+     *  MACHINE), which must have its rotors inserted and set to the
+     *  positions at which CIPHERTEXT was produced.  Candidates are scored
+     *  by the sum of the scores in TABLES.  The rotors of MACHINE are
+     *  advanced past the ciphertext. */
+    PlugboardSolver(Machine machine, String ciphertext,
+                    NGramTable... tables) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _tables = tables;
+        _length = ciphertext.length();
+        _cipher = new int[_length];
+        _scrambler = new int[_length * _size];
+        _cipherStart = new int[_size + 1];
+        for (int i = 0; i < _length; i += 1) {
+            _cipher[i] = _alphabet.toInt(ciphertext.charAt(i));
+            _cipherStart[_cipher[i] + 1] += 1;
+            machine.step();
+            for (int c = 0; c < _size; c += 1) {
+                _scrambler[i * _size + c] = machine.scramble(c);
+            }
+        }
+        for (int c = 0; c < _size; c += 1) {
+            _cipherStart[c + 1] += _cipherStart[c];
+        }
+        _cipherPositions = new int[_length];
+        int[] next = _cipherStart.clone();
+        for (int i = 0; i < _length; i += 1) {
+            _cipherPositions[next[_cipher[i]]] = i;
+            next[_cipher[i]] += 1;
+        }
+    }
+
+    /** Return the best plugboard found by RESTARTS independent annealing
+     *  runs of ITERATIONS trial swaps each, using at most MAXPAIRS plug
+     *  pairs.  Runs are spread over all available cores; run r uses the
+     *  random seed SEED + r, so results are reproducible. */
+    Result solve(int restarts, int iterations, int maxPairs, long seed) {
+        if (restarts < 1 || maxPairs < 0 || 2 * maxPairs > _size) {
+            throw error("bad plugboard search parameters");
+        }
+        return IntStream.range(0, restarts).parallel()
+            .mapToObj(r -> new Climber(new Random(seed + r), maxPairs)
+                      .run(iterations))
+            .reduce((a, b) -> b.score() > a.score() ? b : a)
+            .get();
+    }
+
+    /** Return the score of the decryption of my ciphertext under the
+     *  plugboard PLUGS, an involution given as an array mapping each
+     *  alphabet index to its partner (or itself). */
+    double scorePlugs(int[] plugs) {
+        return scorePlain(decrypt(plugs));
+    }
+
+    /** Return the decryption of my ciphertext under the plugboard
+     *  PLUGS, as alphabet indices. */
+    int[] decrypt(int[] plugs) {
+        int[] plain = new int[_length];
+        for (int i = 0; i < _length; i += 1) {
+            plain[i] = decryptAt(plugs, i);
+        }
+        return plain;
+    }
+
+    /** Return the decryption of ciphertext position I under PLUGS. */
+    private int decryptAt(int[] plugs, int i) {
+        return plugs[_scrambler[i * _size + plugs[_cipher[i]]]];
+    }
+
+    /** Return the total score of PLAIN under all my tables. */
+    private double scorePlain(int[] plain) {
+        double sum = 0;
+        for (NGramTable table : _tables) {
+            sum += table.score(plain);
+        }
+        return sum;
+    }
+
+    /** The outcome of a plugboard search. */
+    class Result {
+
+        /** A result whose plugboard is PLUGS and whose decryption scores
+         *  SCORE. */
+        Result(int[] plugs, double score) {
+            _plugs = plugs;
+            _score = score;
+        }
+
+        /** Return my plugboard as an array mapping each alphabet index to
+         *  its partner. */
+        int[] plugs() {
+            return _plugs;
+        }
+
+        /** Return the score of my decryption. */
+        double score() {
+            return _score;
+        }
+
+        /** Return my plugboard in the cycle notation used by settings
+         *  lines, e.g. "(AB) (CD)". */
+        String cycles() {
+            StringBuilder result = new StringBuilder();
+            for (int a = 0; a < _size; a += 1) {
+                if (_plugs[a] > a) {
+                    if (result.length() > 0) {
+                        result.append(' ');
+                    }
+                    result.append('(').append(_alphabet.toChar(a))
+                        .append(_alphabet.toChar(_plugs[a])).append(')');
+                }
+            }
+            return result.toString();
+        }
+
+        /** Return the decryption of the ciphertext under my plugboard. */
+        String plaintext() {
+            StringBuilder result = new StringBuilder(_length);
+            for (int i = 0; i < _length; i += 1) {
+                result.append(_alphabet.toChar(decryptAt(_plugs, i)));
+            }
+            return result.toString();
+        }
+
+        /** My plugboard. */
+        private final int[] _plugs;
+
+        /** The score of my decryption. */
+        private final double _score;
+    }
+
+    /** The state of one annealing run. */
+    private class Climber {
+
+        /** A run drawing random choices from RANDOM and using at most
+         *  MAXPAIRS plug pairs, starting from a random plugboard. */
+        Climber(Random random, int maxPairs) {
+            _random = random;
+            _maxPairs = maxPairs;
+            _plugs = new int[_size];
+            for (int a = 0; a < _size; a += 1) {
+                _plugs[a] = a;
+            }
+            int start = _random.nextInt(maxPairs + 1);
+            for (int k = 0; k < 4 * start && _pairs < start; k += 1) {
+                int a = _random.nextInt(_size), b = _random.nextInt(_size);
+                if (a != b && _plugs[a] == a && _plugs[b] == b) {
+                    _plugs[a] = b;
+                    _plugs[b] = a;
+                    _pairs += 1;
+                }
+            }
+            _plain = decrypt(_plugs);
+            _score = scorePlain(_plain);
+            _byPlain = new int[_size][];
+            _numByPlain = new int[_size];
+            _index = new int[_length];
+            for (int c = 0; c < _size; c += 1) {
+                _byPlain[c] = new int[INITIAL_LIST_SIZE];
+            }
+            for (int i = 0; i < _length; i += 1) {
+                addPlain(i);
+            }
+            _changed = new int[_length];
+            _oldPlain = new int[_length];
+            _stamp = new int[_length];
+            _seen = new int[_length];
+        }
+
+        /** Perform ITERATIONS trial swaps and return the best plugboard
+         *  seen. */
+        Result run(int iterations) {
+            int[] best = _plugs.clone();
+            double bestScore = _score;
+            double temperature = INITIAL_TEMPERATURE;
+            double cooling = Math.pow(FINAL_TEMPERATURE / INITIAL_TEMPERATURE,
+                                      1.0 / Math.max(1, iterations));
+            for (int k = 0; k < iterations; k += 1) {
+                int a = _random.nextInt(_size), b = _random.nextInt(_size);
+                if (a != b && trySwap(a, b, temperature)
+                    && _score > bestScore) {
+                    bestScore = _score;
+                    System.arraycopy(_plugs, 0, best, 0, _size);
+                }
+                temperature *= cooling;
+            }
+            return new Result(best, bestScore);
+        }
+
+        /** Toggle the plug pair A-B (unplugging whatever A and B were
+         *  connected to first) and keep the change if it improves my
+         *  score, or with the usual annealing probability at TEMPERATURE
+         *  otherwise.  Return true iff the change was kept. */
+        boolean trySwap(int a, int b, double temperature) {
+            int oldA = _plugs[a], oldB = _plugs[b];
+            int pairs = _pairs;
+            if (oldA == b) {
+                pairs -= 1;
+            } else {
+                pairs += 1 - (oldA != a ? 1 : 0) - (oldB != b ? 1 : 0);
+                if (pairs > _maxPairs) {
+                    return false;
+                }
+            }
+            _numTouched = 0;
+            touch(a);
+            touch(b);
+            touch(oldA);
+            touch(oldB);
+            applySwap(a, b, oldA, oldB);
+            double delta = rescore();
+            if (delta >= 0
+                || _random.nextDouble() < Math.exp(delta / temperature)) {
+                _pairs = pairs;
+                _score += delta;
+                for (int k = 0; k < _numChanged; k += 1) {
+                    movePlain(_changed[k], _oldPlain[k]);
+                }
+                return true;
+            }
+            _plugs[a] = oldA;
+            _plugs[b] = oldB;
+            _plugs[oldA] = a;
+            _plugs[oldB] = b;
+            for (int k = 0; k < _numChanged; k += 1) {
+                _plain[_changed[k]] = _oldPlain[k];
+            }
+            return false;
+        }
+
+        /** Add C to the letters touched by the swap being tried, unless
+         *  it is there already. */
+        private void touch(int c) {
+            for (int k = 0; k < _numTouched; k += 1) {
+                if (_touched[k] == c) {
+                    return;
+                }
+            }
+            _touched[_numTouched] = c;
+            _numTouched += 1;
+        }
+
+        /** Change my plugboard by toggling A-B, where OLDA and OLDB are
+         *  the current partners of A and B. */
+        private void applySwap(int a, int b, int oldA, int oldB) {
+            _plugs[oldA] = oldA;
+            _plugs[oldB] = oldB;
+            if (oldA == b) {
+                _plugs[a] = a;
+                _plugs[b] = b;
+            } else {
+                _plugs[a] = b;
+                _plugs[b] = a;
+            }
+        }
+
+        /** Recompute the decryption at every position whose ciphertext
+         *  or (previous) plaintext letter is touched, recording the old
+         *  values, and return the resulting change in score. */
+        private double rescore() {
+            _numChanged = 0;
+            _pass += 1;
+            double delta = 0;
+            for (int k = 0; k < _numTouched; k += 1) {
+                int t = _touched[k];
+                for (int j = _cipherStart[t]; j < _cipherStart[t + 1];
+                     j += 1) {
+                    change(_cipherPositions[j]);
+                }
+                for (int j = 0; j < _numByPlain[t]; j += 1) {
+                    change(_byPlain[t][j]);
+                }
+            }
+            for (NGramTable table : _tables) {
+                delta -= dirtyScore(table);
+            }
+            for (int k = 0; k < _numChanged; k += 1) {
+                _plain[_changed[k]] = decryptAt(_plugs, _changed[k]);
+            }
+            for (NGramTable table : _tables) {
+                delta += dirtyScore(table);
+            }
+            return delta;
+        }
+
+        /** Add position I to the changed positions, unless it is there
+         *  already. */
+        private void change(int i) {
+            if (_seen[i] != _pass) {
+                _seen[i] = _pass;
+                _changed[_numChanged] = i;
+                _oldPlain[_numChanged] = _plain[i];
+                _numChanged += 1;
+            }
+        }
+
+        /** Move position I, whose decryption was OLD, to the list in
+         *  _byPlain of its current decryption, if that differs. */
+        private void movePlain(int i, int old) {
+            if (_plain[i] != old) {
+                int last = _byPlain[old][_numByPlain[old] - 1];
+                _byPlain[old][_index[i]] = last;
+                _index[last] = _index[i];
+                _numByPlain[old] -= 1;
+                addPlain(i);
+            }
+        }
+
+        /** Add position I to the list of positions of its decryption. */
+        private void addPlain(int i) {
+            int c = _plain[i];
+            if (_numByPlain[c] == _byPlain[c].length) {
+                _byPlain[c] = Arrays.copyOf(_byPlain[c], 2 * _numByPlain[c]);
+            }
+            _byPlain[c][_numByPlain[c]] = i;
+            _index[i] = _numByPlain[c];
+            _numByPlain[c] += 1;
+        }
+
+        /** Return the sum of the scores under TABLE of the n-grams of my
+         *  current plaintext that overlap a changed position, counting
+         *  each n-gram once. */
+        private double dirtyScore(NGramTable table) {
+            int n = table.n();
+            double sum = 0;
+            _generation += 1;
+            for (int k = 0; k < _numChanged; k += 1) {
+                int i = _changed[k];
+                int last = Math.min(i, _length - n);
+                for (int s = Math.max(0, i - n + 1); s <= last; s += 1) {
+                    if (_stamp[s] != _generation) {
+                        _stamp[s] = _generation;
+                        sum += table.scoreAt(_plain, s);
+                    }
+                }
+            }
+            return sum;
+        }
+
+        /** Source of random choices. */
+        private final Random _random;
+
+        /** Largest number of plug pairs allowed. */
+        private final int _maxPairs;
+
+        /** Current plugboard. */
+        private final int[] _plugs;
+
+        /** Number of pairs in _plugs. */
+        private int _pairs;
+
+        /** Decryption under _plugs. */
+        private final int[] _plain;
+
+        /** Score of _plain. */
+        private double _score;
+
+        /** _byPlain[c][0 .. _numByPlain[c] - 1] are the positions at
+         *  which _plain is c, in no particular order.  They are updated
+         *  only when a swap is kept, so that rejected swaps (the great
+         *  majority once the run has cooled) cost nothing to undo. */
+        private final int[][] _byPlain;
+        private final int[] _numByPlain;
+
+        /** _index[i] is the place of position i in its list in
+         *  _byPlain. */
+        private final int[] _index;
+
+        /** The distinct characters involved in the swap being tried, in
+         *  _touched[0 .. _numTouched - 1]. */
+        private final int[] _touched = new int[MAX_TOUCHED];
+        private int _numTouched;
+
+        /** Positions changed by the swap being tried, and their previous
+         *  plaintext letters, in _changed[0 .. _numChanged - 1]. */
+        private final int[] _changed, _oldPlain;
+
+        /** Number of valid entries in _changed. */
+        private int _numChanged;
+
+        /** _stamp[s] == _generation iff the n-gram at s has already been
+         *  counted in the current pass. */
+        private final int[] _stamp;
+
+        /** Identifies the current rescoring pass. */
+        private int _generation;
+
+        /** _seen[i] == _pass iff position i has already been added to
+         *  _changed in the current trial. */
+        private final int[] _seen;
+
+        /** Identifies the current trial. */
+        private int _pass;
+    }
+
+    /** Recover the plugboard of a message.  ARGS[0] names a configuration
+     *  file, ARGS[1] is a settings line without plugboard giving the
+     *  rotors and positions, ARGS[2] names a file holding the ciphertext,
+     *  and the remaining arguments name n-gram frequency files.  Prints
+     *  the plugboard found and the resulting decryption. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 4) {
+                throw error("Usage: java enigma.PlugboardSolver CONFIG "
+                            + "SETTINGS CIPHERTEXT NGRAMS...");
+            }
+            Main config = new Main(Main.getInput(args[0]));
+            Machine machine = config.readConfig();
+            config.setUp(machine, args[1]);
+            StringBuilder text = new StringBuilder();
+            Scanner in = Main.getInput(args[2]);
+            while (in.hasNext()) {
+                text.append(in.next().toUpperCase());
+            }
+            NGramTable[] tables = new NGramTable[args.length - 3];
+            for (int i = 3; i < args.length; i += 1) {
+                tables[i - 3] = NGramTable.load(args[i], machine.alphabet());
+            }
+            PlugboardSolver solver =
+                new PlugboardSolver(machine, text.toString(), tables);
+            Result best = solver.solve(DEFAULT_RESTARTS, DEFAULT_ITERATIONS,
+                                       machine.alphabet().size() / 2, 0);
+            System.out.printf("%s%n%.2f%n%s%n", best.cycles(), best.score(),
+                              best.plaintext());
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Annealing temperature at the start and end of each run. */
+    static final double INITIAL_TEMPERATURE = 10, FINAL_TEMPERATURE = 0.01;
+
+    /** Most letters touched by one trial swap: the two swapped and
+     *  their previous partners. */
+    private static final int MAX_TOUCHED = 4;
+
+    /** Initial capacity of each list of positions in a Climber. */
+    private static final int INITIAL_LIST_SIZE = 16;
+
+    /** Defaults for the command-line search. */
+    static final int DEFAULT_RESTARTS = 64, DEFAULT_ITERATIONS = 20000;
+
+    /** Alphabet of the ciphertext. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Scoring tables. */
+    private final NGramTable[] _tables;
+
+    /** Number of ciphertext characters. */
+    private final int _length;
+
+    /** The ciphertext as alphabet indices. */
+    private final int[] _cipher;
+
+    /** _cipherPositions[_cipherStart[c] .. _cipherStart[c + 1] - 1]
+     *  are the positions of ciphertext letter c, in order. */
+    private final int[] _cipherStart, _cipherPositions;
+
+    /** _scrambler[i * _size + c] is the result of passing c through the
+     *  rotors at ciphertext position i. */
+    private final int[] _scrambler;
+
+}
@@ -0,0 +1,106 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for NGramTable and PlugboardSolver.
+ *  @author A.R. LOEFFLER
+ */
+public class PlugboardSolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine with the naval rotors B, BETA, I, II, III
+     *  inserted and set to SETTING. */
+    private Machine navalMachine(String setting) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("BETA",
+                                  new Permutation(NAVALA.get("Beta"), UPPER)));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"), UPPER),
+                                   "Q"));
+        rotors.add(new MovingRotor("II",
+                                   new Permutation(NAVALA.get("II"), UPPER),
+                                   "E"));
+        rotors.add(new MovingRotor("III",
+                                   new Permutation(NAVALA.get("III"), UPPER),
+                                   "V"));
+        Machine m = new Machine(UPPER, 5, 3, rotors);
+        m.insertRotors(new String[] { "B", "BETA", "I", "II", "III" });
+        m.setRotors(setting);
+        return m;
+    }
+
+    /** Return a bigram table built from the text SAMPLE. */
+    private NGramTable bigrams(String sample) {
+        NGramTable table = new NGramTable(UPPER, 2, -5);
+        for (int i = 0; i + 2 <= sample.length(); i += 1) {
+            int packed = table.pack(sample.substring(i, i + 2));
+            table.setScore(packed, table.score(packed) + 1);
+        }
+        return table;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkPacking() {
+        NGramTable table = new NGramTable(UPPER, 3, 0);
+        assertEquals(0, table.pack("AAA"));
+        assertEquals(26 * 26 + 2 * 26 + 3, table.pack("BCD"));
+        assertEquals(-1, table.pack("A1B"));
+        table.setScore(table.pack("BCD"), 2.5f);
+        assertEquals(2.5, table.scoreAt(new int[] { 0, 1, 2, 3 }, 1), 1e-6);
+    }
+
+    @Test
+    public void checkIdentityDecrypt() {
+        String plain = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        String cipher = navalMachine("AXLE").convert(plain);
+        PlugboardSolver solver =
+            new PlugboardSolver(navalMachine("AXLE"), cipher, bigrams(plain));
+        PlugboardSolver.Result best = solver.solve(1, 0, 0, 0);
+        assertEquals("", best.cycles());
+        assertEquals(plain, best.plaintext());
+    }
+
+    @Test
+    public void checkIncrementalScoreMatchesFullScore() {
+        String plain = "ATTACKATDAWNWITHTHEWHOLEFLEETANDHOLDTHEBRIDGE";
+        Machine sender = navalMachine("AXLE");
+        sender.setPlugboard(new Permutation("(AQ) (EP) (TZ)", UPPER));
+        String cipher = sender.convert(plain);
+        PlugboardSolver solver =
+            new PlugboardSolver(navalMachine("AXLE"), cipher, bigrams(plain));
+        PlugboardSolver.Result best = solver.solve(4, 2000, 5, 1);
+        assertEquals(solver.scorePlugs(best.plugs()), best.score(), 1e-3);
+    }
+
+    @Test
+    public void checkIncrementalScoreOnLongText() {
+        String plain = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG".repeat(60);
+        Machine sender = navalMachine("QRST");
+        sender.setPlugboard(new Permutation("(AQ) (EP) (TZ) (BK) (OX) (MS)",
+                                            UPPER));
+        String cipher = sender.convert(plain);
+        PlugboardSolver solver =
+            new PlugboardSolver(navalMachine("QRST"), cipher, bigrams(plain));
+        for (int seed = 0; seed < 3; seed += 1) {
+            PlugboardSolver.Result best = solver.solve(2, 3000, 13, seed);
+            assertEquals(solver.scorePlugs(best.plugs()), best.score(),
+                         1e-3 * Math.abs(best.score()));
+        }
+    }
+
+}
@@ -18,6 +18,13 @@ class Reflector extends FixedRotor {
         return true;
     }
 
+    @Override
+    Rotor copy() {
+        Rotor result = new Reflector(name(), permutation());
+        result.shareRepresentation(this);
+        return result;
+    }
+
     @Override
     void set(int posn) {
         if (posn != 0) {
@@ -25,4 +32,11 @@ class Reflector extends FixedRotor {
         }
     }
 
+    @Override
+    void setRing(int ring) {
+        if (ring != 0) {
+            throw error("reflector has no ring setting");
+        }
+    }
+
 }
@@ -11,7 +11,10 @@ class Rotor {
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
+        _wiring = perm;
         _setting = 0;
+        _size = perm.size();
+        _representation = Representation.OFFSET;
 
     }
 
@@ -30,6 +33,12 @@ class Rotor {
         return _permutation;
     }
 
+    /** Return my permutation as shifted by my ring setting: the mapping
+     *  that, offset by setting(), gives my conversions. */
+    Permutation wiring() {
+        return _wiring;
+    }
+
     /** Return the size of my alphabet. */
     int size() {
         return _permutation.size();
@@ -62,21 +71,169 @@ class Rotor {
         set(convert);
     }
 
+    /** Return my ring setting. */
+    int ring() {
+        return _ring;
+    }
+
+    /** Set ring() to RING, which turns my wiring RING positions against
+     *  my notches and setting, as the ring (Ringstellung) of a real rotor
+     *  does: at setting s, a character is converted as by my
+     *  permutation offset by s - RING.  The shift is folded into my
+     *  wiring tables here, so conversion costs the same at every ring
+     *  setting. */
+    void setRing(int ring) {
+        if (ring == _ring) {
+            return;
+        }
+        int n = _size;
+        if (ring < 0 || ring >= n) {
+            throw error("ring setting out of range");
+        }
+        if (ring == 0) {
+            _wiring = _permutation;
+        } else {
+            int[] mapping = new int[n];
+            for (int p = 0; p < n; p += 1) {
+                mapping[p] = shift(
+                    _permutation.permute(unshift(p, ring, n)), ring, n);
+            }
+            _wiring = new Permutation(mapping, alphabet());
+        }
+        _ring = ring;
+        represent(_representation);
+    }
+
+    /** Set ring() to character CRING. */
+    void setRing(char cring) {
+        setRing(alphabet().toInt(cring));
+    }
+
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int tmp = p + setting();
-        tmp = _permutation.permute(_permutation.wrap(tmp));
-        return _permutation.wrap(tmp - setting());
-
+        int n = _size, s = _setting;
+        switch (_representation) {
+        case TABLE:
+            return _table[s * n + p];
+        case COMPACT:
+            return unshift(_compact[shift(p, s, n)], s, n);
+        default:
+            return unshift(_wiring.permute(shift(p, s, n)), s, n);
+        }
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int tmp = e + setting();
-        tmp = _permutation.invert(_permutation.wrap(tmp));
-        return _permutation.wrap(tmp - setting());
+        int n = _size, s = _setting;
+        switch (_representation) {
+        case TABLE:
+            return _inverseTable[s * n + e];
+        case COMPACT:
+            return unshift(_inverseCompact[shift(e, s, n)], s, n);
+        default:
+            return unshift(_wiring.invert(shift(e, s, n)), s, n);
+        }
+    }
+
+    /** Return P + S modulo N, where 0 <= P, S < N. */
+    private static int shift(int p, int s, int n) {
+        int r = p + s;
+        return r >= n ? r - n : r;
+    }
+
+    /** Return P - S modulo N, where 0 <= P, S < N. */
+    private static int unshift(int p, int s, int n) {
+        int r = p - s;
+        return r < 0 ? r + n : r;
+    }
+
+    /** Ways in which a rotor may store its wiring. */
+    enum Representation {
+        /** Tables of the conversion of every character at every setting:
+         *  fastest, but 8 * size()^2 bytes. */
+        TABLE,
+        /** The permutation's own forward and inverse int arrays, offset
+         *  by the setting.  Needs no extra memory. */
+        OFFSET,
+        /** Forward and inverse char arrays, offset by the setting:
+         *  4 * size() extra bytes, but half the cache footprint of
+         *  OFFSET. */
+        COMPACT;
+    }
+
+    /** Return the representation that fits my alphabet and a memory
+     *  budget of BUDGET bytes: TABLE if its tables fit, else COMPACT for
+     *  alphabets too large for OFFSET's arrays to stay in cache, else
+     *  OFFSET. */
+    Representation choose(long budget) {
+        long n = _size;
+        if (TABLE_ENTRY_BYTES * n * n <= budget) {
+            return Representation.TABLE;
+        } else if (n > COMPACT_SIZE) {
+            return Representation.COMPACT;
+        }
+        return Representation.OFFSET;
+    }
+
+    /** Store my wiring (as shifted by my ring setting) according to
+     *  KIND.  This must be called again if my permutation changes
+     *  afterwards. */
+    void represent(Representation kind) {
+        int n = _size;
+        _table = null;
+        _inverseTable = null;
+        _compact = null;
+        _inverseCompact = null;
+        _representation = kind;
+        switch (kind) {
+        case TABLE:
+            if ((long) n * n > Integer.MAX_VALUE) {
+                throw error("alphabet too large for rotor tables");
+            }
+            _table = new int[n * n];
+            _inverseTable = new int[n * n];
+            for (int s = 0; s < n; s += 1) {
+                for (int p = 0; p < n; p += 1) {
+                    _table[s * n + p] = unshift(
+                        _wiring.permute(shift(p, s, n)), s, n);
+                    _inverseTable[s * n + p] = unshift(
+                        _wiring.invert(shift(p, s, n)), s, n);
+                }
+            }
+            break;
+        case COMPACT:
+            if (n > Character.MAX_VALUE + 1) {
+                throw error("alphabet too large for compact rotor");
+            }
+            _compact = new char[n];
+            _inverseCompact = new char[n];
+            for (int p = 0; p < n; p += 1) {
+                _compact[p] = (char) _wiring.permute(p);
+                _inverseCompact[p] = (char) _wiring.invert(p);
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    /** Return how I currently store my wiring. */
+    Representation representation() {
+        return _representation;
+    }
+
+    /** Use the same (immutable) wiring tables and ring setting as OTHER,
+     *  which must have the same permutation as I do. */
+    void shareRepresentation(Rotor other) {
+        _ring = other._ring;
+        _wiring = other._wiring;
+        _representation = other._representation;
+        _table = other._table;
+        _inverseTable = other._inverseTable;
+        _compact = other._compact;
+        _inverseCompact = other._inverseCompact;
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
@@ -85,6 +242,13 @@ class Rotor {
         return false;
     }
 
+    /** Return the number of times I must advance before atNotch()
+     *  (0 if I am at a notch now), or -1 if that never happens.  By
+     *  default, -1. */
+    int notchDistance() {
+        return -1;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
 
@@ -97,6 +261,15 @@ class Rotor {
 
 
 
+    /** Return a new rotor like me, at my current setting, that can be
+     *  advanced independently of me. */
+    Rotor copy() {
+        Rotor result = new Rotor(_name, _permutation);
+        result.set(_setting);
+        result.shareRepresentation(this);
+        return result;
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -116,7 +289,39 @@ class Rotor {
     /** The setting of this rotor. */
     private int _setting;
 
+    /** My ring setting. */
+    private int _ring;
+
+    /** _permutation shifted by _ring. */
+    private Permutation _wiring;
+
     /** The array of notches for this rotor. */
     private int[] _notches;
 
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** How my wiring is stored. */
+    private Representation _representation;
+
+    /** For TABLE: entry s * size() + p is convertForward(p) at setting
+     *  s. */
+    private int[] _table;
+
+    /** For TABLE: as for _table, but for convertBackward. */
+    private int[] _inverseTable;
+
+    /** For COMPACT: my wiring's mapping. */
+    private char[] _compact;
+
+    /** For COMPACT: my wiring's inverse mapping. */
+    private char[] _inverseCompact;
+
+    /** Bytes per entry of a TABLE. */
+    private static final int TABLE_ENTRY_BYTES = 8;
+
+    /** Largest alphabet for which the OFFSET representation is used when
+     *  TABLE does not fit. */
+    static final int COMPACT_SIZE = 4096;
+
 }
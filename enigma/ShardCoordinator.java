@@ -0,0 +1,595 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** Spreads a key search over several worker processes, on this host or
+ *  others.  The key range is cut into shards, which are handed out one at
+ *  a time to ShardWorkers that connect over a socket.  Each worker runs a
+ *  KeySearch (and so the ordinary Machine) over its shard and sends back
+ *  its best keys, which are merged here.  A shard held by a worker whose
+ *  connection drops is put back at the front of the queue for the next
+ *  worker to ask.  Worker JVMs launched here are watched: one that dies
+ *  while shards remain is relaunched, up to MAX_RELAUNCHES times per
+ *  worker launched, after which the search fails once no launched
+ *  worker is alive and no worker is connected.
+ *
+ *  The protocol is line-oriented text.  A worker sends HELLO and receives
+ *  the job (see Job.write), then repeatedly receives either
+ *  "SHARD id from to", answered by "RESULT id n" and n lines
+ *  "TOP key score", or DONE, after which it exits.  A worker that cannot
+ *  carry out the job answers "ERROR message" instead.
+ *  @author A.R. LOEFFLER
+ */
+class ShardCoordinator {
+
+    /** A coordinator for the search JOB of the keys from FROM (inclusive)
+     *  to TO (exclusive), in shards of SHARD keys. */
+    ShardCoordinator(Job job, long from, long to, long shard) {
+        if (from < 0 || from > to || shard < 1) {
+            throw error("bad shard range");
+        }
+        _job = job;
+        _from = from;
+        _to = to;
+        _shard = shard;
+        _best = new TopKeys(job.limit());
+        _queue = new ArrayDeque<>();
+        for (long s = 0; from + s * shard < to; s += 1) {
+            _queue.add(s);
+        }
+        _remaining = _queue.size();
+        _numShards = _remaining;
+    }
+
+    /** Start accepting workers on PORT (any free port if 0), and return
+     *  the port used. */
+    int listen(int port) {
+        try {
+            _server = new ServerSocket(port);
+        } catch (IOException excp) {
+            throw error("could not listen on port %d", port);
+        }
+        Thread acceptor = new Thread(() -> {
+            while (!_server.isClosed()) {
+                try {
+                    Socket worker = _server.accept();
+                    Thread handler = new Thread(() -> serve(worker));
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException excp) {
+                    return;
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return _server.getLocalPort();
+    }
+
+    /** Launch N worker JVMs on this host, each using THREADS threads,
+     *  connected to my port. */
+    synchronized void launchWorkers(int n, int threads) {
+        _launched += n;
+        for (int i = 0; i < n; i += 1) {
+            launch(threads);
+        }
+    }
+
+    /** Launch a worker JVM using THREADS threads, and watch for it to
+     *  exit. */
+    private synchronized void launch(int threads) {
+        String java = System.getProperty("java.home") + File.separator + "bin"
+            + File.separator + "java";
+        ProcessBuilder builder =
+            new ProcessBuilder(java, "-cp",
+                               System.getProperty("java.class.path"),
+                               "enigma.ShardWorker", "--threads=" + threads,
+                               "localhost",
+                               Integer.toString(_server.getLocalPort()));
+        builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process worker;
+        try {
+            worker = builder.start();
+        } catch (IOException excp) {
+            throw error("could not launch worker");
+        }
+        _workers.add(worker);
+        _live += 1;
+        worker.onExit().thenRun(() -> exited(threads));
+    }
+
+    /** Note that a worker JVM using THREADS threads has exited, and
+     *  relaunch it if shards remain and relaunches are left. */
+    private synchronized void exited(int threads) {
+        _live -= 1;
+        if (_closed || _remaining == 0 || _failure != null) {
+            return;
+        }
+        if (_relaunches < MAX_RELAUNCHES * _launched) {
+            _relaunches += 1;
+            try {
+                launch(threads);
+            } catch (EnigmaException excp) {
+                fail(excp.getMessage());
+            }
+        } else {
+            checkWorkers();
+        }
+    }
+
+    /** Fail if shards remain but I launched workers and none is alive
+     *  and no worker is connected, so that no shard can be done. */
+    private synchronized void checkWorkers() {
+        if (_launched > 0 && _live == 0 && _connected == 0
+            && _remaining > 0 && _failure == null) {
+            fail("all workers exited with shards left");
+        }
+    }
+
+    /** Return the worker JVMs I have launched, including any that have
+     *  exited. */
+    synchronized ArrayList<Process> workers() {
+        return new ArrayList<>(_workers);
+    }
+
+    /** Wait until every shard is done, and return the best keys. */
+    synchronized TopKeys await() {
+        while (_remaining > 0 && _failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException excp) {
+                throw error("interrupted");
+            }
+        }
+        if (_failure != null) {
+            throw error("worker failed: %s", _failure);
+        }
+        return _best;
+    }
+
+    /** Return the number of shards not yet done. */
+    synchronized long remaining() {
+        return _remaining;
+    }
+
+    /** Return the total number of shards. */
+    long numShards() {
+        return _numShards;
+    }
+
+    /** Stop listening and stop any workers I launched. */
+    void close() {
+        synchronized (this) {
+            _closed = true;
+        }
+        try {
+            if (_server != null) {
+                _server.close();
+            }
+        } catch (IOException excp) {
+            /* Ignore: we are shutting down anyway. */
+        }
+        for (Process p : workers()) {
+            p.destroy();
+        }
+    }
+
+    /** Converse with the worker on SOCKET until it is finished or its
+     *  connection fails. */
+    private void serve(Socket socket) {
+        Long shard = null;
+        connect(1);
+        try (Socket s = socket;
+             BufferedReader in = reader(s); PrintWriter out = writer(s)) {
+            if (!"HELLO".equals(in.readLine())) {
+                return;
+            }
+            _job.write(out);
+            out.flush();
+            while (true) {
+                shard = take();
+                if (shard == null) {
+                    out.println("DONE");
+                    out.flush();
+                    return;
+                }
+                long start = _from + shard * _shard;
+                out.printf("SHARD %d %d %d%n", shard, start,
+                           Math.min(_to, start + _shard));
+                out.flush();
+                String line = in.readLine();
+                if (line == null) {
+                    throw new IOException("worker vanished");
+                }
+                Scanner reply = new Scanner(line);
+                String kind = reply.next();
+                if (kind.equals("ERROR")) {
+                    fail(line.substring(kind.length()).trim());
+                    return;
+                }
+                if (!kind.equals("RESULT") || reply.nextLong() != shard) {
+                    throw new IOException("bad reply");
+                }
+                TopKeys result = new TopKeys(_job.limit());
+                for (int n = reply.nextInt(); n > 0; n -= 1) {
+                    Scanner top = new Scanner(in.readLine());
+                    top.next();
+                    result.offer(top.nextLong(),
+                                 Double.parseDouble(top.next()));
+                }
+                complete(result);
+                shard = null;
+            }
+        } catch (IOException | RuntimeException excp) {
+            if (shard != null) {
+                putBack(shard);
+            }
+        } finally {
+            connect(-1);
+        }
+    }
+
+    /** Add CHANGE to the number of workers connected, checking whether
+     *  any are left when one disconnects. */
+    private synchronized void connect(int change) {
+        _connected += change;
+        if (change < 0) {
+            checkWorkers();
+        }
+    }
+
+    /** Return the number of the next shard to hand out, waiting if all
+     *  unfinished shards are out, or null if all are done. */
+    private synchronized Long take() {
+        while (_queue.isEmpty() && _remaining > 0 && _failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException excp) {
+                return null;
+            }
+        }
+        return _remaining == 0 || _failure != null ? null : _queue.poll();
+    }
+
+    /** Record that a shard has finished with best keys RESULT. */
+    private synchronized void complete(TopKeys result) {
+        _best.merge(result);
+        _remaining -= 1;
+        notifyAll();
+    }
+
+    /** Return the unfinished shard SHARD to the front of the queue. */
+    private synchronized void putBack(long shard) {
+        _queue.addFirst(shard);
+        notifyAll();
+    }
+
+    /** Record that a worker reported the error MSG. */
+    private synchronized void fail(String msg) {
+        _failure = msg;
+        notifyAll();
+    }
+
+    /** Return a reader for the input of SOCKET. */
+    static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(
+            new InputStreamReader(socket.getInputStream(),
+                                  StandardCharsets.UTF_8));
+    }
+
+    /** Return a writer for the output of SOCKET. */
+    static PrintWriter writer(Socket socket) throws IOException {
+        return new PrintWriter(socket.getOutputStream(), false,
+                               StandardCharsets.UTF_8);
+    }
+
+    /** Everything a worker needs to search a shard: the configuration,
+     *  plugboard, ciphertext and n-gram tables, sent as text so that
+     *  workers need no access to the coordinator's files. */
+    static class Job {
+
+        /** A job using the configuration CONFIG (the text of a
+         *  configuration file), the plugboard of the settings line
+         *  SETTINGS (none if null), ciphertext CIPHERTEXT and n-gram
+         *  frequency files with contents TABLES, keeping the LIMIT best
+         *  keys and searching in chunks of CHUNK keys. */
+        Job(String config, String settings, String ciphertext,
+            String[] tables, int limit, long chunk) {
+            _config = config;
+            _settings = settings;
+            _ciphertext = ciphertext;
+            _tables = tables;
+            _limit = limit;
+            _chunk = chunk;
+        }
+
+        /** Return the job described by the files named CONFIG (a
+         *  configuration), CIPHERTEXT and TABLES (n-gram frequencies),
+         *  with plugboard from SETTINGS (none if null), keeping the LIMIT
+         *  best keys in chunks of CHUNK. */
+        static Job fromFiles(String config, String settings,
+                             String ciphertext, String[] tables, int limit,
+                             long chunk) {
+            StringBuilder text = new StringBuilder();
+            Scanner in = Main.getInput(ciphertext);
+            while (in.hasNext()) {
+                text.append(in.next().toUpperCase());
+            }
+            String[] contents = new String[tables.length];
+            for (int i = 0; i < tables.length; i += 1) {
+                contents[i] = slurp(tables[i]);
+            }
+            return new Job(slurp(config), settings, text.toString(),
+                           contents, limit, chunk);
+        }
+
+        /** Return a job like me, but scored with n-gram frequency files
+         *  whose contents are TABLES. */
+        Job withTables(String... tables) {
+            return new Job(_config, _settings, _ciphertext, tables, _limit,
+                           _chunk);
+        }
+
+        /** Return the contents of the file named NAME. */
+        private static String slurp(String name) {
+            try {
+                return Files.readString(new File(name).toPath());
+            } catch (IOException excp) {
+                throw error("could not read %s", name);
+            }
+        }
+
+        /** Return the number of best keys kept. */
+        int limit() {
+            return _limit;
+        }
+
+        /** Return my key space, building it on first use. */
+        synchronized KeySpace space() {
+            if (_space == null) {
+                Main config = new Main(new Scanner(_config));
+                Machine machine = config.readConfig();
+                Permutation plugboard = null;
+                if (_settings != null) {
+                    config.setUp(machine, _settings);
+                    plugboard = machine.plugboard();
+                }
+                _space = new KeySpace(machine, plugboard);
+                Alphabet alpha = machine.alphabet();
+                _ngrams = new NGramTable[_tables.length];
+                for (int i = 0; i < _tables.length; i += 1) {
+                    _ngrams[i] = NGramTable.read(new Scanner(_tables[i]),
+                                                 alpha, "table " + i);
+                }
+            }
+            return _space;
+        }
+
+        /** Return a search of my keys from FROM (inclusive) to TO
+         *  (exclusive). */
+        KeySearch search(long from, long to) {
+            KeySpace space = space();
+            return new KeySearch(space, from, to, _ciphertext, _ngrams,
+                                 _limit, _chunk);
+        }
+
+        /** Send me on OUT. */
+        void write(PrintWriter out) {
+            out.printf("JOB %d %d%n", _limit, _chunk);
+            out.println(_settings == null ? "-" : _settings);
+            out.println(_ciphertext);
+            writeText(out, _config);
+            out.println(_tables.length);
+            for (String table : _tables) {
+                writeText(out, table);
+            }
+        }
+
+        /** Return a job received from IN, as sent by write(). */
+        static Job read(BufferedReader in) throws IOException {
+            Scanner header = new Scanner(in.readLine());
+            if (!header.next().equals("JOB")) {
+                throw new IOException("expected a job");
+            }
+            int limit = header.nextInt();
+            long chunk = header.nextLong();
+            String settings = in.readLine();
+            String ciphertext = in.readLine();
+            String config = readText(in);
+            String[] tables = new String[Integer.parseInt(in.readLine())];
+            for (int i = 0; i < tables.length; i += 1) {
+                tables[i] = readText(in);
+            }
+            return new Job(config, settings.equals("-") ? null : settings,
+                           ciphertext, tables, limit, chunk);
+        }
+
+        /** Send the multi-line TEXT on OUT, preceded by its line count. */
+        private static void writeText(PrintWriter out, String text) {
+            String[] lines = text.split("\r?\n", -1);
+            out.println(lines.length);
+            for (String line : lines) {
+                out.println(line);
+            }
+        }
+
+        /** Return text sent by writeText from IN. */
+        private static String readText(BufferedReader in)
+            throws IOException {
+            int n = Integer.parseInt(in.readLine());
+            StringBuilder result = new StringBuilder();
+            for (int i = 0; i < n; i += 1) {
+                if (i > 0) {
+                    result.append('\n');
+                }
+                result.append(in.readLine());
+            }
+            return result.toString();
+        }
+
+        /** Text of the configuration file. */
+        private final String _config;
+
+        /** Settings line supplying the plugboard, or null. */
+        private final String _settings;
+
+        /** The ciphertext. */
+        private final String _ciphertext;
+
+        /** Texts of the n-gram frequency files. */
+        private final String[] _tables;
+
+        /** Number of best keys kept. */
+        private final int _limit;
+
+        /** Keys per chunk within a shard. */
+        private final long _chunk;
+
+        /** The key space, once built. */
+        private KeySpace _space;
+
+        /** The n-gram tables, once built. */
+        private NGramTable[] _ngrams;
+    }
+
+    /** Run a sharded search.  The arguments are CONFIG CIPHERTEXT
+     *  NGRAMS..., as for KeySearch, preceded by any of the options
+     *  --workers=N (local worker JVMs to launch, default 1), --threads=N
+     *  (threads per local worker), --port=P (port to listen on for
+     *  further workers, default any), --shard=N (keys per shard), --top=K
+     *  and --from=SETTINGS and --to=SETTINGS, as for KeySearch.  Prints
+     *  the best keys when done. */
+    public static void main(String... args) {
+        ShardCoordinator coordinator = null;
+        try {
+            int workers = 1, threads = 1, port = 0;
+            int limit = KeySearch.DEFAULT_LIMIT;
+            long shard = DEFAULT_SHARD;
+            String first = null, last = null;
+            int a;
+            for (a = 0; a < args.length && args[a].startsWith("--"); a += 1) {
+                String[] opt = args[a].split("=", 2);
+                if (opt.length < 2) {
+                    throw error("bad option %s", args[a]);
+                }
+                switch (opt[0]) {
+                case "--workers":
+                    workers = Integer.parseInt(opt[1]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(opt[1]);
+                    break;
+                case "--port":
+                    port = Integer.parseInt(opt[1]);
+                    break;
+                case "--shard":
+                    shard = Long.parseLong(opt[1]);
+                    break;
+                case "--top":
+                    limit = Integer.parseInt(opt[1]);
+                    break;
+                case "--from":
+                    first = opt[1];
+                    break;
+                case "--to":
+                    last = opt[1];
+                    break;
+                default:
+                    throw error("unknown option %s", opt[0]);
+                }
+            }
+            if (args.length - a < 3) {
+                throw error("Usage: java enigma.ShardCoordinator [OPTIONS] "
+                            + "CONFIG CIPHERTEXT NGRAMS...");
+            }
+            String[] tables = new String[args.length - a - 2];
+            System.arraycopy(args, a + 2, tables, 0, tables.length);
+            Job job = Job.fromFiles(args[a], first, args[a + 1], tables,
+                                    limit, KeySearch.DEFAULT_CHUNK);
+            KeySpace space = job.space();
+            long from = first == null ? 0 : space.key(first);
+            long to = last == null ? space.size() : space.key(last) + 1;
+            coordinator = new ShardCoordinator(job, from, to, shard);
+            port = coordinator.listen(port);
+            System.err.printf("Listening on port %d for %d shards%n", port,
+                              coordinator.numShards());
+            coordinator.launchWorkers(workers, threads);
+            for (TopKeys.Entry e : coordinator.await().entries()) {
+                System.out.printf("%.2f %s%n", e.score(),
+                                  space.settings(e.key()));
+            }
+            coordinator.close();
+            return;
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        if (coordinator != null) {
+            coordinator.close();
+        }
+        System.exit(1);
+    }
+
+    /** Number of times each launched worker may be relaunched after
+     *  dying, on average. */
+    static final int MAX_RELAUNCHES = 3;
+
+    /** Default number of keys per shard. */
+    static final long DEFAULT_SHARD = 1 << 20;
+
+    /** The search to perform. */
+    private final Job _job;
+
+    /** The range of keys searched: _from <= key < _to. */
+    private final long _from, _to;
+
+    /** Keys per shard. */
+    private final long _shard;
+
+    /** Total number of shards. */
+    private final long _numShards;
+
+    /** Numbers of the shards not yet handed out. */
+    private final ArrayDeque<Long> _queue;
+
+    /** Number of shards not yet done. */
+    private long _remaining;
+
+    /** The best keys from finished shards. */
+    private final TopKeys _best;
+
+    /** Error reported by a worker, or null. */
+    private String _failure;
+
+    /** Socket on which workers connect. */
+    private ServerSocket _server;
+
+    /** Worker processes I launched. */
+    private final ArrayList<Process> _workers = new ArrayList<>();
+
+    /** Number of workers asked for by launchWorkers, of those launched
+     *  that are still alive, and of relaunches so far. */
+    private int _launched, _live, _relaunches;
+
+    /** Number of workers connected. */
+    private int _connected;
+
+    /** True once I have been closed. */
+    private boolean _closed;
+
+}
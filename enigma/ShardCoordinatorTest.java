@@ -0,0 +1,121 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+
+/** The suite of all JUnit tests for ShardCoordinator and ShardWorker.
+ *  Workers are real JVMs on localhost.
+ *  @author A.R. LOEFFLER
+ */
+public class ShardCoordinatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a small job over the default configuration, scoring with
+     *  a bigram table built from a line of text. */
+    private ShardCoordinator.Job job() {
+        String bigrams = "TH 10\nHE 8\nIN 6\nER 5\nAN 5\nRE 4\nON 4\n";
+        return ShardCoordinator.Job.fromFiles(
+            "testing/correct/default.conf", null,
+            "testing/correct/trivial1.out", new String[0], 5, 100)
+            .withTables(bigrams);
+    }
+
+    /** Return the keys of T, best first. */
+    private ArrayList<Long> keys(TopKeys t) {
+        ArrayList<Long> result = new ArrayList<>();
+        for (TopKeys.Entry e : t.entries()) {
+            result.add(e.key());
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkShardedMatchesSingleProcess() throws Exception {
+        ShardCoordinator.Job job = job();
+        KeySearch local = job.search(1000, 4000);
+        local.run(1);
+
+        ShardCoordinator coordinator =
+            new ShardCoordinator(job, 1000, 4000, 400);
+        int port = coordinator.listen(0);
+        try (Socket dying = new Socket("localhost", port);
+             BufferedReader in = ShardCoordinator.reader(dying);
+             PrintWriter out = ShardCoordinator.writer(dying)) {
+            out.println("HELLO");
+            out.flush();
+            String line;
+            do {
+                line = in.readLine();
+            } while (!line.startsWith("SHARD"));
+        }
+        coordinator.launchWorkers(2, 1);
+        TopKeys best = coordinator.await();
+        coordinator.close();
+        assertEquals(0, coordinator.remaining());
+        assertEquals(keys(local.best()), keys(best));
+    }
+
+    @Test
+    public void checkDeadWorkerRelaunched() throws Exception {
+        ShardCoordinator.Job job = job();
+        KeySearch local = job.search(1000, 4000);
+        local.run(1);
+
+        ShardCoordinator coordinator =
+            new ShardCoordinator(job, 1000, 4000, 400);
+        coordinator.listen(0);
+        coordinator.launchWorkers(1, 1);
+        coordinator.workers().get(0).destroyForcibly();
+        TopKeys best = coordinator.await();
+        coordinator.close();
+        assertEquals(0, coordinator.remaining());
+        assertEquals(keys(local.best()), keys(best));
+        assertTrue(coordinator.workers().size() > 1);
+    }
+
+    @Test
+    public void checkAllWorkersDeadFails() throws Exception {
+        ShardCoordinator coordinator =
+            new ShardCoordinator(job(), 0, 1L << 30, 1L << 20);
+        coordinator.listen(0);
+        coordinator.launchWorkers(1, 1);
+        Thread killer = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                for (Process p : coordinator.workers()) {
+                    p.destroyForcibly();
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException excp) {
+                    return;
+                }
+            }
+        });
+        killer.start();
+        try {
+            coordinator.await();
+            fail("search with no workers finished");
+        } catch (EnigmaException excp) {
+            assertEquals(1 + ShardCoordinator.MAX_RELAUNCHES,
+                         coordinator.workers().size());
+        } finally {
+            killer.interrupt();
+            coordinator.close();
+        }
+    }
+
+}
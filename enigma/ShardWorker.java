@@ -0,0 +1,85 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** A worker process for a ShardCoordinator: connects to it, receives the
+ *  job and then searches the shards it is handed until told it is done.
+ *  @author A.R. LOEFFLER
+ */
+final class ShardWorker {
+
+    /** Not instantiable. */
+    private ShardWorker() {
+    }
+
+    /** Work for the coordinator at host ARGS[0], port ARGS[1], optionally
+     *  preceded by --threads=N (default: all available processors). */
+    public static void main(String... args) {
+        try {
+            int threads = Runtime.getRuntime().availableProcessors();
+            int a = 0;
+            if (args.length > 0 && args[0].startsWith("--threads=")) {
+                threads = Integer.parseInt(args[0].substring(
+                    "--threads=".length()));
+                a = 1;
+            }
+            if (args.length - a != 2) {
+                throw error("Usage: java enigma.ShardWorker [--threads=N] "
+                            + "HOST PORT");
+            }
+            work(args[a], Integer.parseInt(args[a + 1]), threads);
+            return;
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Search shards for the coordinator at HOST and PORT using THREADS
+     *  threads until it says there are no more. */
+    static void work(String host, int port, int threads) {
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = ShardCoordinator.reader(socket);
+             PrintWriter out = ShardCoordinator.writer(socket)) {
+            out.println("HELLO");
+            out.flush();
+            ShardCoordinator.Job job = ShardCoordinator.Job.read(in);
+            for (String line = in.readLine();
+                 line != null && !line.equals("DONE");
+                 line = in.readLine()) {
+                Scanner request = new Scanner(line);
+                if (!request.next().equals("SHARD")) {
+                    throw error("unexpected request: %s", line);
+                }
+                long shard = request.nextLong();
+                long from = request.nextLong(), to = request.nextLong();
+                try {
+                    KeySearch search = job.search(from, to);
+                    search.run(threads);
+                    TopKeys best = search.best();
+                    out.printf("RESULT %d %d%n", shard, best.size());
+                    for (TopKeys.Entry e : best.entries()) {
+                        out.printf("TOP %d %s%n", e.key(),
+                                   Double.toString(e.score()));
+                    }
+                } catch (EnigmaException excp) {
+                    out.printf("ERROR %s%n", excp.getMessage());
+                    out.flush();
+                    throw excp;
+                }
+                out.flush();
+            }
+        } catch (IOException excp) {
+            throw error("lost connection to %s:%d", host, port);
+        }
+    }
+
+}
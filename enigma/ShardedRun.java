@@ -0,0 +1,507 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** A run of Main over one input file split among several worker JVMs.
+ *  The input is cut into shards of about equal numbers of bytes, each
+ *  ending just after a line with a token, so that no blank lines are
+ *  held back at the end of a shard (see Pipeline) and only the last
+ *  shard sees the end of the input.  A single pass over the input,
+ *  which tracks settings lines and counts keystrokes but converts
+ *  nothing, finds the state in which each shard starts: the settings
+ *  line in force, the last one that set a plugboard (since a settings
+ *  line without one keeps the last), the rotor settings (found with
+ *  Machine.skip) and the flags of a PipelineCheckpoint.  This plan is
+ *  saved in a manifest, each worker runs Main from its shard's state
+ *  over its byte range into a part file, and the parts are concatenated
+ *  in order, giving exactly the output of a single run.  The manifest
+ *  records which shards are done, so that a run in which some failed
+ *  can be resumed by re-running only those.
+ *
+ *  Like checkpoints, byte offsets assume the input is in the default
+ *  charset.
+ *  @author A.R. LOEFFLER
+ */
+class ShardedRun {
+
+    /** The starting state and progress of one shard. */
+    static final class Shard {
+
+        /** A shard of the input bytes [FROM .. TO-1] that starts in the
+         *  state described by START. */
+        Shard(long from, long to, PipelineCheckpoint start) {
+            _from = from;
+            _to = to;
+            _start = start;
+        }
+
+        /** Return the offset of my first byte. */
+        long from() {
+            return _from;
+        }
+
+        /** Return the offset just after my last byte. */
+        long to() {
+            return _to;
+        }
+
+        /** Return the state in which I start. */
+        PipelineCheckpoint start() {
+            return _start;
+        }
+
+        /** Return true iff my part file is complete. */
+        boolean done() {
+            return _done;
+        }
+
+        /** First byte. */
+        private final long _from;
+        /** End of my bytes. */
+        private long _to;
+        /** Starting state. */
+        private final PipelineCheckpoint _start;
+        /** True iff finished. */
+        private boolean _done;
+    }
+
+    /** A run converting the file named INPUT into the file named OUTPUT
+     *  in the shards SHARDS.  SIZE is the length of INPUT. */
+    private ShardedRun(String input, long size, String output,
+                       List<Shard> shards) {
+        _input = input;
+        _size = size;
+        _output = output;
+        _shards = shards;
+    }
+
+    /** Return a run that converts the file named INPUT into the file
+     *  named OUTPUT in up to N shards, using MACHINE, a machine newly
+     *  configured by MAIN, to follow settings lines. */
+    static ShardedRun plan(Main main, Machine machine, String input,
+                           String output, int n) {
+        if (n < 1) {
+            throw error("bad number of shards: %d", n);
+        }
+        long size = new File(input).length();
+        try (Reader in = new InputStreamReader(new FileInputStream(input))) {
+            Planner planner = new Planner(main, machine, size, n);
+            char[] buf = new char[Pipeline.CHUNK_SIZE];
+            for (int k = in.read(buf); k >= 0; k = in.read(buf)) {
+                planner.scan(buf, k);
+            }
+            return new ShardedRun(input, size, output, planner.shards());
+        } catch (IOException excp) {
+            throw error("could not read %s", input);
+        }
+    }
+
+    /** Follows the input to find where shards start and in what
+     *  state, as Pipeline would be in at those points. */
+    private static final class Planner {
+
+        /** A planner for SIZE bytes of input in up to N shards, applying
+         *  settings lines to MACHINE with MAIN.setUp. */
+        Planner(Main main, Machine machine, long size, int n) {
+            _main = main;
+            _machine = machine;
+            _size = size;
+            _n = n;
+            _shards.add(new Shard(0, size, new PipelineCheckpoint(
+                0, null, null, settings(machine), false, true, false)));
+            _encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        /** Follow the N characters of BUF. */
+        void scan(char[] buf, int n) {
+            _counted = 0;
+            for (int i = 0; i < n; i += 1) {
+                char ch = buf[i];
+                if (_sawCR) {
+                    _sawCR = false;
+                    if (ch == '\n') {
+                        continue;
+                    }
+                }
+                switch (ch) {
+                case '\r':
+                    _sawCR = true;
+                    count(buf, i + 1);
+                    endLine();
+                    break;
+                case '\n': case '\u2028': case '\u2029': case '\u0085':
+                    count(buf, i + 1);
+                    endLine();
+                    break;
+                default:
+                    if (_length == 0 && ch == '*') {
+                        _settings = new StringBuilder();
+                    }
+                    if (_settings != null) {
+                        _settings.append(ch);
+                    } else if (_machine.member(ch)
+                               || _machine.member(Character.toUpperCase(ch))) {
+                        _lineKeys += 1;
+                    }
+                    _length += 1;
+                    if (!Character.isWhitespace(ch)) {
+                        _hasToken = true;
+                    }
+                }
+            }
+            count(buf, n);
+        }
+
+        /** Return the shards found, the last ending at the end of the
+         *  input. */
+        List<Shard> shards() {
+            return _shards;
+        }
+
+        /** Handle the end of a line.  Blank lines are processed at once
+         *  rather than held back: that only matters at the end of the
+         *  input, which is never the start of a shard. */
+        private void endLine() {
+            if (_settings != null) {
+                String line = _settings.toString();
+                Permutation plugboard = _machine.plugboard();
+                _main.setUp(_machine, line);
+                if (_machine.plugboard() != plugboard) {
+                    _plugboardLine = line;
+                }
+                _settingsLine = line;
+                _settingsRead = true;
+                _keys = 0;
+            } else if (_length > 0) {
+                _firstRun = false;
+                _keys += _lineKeys;
+            }
+            if (_hasToken && _bytes < _size
+                && _bytes * _n >= _size * _shards.size()) {
+                Machine m = _machine.copy();
+                m.skip(_keys);
+                _shards.get(_shards.size() - 1)._to = _bytes;
+                _shards.add(new Shard(_bytes, _size, new PipelineCheckpoint(
+                    _bytes, _settingsLine, _plugboardLine, settings(m),
+                    _settingsRead, _firstRun, _sawCR)));
+            }
+            _settings = null;
+            _length = 0;
+            _lineKeys = 0;
+            _hasToken = false;
+        }
+
+        /** Add the encoded length of BUF[_counted .. END-1] to _bytes and
+         *  set _counted to END. */
+        private void count(char[] buf, int end) {
+            CharBuffer chars = CharBuffer.wrap(buf, _counted, end - _counted);
+            CoderResult result;
+            do {
+                _encoded.clear();
+                result = _encoder.encode(chars, _encoded, false);
+                _bytes += _encoded.position();
+            } while (result.isOverflow());
+            _counted = end;
+        }
+
+        /** Applies settings lines. */
+        private final Main _main;
+        /** Follows settings lines; never stepped. */
+        private final Machine _machine;
+        /** Input size and maximum number of shards. */
+        private final long _size, _n;
+        /** Shards so far. */
+        private final ArrayList<Shard> _shards = new ArrayList<>();
+        /** Finds byte offsets. */
+        private final CharsetEncoder _encoder;
+        /** Scratch space for encoding. */
+        private final ByteBuffer _encoded = ByteBuffer.allocate(1 << 12);
+        /** Bytes of input before _counted. */
+        private long _bytes;
+        /** Characters of the current buffer counted in _bytes. */
+        private int _counted;
+        /** The current line if it is a settings line, else null. */
+        private StringBuilder _settings;
+        /** Length of the current line. */
+        private int _length;
+        /** Keystrokes in the current line. */
+        private long _lineKeys;
+        /** True iff the current line has a token. */
+        private boolean _hasToken;
+        /** True iff the last line ended in a carriage return. */
+        private boolean _sawCR;
+        /** Keystrokes since the last settings line. */
+        private long _keys;
+        /** The last settings line, and the last to set a plugboard. */
+        private String _settingsLine, _plugboardLine;
+        /** Pipeline flags. */
+        private boolean _settingsRead, _firstRun = true;
+    }
+
+    /** Return the settings of the rotors in M's slots. */
+    private static int[] settings(Machine m) {
+        Rotor[] rotors = m.usedRotors();
+        int[] result = new int[rotors.length];
+        for (int i = 0; i < rotors.length; i += 1) {
+            result[i] = rotors[i] == null ? 0 : rotors[i].setting();
+        }
+        return result;
+    }
+
+    /** Return my shards. */
+    List<Shard> shards() {
+        return _shards;
+    }
+
+    /** Return the name of the part file for shard K. */
+    String part(int k) {
+        return _output + ".part" + k;
+    }
+
+    /** Return an InputStream reading the bytes of shard K of FILE. */
+    InputStream open(int k, FileInputStream file) {
+        Shard shard = _shards.get(k);
+        try {
+            file.getChannel().position(shard.from());
+        } catch (IOException excp) {
+            throw error("could not read %s", _input);
+        }
+        long[] left = { shard.to() - shard.from() };
+        return new FilterInputStream(file) {
+            @Override
+            public int read() throws IOException {
+                if (left[0] <= 0) {
+                    return -1;
+                }
+                left[0] -= 1;
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (left[0] <= 0) {
+                    return -1;
+                }
+                int n = super.read(b, off, (int) Math.min(len, left[0]));
+                if (n > 0) {
+                    left[0] -= n;
+                }
+                return n;
+            }
+        };
+    }
+
+    /** Run every shard that is not done in its own worker JVM, all at
+     *  once, running java enigma.Main with options OPTIONS and
+     *  configuration file CONFIG, and recording progress in MANIFEST.
+     *  If all succeed, concatenate the parts into the output; otherwise,
+     *  report the shards that failed. */
+    void run(List<String> options, String config, File manifest) {
+        String java = System.getProperty("java.home") + File.separator + "bin"
+            + File.separator + "java";
+        Process[] workers = new Process[_shards.size()];
+        for (int k = 0; k < workers.length; k += 1) {
+            if (_shards.get(k).done()) {
+                continue;
+            }
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add("enigma.Main");
+            command.addAll(options);
+            command.add("--manifest=" + manifest.getPath());
+            command.add("--shard=" + k);
+            command.add(config);
+            command.add(_input);
+            command.add(part(k));
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            try {
+                workers[k] = builder.start();
+            } catch (IOException excp) {
+                throw error("could not launch worker");
+            }
+        }
+        StringBuilder failed = new StringBuilder();
+        for (int k = 0; k < workers.length; k += 1) {
+            if (workers[k] == null) {
+                continue;
+            }
+            try {
+                _shards.get(k)._done = workers[k].waitFor() == 0;
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw error("interrupted");
+            }
+            if (!_shards.get(k).done()) {
+                failed.append(' ').append(k);
+            }
+            save(manifest);
+        }
+        if (failed.length() > 0) {
+            throw error("shards%s failed; rerun with --resume to retry them",
+                        failed);
+        }
+        merge();
+    }
+
+    /** Concatenate the parts into the output, and delete them. */
+    void merge() {
+        try (FileChannel out = FileChannel.open(
+                 Paths.get(_output), StandardOpenOption.WRITE,
+                 StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int k = 0; k < _shards.size(); k += 1) {
+                try (FileChannel in = FileChannel.open(Paths.get(part(k)))) {
+                    long size = in.size();
+                    for (long p = 0; p < size; ) {
+                        p += in.transferTo(p, size - p, out);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not merge parts into %s", _output);
+        }
+        for (int k = 0; k < _shards.size(); k += 1) {
+            new File(part(k)).delete();
+        }
+    }
+
+    /** Check that I was planned for the input file named INPUT and the
+     *  output file named OUTPUT, and that INPUT has not changed size. */
+    void check(String input, String output) {
+        if (!_input.equals(input) || !_output.equals(output)
+            || new File(input).length() != _size) {
+            throw error("manifest does not match %s and %s", input, output);
+        }
+    }
+
+    /** Write me to FILE, replacing its contents atomically. */
+    void save(File file) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (PrintStream out = new PrintStream(tmp)) {
+            out.println(HEADER);
+            out.println(_input);
+            out.println(_output);
+            out.printf("size %d shards %d%n", _size, _shards.size());
+            for (Shard s : _shards) {
+                PipelineCheckpoint start = s.start();
+                out.printf("shard %d %d %s%n", s.from(), s.to(),
+                           s.done() ? "done" : "pending");
+                out.printf("flags %b %b %b%n", start.settingsRead(),
+                           start.firstRun(), start.sawCR());
+                out.print("rotors");
+                for (int r : start.rotors()) {
+                    out.printf(" %d", r);
+                }
+                out.println();
+                out.println(start.settings() == null ? ""
+                            : start.settings());
+                out.println(start.plugboard() == null ? ""
+                            : start.plugboard());
+            }
+            if (out.checkError()) {
+                throw error("could not write %s", tmp);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", tmp);
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not replace %s", file);
+        }
+    }
+
+    /** Return the run saved in FILE. */
+    static ShardedRun load(File file) {
+        Scanner in = Main.getInput(file.getPath());
+        try {
+            if (!in.nextLine().equals(HEADER)) {
+                throw error("%s is not a shard manifest", file);
+            }
+            String input = in.nextLine();
+            String output = in.nextLine();
+            Scanner line = new Scanner(in.nextLine());
+            line.next();
+            long size = line.nextLong();
+            line.next();
+            int n = line.nextInt();
+            List<Shard> shards = new ArrayList<>();
+            for (int k = 0; k < n; k += 1) {
+                line = new Scanner(in.nextLine());
+                line.next();
+                long from = line.nextLong(), to = line.nextLong();
+                boolean done = line.next().equals("done");
+                line = new Scanner(in.nextLine());
+                line.next();
+                boolean settingsRead = line.nextBoolean();
+                boolean firstRun = line.nextBoolean();
+                boolean sawCR = line.nextBoolean();
+                line = new Scanner(in.nextLine());
+                line.next();
+                int[] rotors = line.tokens().mapToInt(Integer::parseInt)
+                    .toArray();
+                String settings = in.nextLine();
+                String plugboard = in.nextLine();
+                Shard s = new Shard(from, to, new PipelineCheckpoint(
+                    from, settings.isEmpty() ? null : settings,
+                    plugboard.isEmpty() ? null : plugboard, rotors,
+                    settingsRead, firstRun, sawCR));
+                s._done = done;
+                shards.add(s);
+            }
+            return new ShardedRun(input, size, output, shards);
+        } catch (NoSuchElementException | NumberFormatException excp) {
+            throw error("bad shard manifest %s", file);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** First line of every manifest. */
+    static final String HEADER = "enigma shard manifest 1";
+
+    /** Name of the input file. */
+    private final String _input;
+
+    /** Size of the input file when planned. */
+    private final long _size;
+
+    /** Name of the output file. */
+    private final String _output;
+
+    /** The shards, in order. */
+    private final List<Shard> _shards;
+
+}
@@ -0,0 +1,126 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the ShardedRun class.
+ *  @author A.R. LOEFFLER
+ */
+public class ShardedRunTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Name of the configuration used in these tests. */
+    private static final String CONFIG = "testing/correct/default.conf";
+
+    /** Return a temporary file name with suffix SUFFIX. */
+    private String temp(String suffix) throws IOException {
+        Path path = Files.createTempFile("enigma", suffix);
+        path.toFile().deleteOnExit();
+        return path.toString();
+    }
+
+    /** Return the name of a file of input for CONFIG with several
+     *  settings lines, some without plugboards, blank lines and mixed
+     *  line endings. */
+    private String input() throws IOException {
+        Random r = new Random(46);
+        String[] keys = {
+            "* B BETA I II III AAAA (AQ) (EP)", "* C GAMMA VI VII VIII ZZLY",
+            "* B BETA III IV I AXLE QRST", "* B GAMMA V II VII XYZW (YF)",
+        };
+        String[] ends = { "\n", "\r\n", "\r" };
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; k < 12; k += 1) {
+            text.append(keys[k % keys.length]).append('\n');
+            for (int i = r.nextInt(200); i >= 0; i -= 1) {
+                for (int j = r.nextInt(60); j >= 0; j -= 1) {
+                    text.append("ABCDEFGHIJKLMNOPQRSTUVWXYZ abc"
+                                .charAt(r.nextInt(30)));
+                }
+                text.append(ends[r.nextInt(ends.length)]);
+                if (r.nextInt(20) == 0) {
+                    text.append(ends[r.nextInt(ends.length)]);
+                }
+            }
+        }
+        text.append("\n  \n");
+        String name = temp(".inp");
+        Files.write(Path.of(name), text.toString().getBytes());
+        return name;
+    }
+
+    /** Return the contents of the file named NAME. */
+    private byte[] read(String name) throws IOException {
+        return Files.readAllBytes(Path.of(name));
+    }
+
+    /** Return a run of INPUT into OUTPUT in N shards. */
+    private ShardedRun plan(String input, String output, int n) {
+        Main main = new Main(Main.getInput(CONFIG));
+        return ShardedRun.plan(main, main.readConfig(), input, output, n);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkShardsMatchSingleRun() throws IOException {
+        String input = input();
+        String expected = temp(".out");
+        Main.main(CONFIG, input, expected);
+        for (int n : new int[] { 1, 2, 5, 13 }) {
+            String output = temp(".out"), manifest = temp(".manifest");
+            ShardedRun run = plan(input, output, n);
+            assertTrue(run.shards().size() <= n);
+            run.save(new File(manifest));
+            for (int k = 0; k < run.shards().size(); k += 1) {
+                Main.main("--manifest=" + manifest, "--shard=" + k, CONFIG,
+                          input, run.part(k));
+            }
+            ShardedRun.load(new File(manifest)).merge();
+            assertTrue("shards: " + n,
+                       Arrays.equals(read(expected), read(output)));
+        }
+    }
+
+    @Test
+    public void checkRetryFailedShard() throws IOException {
+        String input = input();
+        String expected = temp(".out");
+        Main.main(CONFIG, input, expected);
+        String output = temp(".out");
+        File manifest = new File(temp(".manifest"));
+        ShardedRun run = plan(input, output, 3);
+        run.save(manifest);
+        File blocked = new File(run.part(1));
+        assertTrue(blocked.mkdir());
+        try {
+            run.run(new ArrayList<>(), CONFIG, manifest);
+            fail("failure not reported");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        assertTrue(blocked.delete());
+        run = ShardedRun.load(manifest);
+        assertTrue(run.shards().get(0).done());
+        assertFalse(run.shards().get(1).done());
+        run.run(new ArrayList<>(), CONFIG, manifest);
+        assertTrue(ShardedRun.load(manifest).shards().get(1).done());
+        assertTrue(Arrays.equals(read(expected), read(output)));
+    }
+
+}
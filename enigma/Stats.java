@@ -0,0 +1,300 @@
+package enigma;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Formatter;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/** Counters and timings for a run of the simulator.  All counters are
+ *  LongAdders, which stripe their cells across threads, so that any
+ *  number of machines may report into one Stats without contention.
+ *  Code that does the counting holds a Stats that is null when
+ *  statistics are off, so that they then cost nothing; per-character
+ *  figures are accumulated locally and reported once per message.
+ *  @author A.R. LOEFFLER
+ */
+class Stats implements StatsMBean {
+
+    /** The timed stages of processing. */
+    enum Stage {
+        /** Reading the configuration (Main.readConfig). */
+        CONFIG,
+        /** Applying settings lines (Main.setUp). */
+        SETUP,
+        /** Passing messages through the machine. */
+        CONVERT,
+        /** Grouping converted messages for output. */
+        FORMAT,
+        /** Writing output. */
+        OUTPUT;
+    }
+
+    /** Statistics that are all initially 0. */
+    Stats() {
+        _stageNanos = new LongAdder[Stage.values().length];
+        for (int i = 0; i < _stageNanos.length; i += 1) {
+            _stageNanos[i] = new LongAdder();
+        }
+        _latencies = new LongAdder[Long.SIZE + 1];
+        for (int i = 0; i < _latencies.length; i += 1) {
+            _latencies[i] = new LongAdder();
+        }
+    }
+
+    /** Record N more characters passed through the rotors. */
+    void addCharacters(long n) {
+        _characters.add(n);
+    }
+
+    /** Record N more notch-driven rotor advances. */
+    void addNotchSteps(long n) {
+        _notchSteps.add(n);
+    }
+
+    /** Record one more message line of which processing started at
+     *  START (from System.nanoTime). */
+    void addMessage(long start) {
+        _messages.increment();
+        long nanos = Math.max(0, System.nanoTime() - start);
+        _latencies[Long.SIZE - Long.numberOfLeadingZeros(nanos)]
+            .increment();
+    }
+
+    /** Record one more settings line. */
+    void addSettingsLine() {
+        _settingsLines.increment();
+    }
+
+    /** Record a key found in the key cache (see KeyCache). */
+    void addKeyCacheHit() {
+        _keyCacheHits.increment();
+    }
+
+    /** Record a key not found in the key cache. */
+    void addKeyCacheMiss() {
+        _keyCacheMisses.increment();
+    }
+
+    /** Record time spent in STAGE since START (from System.nanoTime),
+     *  and return the current time. */
+    long time(Stage stage, long start) {
+        long now = System.nanoTime();
+        _stageNanos[stage.ordinal()].add(now - start);
+        return now;
+    }
+
+    /** Return IN, wrapped so as to count the bytes read from it. */
+    InputStream counting(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    _bytesRead.increment();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len)
+                throws IOException {
+                int n = super.read(buf, off, len);
+                if (n > 0) {
+                    _bytesRead.add(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    /** Return OUT, wrapped so as to count the bytes written to it. */
+    OutputStream counting(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                _bytesWritten.increment();
+            }
+
+            @Override
+            public void write(byte[] buf, int off, int len)
+                throws IOException {
+                out.write(buf, off, len);
+                _bytesWritten.add(len);
+            }
+        };
+    }
+
+    /** Register me with the platform MBean server under NAME (such as
+     *  "enigma:type=Stats"), replacing any earlier registration. */
+    void register(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException excp) {
+            throw error("could not register statistics: %s",
+                        excp.getMessage());
+        }
+    }
+
+    @Override
+    public long getCharacters() {
+        return _characters.sum();
+    }
+
+    @Override
+    public long getMessages() {
+        return _messages.sum();
+    }
+
+    @Override
+    public long getSettingsLines() {
+        return _settingsLines.sum();
+    }
+
+    @Override
+    public long getNotchSteps() {
+        return _notchSteps.sum();
+    }
+
+    @Override
+    public long getKeyCacheHits() {
+        return _keyCacheHits.sum();
+    }
+
+    @Override
+    public long getKeyCacheMisses() {
+        return _keyCacheMisses.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return _bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return _bytesWritten.sum();
+    }
+
+    @Override
+    public String[] getStageNames() {
+        String[] result = new String[_stageNanos.length];
+        for (Stage stage : Stage.values()) {
+            result[stage.ordinal()] = stage.toString().toLowerCase();
+        }
+        return result;
+    }
+
+    @Override
+    public long[] getStageNanos() {
+        long[] result = new long[_stageNanos.length];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = _stageNanos[i].sum();
+        }
+        return result;
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        int n = _latencies.length;
+        while (n > 0 && _latencies[n - 1].sum() == 0) {
+            n -= 1;
+        }
+        long[] result = new long[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = _latencies[i].sum();
+        }
+        return result;
+    }
+
+    @Override
+    public String getSummary() {
+        Formatter out = new Formatter();
+        out.format("characters     %d%n", getCharacters());
+        out.format("messages       %d%n", getMessages());
+        out.format("settings lines %d%n", getSettingsLines());
+        out.format("notch steps    %d%n", getNotchSteps());
+        out.format("cache hits     %d%n", getKeyCacheHits());
+        out.format("cache misses   %d%n", getKeyCacheMisses());
+        out.format("bytes read     %d%n", getBytesRead());
+        out.format("bytes written  %d%n", getBytesWritten());
+        String[] names = getStageNames();
+        long[] nanos = getStageNanos();
+        for (int i = 0; i < names.length; i += 1) {
+            out.format("%-14s %.3f ms%n", names[i], nanos[i] / NANOS_PER_MS);
+        }
+        long[] latencies = getLatencyHistogram();
+        for (int k = 0; k < latencies.length; k += 1) {
+            if (latencies[k] > 0) {
+                out.format("latency < %-12s %d%n",
+                           k >= Long.SIZE - 1 ? "max" : (1L << k) + " ns",
+                           latencies[k]);
+            }
+        }
+        return out.toString();
+    }
+
+    @Override
+    public void reset() {
+        _characters.reset();
+        _messages.reset();
+        _settingsLines.reset();
+        _notchSteps.reset();
+        _keyCacheHits.reset();
+        _keyCacheMisses.reset();
+        _bytesRead.reset();
+        _bytesWritten.reset();
+        for (LongAdder a : _stageNanos) {
+            a.reset();
+        }
+        for (LongAdder a : _latencies) {
+            a.reset();
+        }
+    }
+
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MS = 1e6;
+
+    /** Characters passed through the rotors. */
+    private final LongAdder _characters = new LongAdder();
+
+    /** Message lines processed. */
+    private final LongAdder _messages = new LongAdder();
+
+    /** Settings lines processed. */
+    private final LongAdder _settingsLines = new LongAdder();
+
+    /** Notch-driven rotor advances. */
+    private final LongAdder _notchSteps = new LongAdder();
+
+    /** Keys found and not found in the key cache. */
+    private final LongAdder _keyCacheHits = new LongAdder(),
+        _keyCacheMisses = new LongAdder();
+
+    /** Bytes read by streams from counting(InputStream). */
+    private final LongAdder _bytesRead = new LongAdder();
+
+    /** Bytes written by streams from counting(OutputStream). */
+    private final LongAdder _bytesWritten = new LongAdder();
+
+    /** Nanoseconds spent in each Stage, indexed by ordinal. */
+    private final LongAdder[] _stageNanos;
+
+    /** Message latency histogram (see getLatencyHistogram). */
+    private final LongAdder[] _latencies;
+
+}
@@ -0,0 +1,52 @@
+package enigma;
+
+/** The management interface of Stats, through which a running
+ *  simulator's counters and timings can be read over JMX.
+ *  @author A.R. LOEFFLER
+ */
+public interface StatsMBean {
+
+    /** Return the number of characters passed through the rotors. */
+    long getCharacters();
+
+    /** Return the number of message lines processed. */
+    long getMessages();
+
+    /** Return the number of settings lines processed. */
+    long getSettingsLines();
+
+    /** Return the number of rotor advances caused by notches (that is,
+     *  of any rotor but the fast one). */
+    long getNotchSteps();
+
+    /** Return the number of settings lines whose key was found in the
+     *  key cache (see KeyCache). */
+    long getKeyCacheHits();
+
+    /** Return the number of settings lines whose key was not. */
+    long getKeyCacheMisses();
+
+    /** Return the number of bytes of input read. */
+    long getBytesRead();
+
+    /** Return the number of bytes of output written. */
+    long getBytesWritten();
+
+    /** Return the names of the timed stages of processing. */
+    String[] getStageNames();
+
+    /** Return the total nanoseconds spent in each of the stages named by
+     *  getStageNames(), in the same order. */
+    long[] getStageNanos();
+
+    /** Return the per-message latency histogram: element k counts the
+     *  messages that took between 2^(k-1) and 2^k - 1 nanoseconds. */
+    long[] getLatencyHistogram();
+
+    /** Return a printable summary of all my figures. */
+    String getSummary();
+
+    /** Set all counters to 0. */
+    void reset();
+
+}
@@ -0,0 +1,81 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Stats class.
+ *  @author A.R. LOEFFLER
+ */
+public class StatsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkMachineCounts() {
+        Machine m = machine("testing/correct/default.conf",
+                            "* B BETA III IV I AXLE");
+        Stats stats = new Stats();
+        m.setStats(stats);
+        m.convert("HELLO WORLD");
+        m.setStats(null);
+        m.convert("NOT COUNTED");
+        assertEquals(10, stats.getCharacters());
+        assertEquals(0, stats.getNotchSteps());
+        m.setStats(stats);
+        m.convert("A".repeat(26));
+        assertEquals(36, stats.getCharacters());
+        assertEquals(1, stats.getNotchSteps());
+    }
+
+    @Test
+    public void checkStreamsAndLatency() throws IOException {
+        Stats stats = new Stats();
+        InputStream in =
+            stats.counting(new ByteArrayInputStream(new byte[100]));
+        assertEquals(40, in.read(new byte[40]));
+        in.read();
+        OutputStream out = stats.counting(new ByteArrayOutputStream());
+        out.write(new byte[7]);
+        out.write(1);
+        assertEquals(41, stats.getBytesRead());
+        assertEquals(8, stats.getBytesWritten());
+        stats.addMessage(System.nanoTime());
+        long total = 0;
+        for (long n : stats.getLatencyHistogram()) {
+            total += n;
+        }
+        assertEquals(1, total);
+        stats.reset();
+        assertEquals(0, stats.getBytesRead());
+        assertEquals(0, stats.getLatencyHistogram().length);
+    }
+
+    @Test
+    public void checkMBean() throws JMException {
+        Stats stats = new Stats();
+        stats.addSettingsLine();
+        stats.register("enigma:type=Stats,name=test");
+        Object value = ManagementFactory.getPlatformMBeanServer()
+            .getAttribute(new ObjectName("enigma:type=Stats,name=test"),
+                          "SettingsLines");
+        assertEquals(1L, value);
+    }
+
+}
@@ -0,0 +1,320 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.EnigmaException.*;
+
+/** A binary trace of every character a Machine converts, for finding out
+ *  where a machine's behavior departs from what was expected.  Each step
+ *  is a fixed-size record of the step number, the rotor settings before
+ *  the step, the input and output (as alphabet indices) and a bit mask of
+ *  the rotor slots that advanced.  Records go into a preallocated
+ *  off-heap ring of SEGMENTS segments; full segments are written to the
+ *  trace file by a background thread, and the machine only waits if that
+ *  thread falls a whole ring behind, so no record is ever lost.
+ *
+ *  The file starts with a 16-byte header: MAGIC as a long, then the
+ *  number of rotor slots n and the record size as ints.  Each record
+ *  is then a long step number, n unsigned shorts of settings,
+ *  unsigned shorts for the input and output, and an int advance mask
+ *  (bit i for slot i).
+ *  @author A.R. LOEFFLER
+ */
+class StepTrace implements AutoCloseable {
+
+    /** A trace of a machine with NUMROTORS rotor slots, written to the
+     *  file named NAME. */
+    StepTrace(String name, int numRotors) {
+        if (numRotors > Integer.SIZE) {
+            throw error("too many rotors to trace");
+        }
+        _numRotors = numRotors;
+        _recordSize = recordSize(numRotors);
+        _before = new int[numRotors];
+        try {
+            _channel = FileChannel.open(Paths.get(name),
+                                        StandardOpenOption.WRITE,
+                                        StandardOpenOption.CREATE,
+                                        StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putLong(MAGIC).putInt(numRotors).putInt(_recordSize);
+            header.flip();
+            while (header.hasRemaining()) {
+                _channel.write(header);
+            }
+        } catch (IOException excp) {
+            throw error("could not open trace file %s", name);
+        }
+        int perSegment = Math.max(1, SEGMENT_BYTES / _recordSize);
+        ByteBuffer ring =
+            ByteBuffer.allocateDirect(SEGMENTS * perSegment * _recordSize);
+        _free = new ArrayBlockingQueue<>(SEGMENTS);
+        _full = new ArrayBlockingQueue<>(SEGMENTS + 1);
+        for (int i = 0; i < SEGMENTS; i += 1) {
+            ring.limit((i + 1) * perSegment * _recordSize);
+            ring.position(i * perSegment * _recordSize);
+            _free.add(ring.slice());
+        }
+        _segment = _free.remove();
+        _writer = new Thread(this::drain, "enigma-trace-writer");
+        _writer.setDaemon(true);
+        _writer.start();
+    }
+
+    /** Return the size of a record for a machine with NUMROTORS
+     *  slots. */
+    static int recordSize(int numRotors) {
+        return Long.BYTES + Short.BYTES * (numRotors + 2)
+            + Integer.BYTES;
+    }
+
+    /** Note the settings of ROTORS before a step. */
+    void before(Rotor[] rotors) {
+        for (int i = 0; i < _numRotors; i += 1) {
+            _before[i] = rotors[i].setting();
+        }
+    }
+
+    /** Record a step of ROTORS, whose settings before the step were
+     *  passed to before(), that converted IN to OUT. */
+    void after(Rotor[] rotors, int in, int out) {
+        if (_segment.remaining() < _recordSize) {
+            handOff();
+        }
+        ByteBuffer b = _segment;
+        int advanced = 0;
+        b.putLong(_steps);
+        for (int i = 0; i < _numRotors; i += 1) {
+            b.putShort((short) _before[i]);
+            if (rotors[i].setting() != _before[i]) {
+                advanced |= 1 << i;
+            }
+        }
+        b.putShort((short) in);
+        b.putShort((short) out);
+        b.putInt(advanced);
+        _steps += 1;
+    }
+
+    /** Return the number of steps recorded so far. */
+    long steps() {
+        return _steps;
+    }
+
+    /** Pass the current segment to the writer and get an empty one,
+     *  waiting if there is none. */
+    private void handOff() {
+        _segment.flip();
+        _full.add(_segment);
+        try {
+            _segment = _free.poll(POLL_MS, TimeUnit.MILLISECONDS);
+            while (_segment == null) {
+                if (_failure != null) {
+                    throw error("could not write trace: %s",
+                                _failure.getMessage());
+                }
+                _segment = _free.poll(POLL_MS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted while tracing");
+        }
+    }
+
+    /** Body of the writer thread: write full segments to the file until
+     *  handed END. */
+    private void drain() {
+        try {
+            while (true) {
+                ByteBuffer segment = _full.take();
+                if (segment == END) {
+                    return;
+                }
+                while (segment.hasRemaining()) {
+                    _channel.write(segment);
+                }
+                segment.clear();
+                _free.add(segment);
+            }
+        } catch (IOException excp) {
+            _failure = excp;
+        } catch (InterruptedException excp) {
+            _failure = new IOException("trace writer interrupted");
+        }
+    }
+
+    /** Write out any remaining records and close the trace file. */
+    @Override
+    public void close() {
+        if (_segment == null) {
+            return;
+        }
+        _segment.flip();
+        _full.add(_segment);
+        _full.add(END);
+        _segment = null;
+        try {
+            _writer.join();
+            _channel.close();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted while closing trace");
+        } catch (IOException excp) {
+            throw error("could not close trace file");
+        }
+        if (_failure != null) {
+            throw error("could not write trace: %s", _failure.getMessage());
+        }
+    }
+
+    /** Print the trace file named NAME on OUT, one step per line,
+     *  showing settings and characters as characters of ALPHA, or as
+     *  numbers if ALPHA is null. */
+    static void decode(String name, Alphabet alpha, PrintStream out) {
+        try (FileChannel in = FileChannel.open(Paths.get(name),
+                                               StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(in, header);
+            if (header.getLong() != MAGIC) {
+                throw error("%s is not a trace file", name);
+            }
+            int n = header.getInt();
+            int size = header.getInt();
+            if (n < 1 || n > Integer.SIZE || size != recordSize(n)) {
+                throw error("bad trace file header in %s", name);
+            }
+            ByteBuffer record = ByteBuffer.allocate(size);
+            while (readFully(in, record)) {
+                StringBuilder line = new StringBuilder();
+                line.append(record.getLong()).append(' ');
+                for (int i = 0; i < n; i += 1) {
+                    line.append(symbol(record.getShort(), alpha, i > 0));
+                }
+                line.append(' ').append(symbol(record.getShort(), alpha,
+                                                false));
+                line.append(" -> ").append(symbol(record.getShort(), alpha,
+                                                   false));
+                int advanced = record.getInt();
+                line.append(" advanced");
+                for (int i = 0; i < n; i += 1) {
+                    if ((advanced & (1 << i)) != 0) {
+                        line.append(' ').append(i);
+                    }
+                }
+                out.println(line);
+            }
+        } catch (IOException excp) {
+            throw error("could not read trace file %s", name);
+        }
+    }
+
+    /** Return the unsigned short INDEX rendered as a character of
+     *  ALPHA, or as a number if ALPHA is null, preceded by a blank if
+     *  SEPARATE and ALPHA is null. */
+    private static String symbol(short index, Alphabet alpha,
+                                 boolean separate) {
+        int i = Short.toUnsignedInt(index);
+        if (alpha == null || i >= alpha.size()) {
+            return (separate ? "," : "") + i;
+        }
+        return String.valueOf(alpha.toChar(i));
+    }
+
+    /** Fill BUF from IN and flip it, returning false if IN is already
+     *  at its end.  A partial record at the end is an error. */
+    private static boolean readFully(FileChannel in, ByteBuffer buf)
+        throws IOException {
+        buf.clear();
+        while (buf.hasRemaining()) {
+            if (in.read(buf) < 0) {
+                if (buf.position() == 0) {
+                    return false;
+                }
+                throw error("truncated trace file");
+            }
+        }
+        buf.flip();
+        return true;
+    }
+
+    /** Print the trace file ARGS[0] as text.  If ARGS[1] is given, it is
+     *  the configuration file whose alphabet is used to show settings
+     *  and characters. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1 || args.length > 2) {
+                throw error("Usage: java enigma.StepTrace TRACE [CONFIG]");
+            }
+            Alphabet alpha = null;
+            if (args.length > 1) {
+                Scanner config = Main.getInput(args[1]);
+                alpha = new Main(config).readConfig().alphabet();
+                config.close();
+            }
+            decode(args[0], alpha, System.out);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** First eight bytes of a trace file. */
+    static final long MAGIC = 0x454E4947_54524331L;
+
+    /** Size of the file header. */
+    private static final int HEADER_SIZE = Long.BYTES + 2 * Integer.BYTES;
+
+    /** Number of segments in the ring. */
+    private static final int SEGMENTS = 4;
+
+    /** Approximate size of each segment, in bytes. */
+    private static final int SEGMENT_BYTES = 1 << 18;
+
+    /** Milliseconds between checks for a failed writer while waiting for
+     *  an empty segment. */
+    private static final long POLL_MS = 100;
+
+    /** Marks the end of the segments handed to the writer. */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /** Number of rotor slots traced. */
+    private final int _numRotors;
+
+    /** Size of each record. */
+    private final int _recordSize;
+
+    /** Settings of the rotors before the current step. */
+    private final int[] _before;
+
+    /** Number of steps recorded. */
+    private long _steps;
+
+    /** The segment being filled, or null once closed. */
+    private ByteBuffer _segment;
+
+    /** Empty segments. */
+    private final BlockingQueue<ByteBuffer> _free;
+
+    /** Segments waiting to be written, followed by END when closing. */
+    private final BlockingQueue<ByteBuffer> _full;
+
+    /** The trace file. */
+    private final FileChannel _channel;
+
+    /** The thread writing segments to _channel. */
+    private final Thread _writer;
+
+    /** Any error met by _writer. */
+    private volatile IOException _failure;
+
+}
@@ -0,0 +1,54 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the StepTrace class.
+ *  @author A.R. LOEFFLER
+ */
+public class StepTraceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkTraceRoundTrip() throws IOException {
+        File file = File.createTempFile("enigma", ".trace");
+        file.deleteOnExit();
+        Machine m = machine("testing/correct/default.conf",
+                            "* B BETA III IV I AXLQ");
+        StepTrace trace = new StepTrace(file.getPath(), m.numRotors());
+        m.setTrace(trace);
+        String plain = "ABCDEFGHIJ".repeat(10000);
+        String cipher = m.convert(plain);
+        trace.close();
+        assertEquals(plain.length(), trace.steps());
+        assertEquals(StepTrace.recordSize(5) * (long) plain.length() + 16,
+                     file.length());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StepTrace.decode(file.getPath(), m.alphabet(),
+                         new PrintStream(bytes, true));
+        String[] lines = bytes.toString().split("\\r?\\n");
+        assertEquals(plain.length(), lines.length);
+        assertEquals("0 AAXLQ A -> " + cipher.charAt(0) + " advanced 3 4",
+                     lines[0]);
+        assertEquals("1 AAXMR B -> " + cipher.charAt(1) + " advanced 4",
+                     lines[1]);
+        assertTrue(lines[plain.length() - 1].startsWith(
+            (plain.length() - 1) + " "));
+    }
+
+}
@@ -0,0 +1,190 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static enigma.EnigmaException.*;
+
+/** A directory of keystream tables (see KeystreamTable) shared by any
+ *  number of processes.  Each table is written once, to a file named by
+ *  a fingerprint of everything that determines it: the wirings, notches
+ *  and rotation of the rotors in the machine's slots (which covers the
+ *  configuration, the rotor order and the ring settings), their start
+ *  positions and the plugboard.  Tables are used through read-only
+ *  memory mappings, so lookups read the mapped file directly and
+ *  processes using the same keys share the same pages.
+ *
+ *  A table is written to a temporary file that is then atomically
+ *  renamed into place, so that a crash never leaves a partial table
+ *  under a table's name.  The files are kept to a limited total size by
+ *  deleting the least recently used ones (by modification time, which
+ *  is updated on each use).  Deleting a file does not disturb processes
+ *  that already have it mapped.
+ *  @author A.R. LOEFFLER
+ */
+class TableStore {
+
+    /** A store of tables in DIR (created if need be) of at most about
+     *  LIMIT bytes in all. */
+    TableStore(File dir, long limit) {
+        if (limit <= 0) {
+            throw error("bad table store limit: %d", limit);
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw error("could not make %s", dir);
+        }
+        _dir = dir;
+        _limit = limit;
+    }
+
+    /** Return the table of machine M's current key, writing it if it is
+     *  not yet in the store, or null if it would not fit in the store.
+     *  M is not changed.  A new table is mapped before it is renamed
+     *  into place, so that another user of the store evicting it at
+     *  once cannot make it unreadable here. */
+    KeystreamTable table(Machine m) {
+        File file = new File(_dir, fingerprint(m) + SUFFIX);
+        KeystreamTable result = map(file);
+        if (result != null) {
+            file.setLastModified(System.currentTimeMillis());
+            return result;
+        }
+        byte[] table = KeystreamTable.write(m, _limit);
+        if (table == null) {
+            return null;
+        }
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(_dir.toPath(), file.getName(), TEMP);
+            try (FileChannel out = FileChannel.open(
+                     tmp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer buf = ByteBuffer.wrap(table);
+                while (buf.hasRemaining()) {
+                    out.write(buf);
+                }
+                out.force(true);
+                result = new KeystreamTable(
+                    out.map(FileChannel.MapMode.READ_ONLY, 0, table.length));
+            }
+            Files.move(tmp, file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.toFile().delete();
+            }
+            throw error("could not write %s", file);
+        }
+        evict(file);
+        return result;
+    }
+
+    /** Return the table in FILE, mapped read-only, or null if there is
+     *  no such file or it does not hold a table (which table() then
+     *  rewrites). */
+    private KeystreamTable map(File file) {
+        try (FileChannel in = FileChannel.open(
+                 file.toPath(), StandardOpenOption.READ)) {
+            return new KeystreamTable(
+                in.map(FileChannel.MapMode.READ_ONLY, 0, in.size()));
+        } catch (IOException | EnigmaException excp) {
+            return null;
+        }
+    }
+
+    /** Delete the least recently used tables other than KEEP until
+     *  the tables in the store take at most my limit, and any temporary
+     *  files left by writers that died. */
+    private void evict(File keep) {
+        File[] files = _dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        ArrayList<File> tables = new ArrayList<>();
+        long total = 0;
+        for (File f : files) {
+            if (f.getName().endsWith(SUFFIX)) {
+                tables.add(f);
+                total += f.length();
+            } else if (f.getName().endsWith(TEMP)
+                       && now - f.lastModified() > STALE_MILLIS) {
+                f.delete();
+            }
+        }
+        tables.sort(Comparator.comparingLong(File::lastModified));
+        for (File f : tables) {
+            if (total <= _limit) {
+                break;
+            }
+            if (!f.equals(keep)) {
+                long size = f.length();
+                if (f.delete()) {
+                    total -= size;
+                }
+            }
+        }
+    }
+
+    /** Return the fingerprint of machine M's current key: a hex SHA-256
+     *  digest of the wirings, rotation and notches of the rotors in its
+     *  slots, their settings and its plugboard. */
+    static String fingerprint(Machine m) {
+        int n = m.alphabet().size();
+        ByteBuffer key = ByteBuffer.allocate(
+            (3 + m.numRotors() * (3 + 2 * n) + n) * Integer.BYTES);
+        key.putInt(n).putInt(m.numRotors());
+        for (Rotor r : m.usedRotors()) {
+            int setting = r.setting();
+            key.putInt(r.rotates() ? 1 : 0).putInt(setting);
+            for (int c = 0; c < n; c += 1) {
+                key.putInt(r.wiring().permute(c));
+            }
+            for (int s = 0; r.rotates() && s < n; s += 1) {
+                r.set(s);
+                key.putInt(r.atNotch() ? 1 : 0);
+            }
+            r.set(setting);
+        }
+        Permutation plugboard = m.plugboard();
+        key.putInt(plugboard == null ? 0 : 1);
+        for (int c = 0; plugboard != null && c < n; c += 1) {
+            key.putInt(plugboard.permute(c));
+        }
+        StringBuilder result = new StringBuilder();
+        for (byte b : BlockContainer.digest(
+                 Arrays.copyOf(key.array(), key.position()))) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+
+    /** Default limit on the size of a store, in bytes. */
+    static final long DEFAULT_LIMIT = 256L << 20;
+
+    /** Suffix of the names of table files. */
+    static final String SUFFIX = ".ks";
+
+    /** Suffix of the names of tables being written. */
+    private static final String TEMP = ".tmp";
+
+    /** Age after which a temporary file is taken to be left by a writer
+     *  that died, in milliseconds. */
+    private static final long STALE_MILLIS = 60 * 60 * 1000;
+
+    /** Directory holding my tables. */
+    private final File _dir;
+
+    /** Limit on the total size of my tables, in bytes. */
+    private final long _limit;
+
+}
@@ -0,0 +1,209 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the TableStore and KeystreamTable
+ *  classes.
+ *  @author A.R. LOEFFLER
+ */
+public class TableStoreTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Name of the configuration used in these tests. */
+    private static final String CONFIG = "testing/correct/default.conf";
+
+    /** Keys used in these tests. */
+    private static final String[] KEYS = {
+        "* B BETA I II III AAAA", "* C GAMMA VI VII VIII ZZLY BCDE (AQ)",
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+    };
+
+    /** Return a machine from CONFIG set up according to KEY by a Main
+     *  using the table store in DIR, or none if DIR is null. */
+    private Machine key(String key, File dir) {
+        Machine m = machine(CONFIG, key);
+        if (dir != null) {
+            m.setKeystream(new TableStore(dir, 1L << 24).table(m));
+        }
+        return m;
+    }
+
+    /** Return a new empty directory. */
+    private File directory() throws IOException {
+        return Files.createTempDirectory("enigma").toFile();
+    }
+
+    /** Remove DIR and the files in it. */
+    private void remove(File dir) {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    /** Return the table files in DIR. */
+    private File[] tables(File dir) {
+        return dir.listFiles((d, name) -> name.endsWith(TableStore.SUFFIX));
+    }
+
+    /** Return a random string of length N drawn from CHARS. */
+    private String random(Random r, int n, String chars) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            result.append(chars.charAt(r.nextInt(chars.length())));
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkTablesMatchRotors() throws IOException {
+        File dir = directory();
+        Random r = new Random(48);
+        for (String k : KEYS) {
+            Machine plain = key(k, null), table = key(k, dir);
+            for (int i = 0; i < 40; i += 1) {
+                String msg = random(r, r.nextInt(2000), "ABCDEFGHIJKLMNOPQRS"
+                                    + "TUVWXYZ ");
+                assertEquals(plain.convert(msg), table.convert(msg));
+            }
+            for (int i = 0; i < plain.numRotors(); i += 1) {
+                assertEquals(plain.usedRotors()[i].setting(),
+                             table.usedRotors()[i].setting());
+            }
+        }
+        assertEquals(KEYS.length, tables(dir).length);
+        remove(dir);
+    }
+
+    @Test
+    public void checkTableWrapsAround() {
+        Machine m = machine(CONFIG, KEYS[1]);
+        KeystreamTable table = new KeystreamTable(
+            ByteBuffer.wrap(KeystreamTable.write(m, 1L << 24)));
+        assertTrue(table.tail() < table.rows());
+        Machine plain = m.copy();
+        m.setKeystream(table);
+        String msg = "ENIGMA".repeat(table.rows() / 3);
+        assertEquals(plain.convert(msg), m.convert(msg));
+        assertEquals(plain.convert(msg), m.convert(msg));
+    }
+
+    @Test
+    public void checkStoreReusedAndRepositioned() throws IOException {
+        File dir = directory();
+        Machine first = key(KEYS[2], dir);
+        File[] written = tables(dir);
+        assertEquals(1, written.length);
+        long size = written[0].length();
+        Machine second = key(KEYS[2], dir);
+        assertEquals(1, tables(dir).length);
+        assertEquals(size, tables(dir)[0].length());
+        assertEquals(first.convert("HELLOWORLD"),
+                     second.convert("HELLOWORLD"));
+        Machine plain = key(KEYS[2], null);
+        plain.setRotors("QRST");
+        second.setRotors("QRST");
+        assertEquals(plain.convert("HELLOWORLD"),
+                     second.convert("HELLOWORLD"));
+        remove(dir);
+    }
+
+    @Test
+    public void checkCorruptTableRewritten() throws IOException {
+        File dir = directory();
+        key(KEYS[0], dir);
+        File file = tables(dir)[0];
+        long size = file.length();
+        Files.write(file.toPath(), new byte[] { 1, 2, 3 });
+        Machine m = key(KEYS[0], dir);
+        assertEquals(size, file.length());
+        assertEquals(key(KEYS[0], null).convert("ATTACKATDAWN"),
+                     m.convert("ATTACKATDAWN"));
+        remove(dir);
+    }
+
+    @Test
+    public void checkEviction() throws IOException {
+        File dir = directory();
+        Main config = new Main(Main.getInput(CONFIG));
+        Machine m = config.readConfig();
+        config.setUp(m, KEYS[0]);
+        assertNotNull(new TableStore(dir, 1L << 24).table(m));
+        long size = tables(dir)[0].length();
+        TableStore store = new TableStore(dir, 2 * size + size / 2);
+        for (String k : KEYS) {
+            config.setUp(m, k);
+            assertNotNull(store.table(m));
+        }
+        File[] left = tables(dir);
+        long total = 0;
+        for (File f : left) {
+            total += f.length();
+        }
+        assertTrue(total <= 2 * size + size / 2);
+        assertEquals(0, dir.listFiles((d, name) -> name.endsWith(".tmp"))
+                     .length);
+        File empty = directory();
+        assertNull(new TableStore(empty, size / 2).table(m));
+        remove(empty);
+        remove(dir);
+    }
+
+    @Test
+    public void checkConcurrentWriters() throws Exception {
+        File first = directory();
+        key(KEYS[0], first);
+        long size = tables(first)[0].length();
+        remove(first);
+        File dir = directory();
+        String[] expected = new String[KEYS.length];
+        for (int k = 0; k < KEYS.length; k += 1) {
+            expected[k] = key(KEYS[k], null).convert("ATTACKATDAWN");
+        }
+        Throwable[] failures = new Throwable[2];
+        Thread[] writers = new Thread[failures.length];
+        for (int w = 0; w < writers.length; w += 1) {
+            int id = w;
+            writers[w] = new Thread(() -> {
+                try {
+                    TableStore store = new TableStore(dir, size + size / 2);
+                    for (int i = 0; i < 6 * KEYS.length; i += 1) {
+                        int k = (i + id) % KEYS.length;
+                        Machine key = key(KEYS[k], null);
+                        key.setKeystream(store.table(key));
+                        assertEquals(expected[k], key.convert("ATTACKATDAWN"));
+                    }
+                } catch (Throwable excp) {
+                    failures[id] = excp;
+                }
+            });
+            writers[w].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        for (Throwable failure : failures) {
+            assertNull(failure);
+        }
+        remove(dir);
+    }
+
+}
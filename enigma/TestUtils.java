@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -11,6 +12,39 @@ class TestUtils {
     protected static final String UPPER_STRING =
         "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
 
+    /** Return a machine from the configuration file CONFIG set up
+     *  according to SETTINGS. */
+    static Machine machine(String config, String settings) {
+        Main main = new Main(Main.getInput(config));
+        Machine m = main.readConfig();
+        main.setUp(m, settings);
+        return m;
+    }
+
+    /** The alphabet of byte values. */
+    static final Alphabet BYTES = CharacterSet.parse("\\u0000-\\u00FF");
+
+    /** Return a 5-rotor machine over BYTES with generated wirings,
+     *  always in the same initial state, whose fast rotor has notches
+     *  at the characters of FASTNOTCHES. */
+    static Machine byteMachine(String fastNotches) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", Permutation.random(BYTES, 1, true)));
+        rotors.add(new FixedRotor("BETA",
+                                  Permutation.random(BYTES, 2, false)));
+        rotors.add(new MovingRotor("I", Permutation.random(BYTES, 3, false),
+                                   "\u0001"));
+        rotors.add(new MovingRotor("II", Permutation.random(BYTES, 4, false),
+                                   "\u00FE"));
+        rotors.add(new MovingRotor("III",
+                                   Permutation.random(BYTES, 5, false),
+                                   fastNotches));
+        Machine m = new Machine(BYTES, 5, 3, rotors);
+        m.insertRotors(new String[] { "B", "BETA", "I", "II", "III" });
+        m.setRotors("\u0000\u00FF\u00FD\u00F0");
+        return m;
+    }
+
     /** Return an identifying error message for failed assertions.
      *  TESTID identifies the test, MSGFORMAT and ARGS provide
      *  the details, as for String.format. */
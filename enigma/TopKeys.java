@@ -0,0 +1,128 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+
+/** The best-scoring keys seen so far in a search, up to a fixed number.
+ *  Ties in score go to the smaller key, so the contents do not depend on
+ *  the order in which keys were offered.  Not thread-safe.
+ *  @author A.R. LOEFFLER
+ */
+class TopKeys {
+
+    /** An initially empty collection of at most LIMIT keys. */
+    TopKeys(int limit) {
+        _limit = limit;
+        _heap = new PriorityQueue<>(Math.max(1, limit));
+        _keys = new HashSet<>();
+    }
+
+    /** Record that KEY scored SCORE, keeping it if it is among the best
+     *  and not already present. */
+    void offer(long key, double score) {
+        if (_limit == 0) {
+            return;
+        }
+        if (_heap.size() == _limit) {
+            Entry worst = _heap.peek();
+            if (score < worst.score()
+                || score == worst.score() && key >= worst.key()) {
+                return;
+            }
+        }
+        if (!_keys.add(key)) {
+            return;
+        }
+        _heap.add(new Entry(key, score));
+        if (_heap.size() > _limit) {
+            _keys.remove(_heap.poll().key());
+        }
+    }
+
+    /** Offer all the keys in OTHER. */
+    void merge(TopKeys other) {
+        for (Entry e : other._heap) {
+            offer(e.key(), e.score());
+        }
+    }
+
+    /** Return the smallest score a key must beat to be kept, which is
+     *  negative infinity until I am full. */
+    double threshold() {
+        if (_heap.size() < _limit) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return _heap.peek().score();
+    }
+
+    /** Return my entries, best first. */
+    ArrayList<Entry> entries() {
+        ArrayList<Entry> result = new ArrayList<>(_heap);
+        Collections.sort(result, Collections.reverseOrder());
+        return result;
+    }
+
+    /** Return my number of entries. */
+    int size() {
+        return _heap.size();
+    }
+
+    /** Return the largest number of entries I keep. */
+    int limit() {
+        return _limit;
+    }
+
+    /** A key and its score, ordered from worst to best. */
+    static class Entry implements Comparable<Entry> {
+
+        /** An entry for KEY scoring SCORE. */
+        Entry(long key, double score) {
+            _key = key;
+            _score = score;
+        }
+
+        /** Return my key. */
+        long key() {
+            return _key;
+        }
+
+        /** Return my score. */
+        double score() {
+            return _score;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int c = Double.compare(_score, other._score);
+            return c != 0 ? c : Long.compare(other._key, _key);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Entry && compareTo((Entry) obj) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(_key);
+        }
+
+        /** The key. */
+        private final long _key;
+
+        /** Its score. */
+        private final double _score;
+    }
+
+    /** Largest number of entries. */
+    private final int _limit;
+
+    /** My entries, worst at the head. */
+    private final PriorityQueue<Entry> _heap;
+
+    /** The keys in _heap. */
+    private final HashSet<Long> _keys;
+
+}
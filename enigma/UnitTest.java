@@ -23,7 +23,19 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(PermutationTest.class, MovingRotorTest.class);
+        textui.runClasses(PermutationTest.class, MovingRotorTest.class,
+                          PlugboardSolverTest.class, CharacterSetTest.class,
+                          ByteCipherTest.class, MachineTest.class,
+                          StatsTest.class, StepTraceTest.class,
+                          PipelineTest.class, BlockContainerTest.class,
+                          EnigmaStreamsTest.class, CipherProcessorTest.class,
+                          MultiKeyTest.class,
+                          KeywordAutomatonTest.class, KeySpaceTest.class,
+                          ShardCoordinatorTest.class, ValidatorTest.class,
+                          IncrementalCipherTest.class, ShardedRunTest.class,
+                          WorkloadTest.class, TableStoreTest.class,
+                          KeyCacheTest.class, ParallelRunTest.class,
+                          KeySearchTest.class);
     }
 
     private ArrayList<Rotor> rotors = new ArrayList<>();
@@ -0,0 +1,570 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** A checker for configuration files and input files that reports every
+ *  problem that would stop Main, rather than only the first, without
+ *  throwing exceptions.  Input is checked in one streaming pass, line by
+ *  line, and nothing is kept from one line to the next but the machine
+ *  and counts, so files of any length can be checked in constant
+ *  memory.  Each problem goes to a Sink with its line and column (both
+ *  from 1) and its Kind; messages are Main's where Main has one.
+ *  @author A.R. LOEFFLER
+ */
+class Validator {
+
+    /** Kinds of problem. */
+    enum Kind {
+        /** The configuration file is malformed. */
+        CONFIG,
+        /** A message or blank line comes before any settings line. */
+        NO_SETTINGS,
+        /** A settings line is missing rotor names. */
+        TRUNCATED,
+        /** A rotor name is unknown. */
+        BAD_ROTOR,
+        /** A rotor is named twice. */
+        DUPLICATE_ROTOR,
+        /** The first rotor is not a reflector. */
+        REFLECTOR,
+        /** More moving rotors than pawls. */
+        PAWLS,
+        /** Rotor settings are missing, of the wrong length or not in the
+         *  alphabet. */
+        POSITIONS,
+        /** Ring settings are of the wrong length or not in the
+         *  alphabet. */
+        RINGS,
+        /** The plugboard is malformed. */
+        PLUGBOARD,
+        /** A message character is not in the alphabet. */
+        CHARACTER;
+    }
+
+    /** Receives problems. */
+    interface Sink {
+        /** Report a problem of kind KIND at LINE and COLUMN of the file
+         *  named FILE, described by MESSAGE. */
+        void report(String file, int line, int column, Kind kind,
+                    String message);
+    }
+
+    /** A validator reporting problems to SINK, and treating characters
+     *  outside the alphabet in messages according to PASSTHROUGH. */
+    Validator(Sink sink, Passthrough passthrough) {
+        _sink = sink;
+        _passthrough = passthrough;
+        _counts = new long[Kind.values().length];
+    }
+
+    /** Return the number of problems found so far. */
+    long errors() {
+        long total = 0;
+        for (long n : _counts) {
+            total += n;
+        }
+        return total;
+    }
+
+    /** Return the number of problems of kind KIND found so far. */
+    long errors(Kind kind) {
+        return _counts[kind.ordinal()];
+    }
+
+    /** Return the number of lines checked so far. */
+    long lines() {
+        return _lines;
+    }
+
+    /** Check the configuration in CONFIG, read from the file named NAME,
+     *  and return the machine it describes, or null if it has
+     *  problems. */
+    Machine checkConfig(String name, String config) {
+        _file = name;
+        _lineNumber = 0;
+        int before = (int) errors();
+        int header = 0;
+        Alphabet alpha = null;
+        boolean haveRotor = false;
+        for (String line : config.split("\\R")) {
+            startLine(line);
+            while (header < 3 && nextToken()) {
+                String token = token();
+                if (header == 0) {
+                    alpha = alphabet(token);
+                } else {
+                    int n = number(token);
+                    if (n < 0) {
+                        report(Kind.CONFIG, header == 1
+                              ? "Need number of rotors"
+                              : "Need number of pawls");
+                    }
+                }
+                header += 1;
+            }
+            if (alpha == null || !nextToken()) {
+                continue;
+            }
+            if (charAt(_start) == '(') {
+                if (!haveRotor) {
+                    report(Kind.CONFIG, "cycles with no rotor");
+                }
+                checkCycles(alpha, Kind.CONFIG, true);
+            } else {
+                haveRotor = true;
+                checkRotor(alpha);
+            }
+        }
+        if (header < 3 || !haveRotor) {
+            _column = 0;
+            report(Kind.CONFIG, header < 3 ? "configuration file truncated"
+                  : "need configuration file");
+        }
+        if (errors() > before) {
+            return null;
+        }
+        try {
+            _main = new Main(new Scanner(config));
+            return _main.readConfig();
+        } catch (EnigmaException excp) {
+            _column = 0;
+            report(Kind.CONFIG, excp.getMessage());
+            return null;
+        }
+    }
+
+    /** Check the lines of INPUT, read from the file named NAME, as input
+     *  for MACHINE, the result of checkConfig, with which it is set up
+     *  as settings lines are checked. */
+    void checkInput(String name, Scanner input, Machine machine) {
+        _file = name;
+        _lineNumber = 0;
+        _machine = machine;
+        _settingsRead = false;
+        while (input.hasNext()) {
+            String line = input.nextLine();
+            startLine(line);
+            _lines += 1;
+            if (line.startsWith("*")) {
+                if (checkSettings()) {
+                    _main.setUp(machine, line);
+                    _settingsRead = true;
+                }
+            } else if (!_settingsRead) {
+                if (!_badSettings) {
+                    report(Kind.NO_SETTINGS, "No configuration line in input");
+                }
+            } else {
+                checkMessage();
+            }
+        }
+    }
+
+    /** Check the current line as a settings line, returning true iff it
+     *  is valid, and remember whether it was. */
+    private boolean checkSettings() {
+        Machine m = _machine;
+        Alphabet alpha = m.alphabet();
+        int before = (int) errors();
+        ArrayList<Rotor> all = m.allRotors();
+        nextToken();
+        int moving = 0;
+        Rotor[] chosen = new Rotor[m.numRotors()];
+        for (int i = 0; i < chosen.length; i += 1) {
+            if (!nextToken()) {
+                report(Kind.TRUNCATED, "Wrong number of arguments");
+                return settingsResult(before);
+            }
+            for (Rotor r : all) {
+                if (matches(r.name())) {
+                    chosen[i] = r;
+                }
+            }
+            if (chosen[i] == null) {
+                report(Kind.BAD_ROTOR, "Bad rotor name");
+                continue;
+            }
+            for (int j = 0; j < i; j += 1) {
+                if (chosen[j] == chosen[i]) {
+                    report(Kind.DUPLICATE_ROTOR, "Duplicate rotor name");
+                }
+            }
+            if (i == 0 && !chosen[i].reflecting()) {
+                report(Kind.REFLECTOR, "Reflector must come first");
+            }
+            if (chosen[i].rotates()) {
+                moving += 1;
+            }
+        }
+        if (moving > m.numPawls()) {
+            report(Kind.PAWLS, "Wrong number of arguments");
+        }
+        if (!nextToken()) {
+            _column = _line.length() + 1;
+            report(Kind.POSITIONS,
+                   "Insufficient number of settings specified.");
+            return settingsResult(before);
+        }
+        checkSettingChars(alpha, Kind.POSITIONS,
+                          "Insufficient number of settings specified.",
+                          "too many rotor settings",
+                          "Incorrect rotor setting type.");
+        if (nextToken() && charAt(_start) != '(') {
+            checkSettingChars(alpha, Kind.RINGS,
+                              "wrong number of ring settings",
+                              "wrong number of ring settings",
+                              "Incorrect ring setting type.");
+            nextToken();
+        }
+        if (_start < _line.length()) {
+            checkCycles(alpha, Kind.PLUGBOARD, false);
+        }
+        return settingsResult(before);
+    }
+
+    /** Record and return whether the current settings line is valid,
+     *  given that there were BEFORE problems before it. */
+    private boolean settingsResult(int before) {
+        _badSettings = errors() > before;
+        return !_badSettings;
+    }
+
+    /** Check that the current token has one character of ALPHA per
+     *  rotor slot after the reflector, reporting problems as KIND with
+     *  the message TOOFEW, TOOMANY or CHARACTER. */
+    private void checkSettingChars(Alphabet alpha, Kind kind, String tooFew,
+                                   String tooMany, String character) {
+        int n = _end - _start, slots = _machine.numRotors() - 1;
+        if (n != slots) {
+            report(kind, n < slots ? tooFew : tooMany);
+        }
+        for (int i = _start; i < _end; i += 1) {
+            if (!alpha.contains(charAt(i))) {
+                _column = i + 1;
+                report(kind, character);
+                return;
+            }
+        }
+    }
+
+    /** Check the rest of the current line, starting with the current
+     *  token, as cycles of characters of ALPHA, reporting problems as
+     *  KIND.  If EACHTOKEN, every token must end a cycle, as readConfig
+     *  requires. */
+    private void checkCycles(Alphabet alpha, Kind kind, boolean eachToken) {
+        boolean open = false;
+        for (int i = _start; i < _line.length(); i += 1) {
+            char ch = charAt(i);
+            _column = i + 1;
+            if (ch == '(') {
+                if (open) {
+                    report(kind, "unclosed cycle");
+                }
+                open = true;
+            } else if (ch == ')') {
+                if (!open) {
+                    report(kind, "unopened cycle");
+                }
+                open = false;
+            } else if (Character.isWhitespace(ch)) {
+                if (eachToken && i > 0 && charAt(i - 1) != ')'
+                    && !Character.isWhitespace(charAt(i - 1))) {
+                    report(kind, "cycles must end in parenthesis");
+                }
+            } else if (open && !alpha.contains(ch)) {
+                report(kind, "character out of range");
+            }
+        }
+        if (open) {
+            report(kind, eachToken ? "cycles must end in parenthesis"
+                  : "unclosed cycle");
+        } else if (eachToken && charAt(_line.length() - 1) != ')'
+                   && !Character.isWhitespace(charAt(_line.length() - 1))) {
+            report(kind, "cycles must end in parenthesis");
+        }
+    }
+
+    /** Check the current line of the configuration, whose first token
+     *  has been read, as a rotor description using ALPHA. */
+    private void checkRotor(Alphabet alpha) {
+        if (!nextToken()) {
+            report(Kind.CONFIG, "bad rotor description");
+            return;
+        }
+        char type = charAt(_start);
+        if (type != 'M' && type != 'N' && type != 'R') {
+            report(Kind.CONFIG, "Wrong rotor types specified");
+        }
+        for (int i = _start + 1; type == 'M' && i < _end; i += 1) {
+            if (!alpha.contains(charAt(i))) {
+                _column = i + 1;
+                report(Kind.CONFIG, "character out of range");
+            }
+        }
+        if (!nextToken()) {
+            _column = _line.length() + 1;
+            report(Kind.CONFIG, "cycles must end in parenthesis");
+        } else if (charAt(_start) == '@') {
+            if (!isLong(_line.substring(_start + 1).trim())) {
+                report(Kind.CONFIG, "bad wiring seed: "
+                      + _line.substring(_start).trim());
+            } else if (type == 'R' && alpha.size() % 2 != 0) {
+                report(Kind.CONFIG, "reflector needs an even alphabet");
+            }
+        } else {
+            checkCycles(alpha, Kind.CONFIG, true);
+        }
+    }
+
+    /** Check the current line as a message. */
+    private void checkMessage() {
+        for (int i = 0; i < _line.length(); i += 1) {
+            char ch = charAt(i);
+            if (!_machine.member(ch)
+                && !_machine.member(Character.toUpperCase(ch))
+                && _passthrough == Passthrough.REJECT && ch != ' ') {
+                _column = i + 1;
+                report(Kind.CHARACTER, "character out of range");
+            }
+        }
+    }
+
+    /** Return the alphabet declared by TOKEN, as in readConfig, or null
+     *  after reporting a problem. */
+    private Alphabet alphabet(String token) {
+        if (token.length() > 2 && token.startsWith("[")
+            && token.endsWith("]")) {
+            try {
+                return CharacterSet.parse(
+                    token.substring(1, token.length() - 1));
+            } catch (EnigmaException excp) {
+                report(Kind.CONFIG, excp.getMessage());
+                return null;
+            }
+        }
+        if (token.length() != 3 || !Character.isLetter(token.charAt(0))
+            || !Character.isLetter(token.charAt(2))
+            || token.charAt(1) != '-') {
+            report(Kind.CONFIG, "Need an alphabet");
+            return null;
+        }
+        if (Character.toUpperCase(token.charAt(0))
+            > Character.toUpperCase(token.charAt(2))) {
+            report(Kind.CONFIG, "empty range of characters");
+            return null;
+        }
+        return new CharacterRange(token.charAt(0), token.charAt(2));
+    }
+
+    /** Return the non-negative decimal number TEXT, or -1 if it is not
+     *  one. */
+    private static int number(String text) {
+        if (text.isEmpty() || text.length() > MAX_DIGITS) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char ch = text.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return -1;
+            }
+            result = result * 10 + (ch - '0');
+        }
+        return result;
+    }
+
+    /** Return true iff TEXT is a decimal long, as Long.parseLong
+     *  requires. */
+    private static boolean isLong(String text) {
+        int i = text.startsWith("-") || text.startsWith("+") ? 1 : 0;
+        int digits = text.length() - i;
+        if (digits == 0 || digits > MAX_LONG.length()) {
+            return false;
+        }
+        for (int j = i; j < text.length(); j += 1) {
+            if (text.charAt(j) < '0' || text.charAt(j) > '9') {
+                return false;
+            }
+        }
+        String limit = text.startsWith("-") ? MIN_LONG : MAX_LONG;
+        return digits < limit.length()
+            || text.substring(i).compareTo(limit) <= 0;
+    }
+
+    /** Make LINE the current line, with no current token. */
+    private void startLine(String line) {
+        _line = line;
+        _lineNumber += 1;
+        _start = _end = 0;
+        _column = 1;
+    }
+
+    /** Advance to the next token of the current line, returning false
+     *  (and leaving the position at the end of the line) if there is
+     *  none. */
+    private boolean nextToken() {
+        int i = _end, n = _line.length();
+        while (i < n && Character.isWhitespace(charAt(i))) {
+            i += 1;
+        }
+        _start = i;
+        while (i < n && !Character.isWhitespace(charAt(i))) {
+            i += 1;
+        }
+        _end = i;
+        _column = _start + 1;
+        return _start < n;
+    }
+
+    /** Return the current token. */
+    private String token() {
+        return _line.substring(_start, _end);
+    }
+
+    /** Return true iff the current token is NAME. */
+    private boolean matches(String name) {
+        return name.length() == _end - _start
+            && _line.startsWith(name, _start);
+    }
+
+    /** Return character I of the current line. */
+    private char charAt(int i) {
+        return _line.charAt(i);
+    }
+
+    /** Report a problem of kind KIND described by MESSAGE at the current
+     *  line and column. */
+    private void report(Kind kind, String message) {
+        _counts[kind.ordinal()] += 1;
+        _sink.report(_file, _lineNumber, _column, kind, message);
+    }
+
+    /** Check a configuration file and input files.  ARGS are optional
+     *  --passthrough=POLICY (see Main) and --max-errors=N (the most
+     *  problems to print; default 1000) options, a configuration file
+     *  and any number of input files.  Each problem is printed as a line
+     *  of tab-separated fields FILE, LINE, COLUMN, KIND and MESSAGE,
+     *  and a line "# KIND COUNT" follows for each kind found, then
+     *  "# lines N errors M".  Exits with code 1 if there were
+     *  problems. */
+    public static void main(String... args) {
+        try {
+            Passthrough passthrough = Passthrough.REJECT;
+            long[] limit = { DEFAULT_MAX_ERRORS };
+            int a = 0;
+            for (; a < args.length && args[a].startsWith("--"); a += 1) {
+                if (args[a].startsWith("--passthrough=")) {
+                    passthrough = Passthrough.parse(
+                        args[a].substring("--passthrough=".length()));
+                } else if (args[a].startsWith("--max-errors=")) {
+                    limit[0] = number(
+                        args[a].substring("--max-errors=".length()));
+                    if (limit[0] < 0) {
+                        throw error("bad error limit: %s", args[a]);
+                    }
+                } else {
+                    throw error("unknown option: %s", args[a]);
+                }
+            }
+            if (a >= args.length) {
+                throw error("Usage: java enigma.Validator [--passthrough=P] "
+                            + "[--max-errors=N] CONFIG [INPUT...]");
+            }
+            PrintStream out = System.out;
+            Validator v = new Validator(
+                (file, line, column, kind, message) -> {
+                    if (limit[0] > 0) {
+                        limit[0] -= 1;
+                        out.printf("%s\t%d\t%d\t%s\t%s%n", file, line,
+                                   column, kind, message);
+                    }
+                }, passthrough);
+            String config;
+            try (Scanner in = new Scanner(new File(args[a]))) {
+                config = in.useDelimiter("\\A").hasNext() ? in.next() : "";
+            } catch (IOException excp) {
+                throw error("could not open %s", args[a]);
+            }
+            Machine m = v.checkConfig(args[a], config);
+            if (m != null) {
+                m.setPassthrough(passthrough);
+                for (int i = a + 1; i < args.length; i += 1) {
+                    try (Scanner in = Main.getInput(args[i])) {
+                        v.checkInput(args[i], in, m);
+                    }
+                }
+            }
+            for (Kind kind : Kind.values()) {
+                if (v.errors(kind) > 0) {
+                    out.printf("# %s %d%n", kind, v.errors(kind));
+                }
+            }
+            out.printf("# lines %d errors %d%n", v.lines(), v.errors());
+            out.flush();
+            if (v.errors() == 0) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Default number of problems printed by main. */
+    static final long DEFAULT_MAX_ERRORS = 1000;
+
+    /** Longest number accepted by number(). */
+    private static final int MAX_DIGITS = 9;
+
+    /** Digits of the largest long and of the magnitude of the
+     *  smallest. */
+    private static final String MAX_LONG = Long.toString(Long.MAX_VALUE),
+        MIN_LONG = MAX_LONG.substring(0, MAX_LONG.length() - 1) + "8";
+
+    /** Where problems go. */
+    private final Sink _sink;
+
+    /** Policy for message characters outside the alphabet. */
+    private final Passthrough _passthrough;
+
+    /** Number of problems of each kind. */
+    private final long[] _counts;
+
+    /** Number of input lines checked. */
+    private long _lines;
+
+    /** Reads the configuration and sets up the machine. */
+    private Main _main;
+
+    /** The machine being checked against. */
+    private Machine _machine;
+
+    /** True once a valid settings line has been read. */
+    private boolean _settingsRead;
+
+    /** True iff the last settings line was invalid, so that messages
+     *  after it are not also reported as lacking settings. */
+    private boolean _badSettings;
+
+    /** Name of the file being checked. */
+    private String _file;
+
+    /** The current line. */
+    private String _line;
+
+    /** Number of the current line. */
+    private int _lineNumber;
+
+    /** Column (from 1) of the current problem. */
+    private int _column;
+
+    /** Bounds of the current token in _line. */
+    private int _start, _end;
+
+}
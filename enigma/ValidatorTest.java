@@ -0,0 +1,184 @@
+package enigma;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Validator class.
+ *  @author A.R. LOEFFLER
+ */
+public class ValidatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Problems reported, as "LINE:COLUMN KIND". */
+    private ArrayList<String> _problems = new ArrayList<>();
+
+    /** Return a validator that records problems in _problems. */
+    private Validator validator() {
+        return new Validator(
+            (file, line, column, kind, message) ->
+                _problems.add(line + ":" + column + " " + kind),
+            Passthrough.REJECT);
+    }
+
+    /** Return the contents of the file named NAME. */
+    private String read(String name) {
+        try (Scanner in = Main.getInput(name)) {
+            return in.useDelimiter("\\A").hasNext() ? in.next() : "";
+        }
+    }
+
+    /** Return the name of the configuration used by test-correct and
+     *  test-error for INPUT. */
+    private String configFor(File input) {
+        String path = input.getPath();
+        File own = new File(path.substring(0, path.length() - 4) + ".conf");
+        return own.exists() ? own.getPath()
+            : new File(input.getParent(), "default.conf").getPath();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkAgreesWithTestFiles() {
+        for (String dir : new String[] { "correct", "error" }) {
+            File[] inputs = new File("testing", dir).listFiles(
+                (d, name) -> name.endsWith(".inp"));
+            for (File input : inputs) {
+                _problems.clear();
+                Validator v = validator();
+                String config = configFor(input);
+                Machine m = v.checkConfig(config, read(config));
+                if (m != null) {
+                    v.checkInput(input.getPath(),
+                                 Main.getInput(input.getPath()), m);
+                }
+                assertEquals(input.getPath(), dir.equals("error"),
+                             v.errors() > 0);
+            }
+        }
+    }
+
+    @Test
+    public void checkReportsEveryProblem() {
+        String config = "testing/correct/default.conf";
+        Validator v = validator();
+        Machine m = v.checkConfig(config, read(config));
+        v.checkInput("input", new Scanner(
+            String.join("\n",
+                        "HELLO",
+                        "* B BETA I II III AAAA",
+                        "HELL0 WORLD",
+                        "* B BETA I I IX AAAA",
+                        "MORE",
+                        "* BETA B I II III AAA",
+                        "* B BETA I II III AAAA BB (AB",
+                        "GOOD LINE",
+                        "* B BETA I II III A?AA",
+                        "A.B")), m);
+        assertEquals(10, v.lines());
+        String[] expected = {
+            "1:1 NO_SETTINGS", "3:5 CHARACTER",
+            "4:12 DUPLICATE_ROTOR", "4:14 BAD_ROTOR",
+            "6:3 REFLECTOR", "6:19 POSITIONS",
+            "7:24 RINGS", "7:29 PLUGBOARD",
+            "9:20 POSITIONS", "10:2 CHARACTER",
+        };
+        assertArrayEquals(expected, _problems.toArray());
+        assertEquals(2, v.errors(Validator.Kind.CHARACTER));
+        assertEquals(10, v.errors());
+    }
+
+    @Test
+    public void checkConfigProblems() {
+        Validator v = validator();
+        Machine m = v.checkConfig("conf", String.join("\n",
+            " A-Z 5 x",
+            " I MQ8 (AELTPHQXRU) (BKNW)",
+            " II Q (A1)",
+            " (BC) (DE)F",
+            " III N @12z",
+            " IV N (AB",
+            ""));
+        assertNull(m);
+        String[] expected = {
+            "1:8 CONFIG", "2:6 CONFIG", "3:5 CONFIG", "3:9 CONFIG",
+            "4:11 CONFIG", "5:8 CONFIG", "6:9 CONFIG",
+        };
+        assertArrayEquals(expected, _problems.toArray());
+    }
+
+    @Test
+    public void checkLongSeeds() {
+        String config = String.join("\n",
+            "A-Z 3 1",
+            " I MQ @9223372036854775807",
+            " II N @-9223372036854775808",
+            " B R @1234567890123456789",
+            " C R @9223372036854775808",
+            "");
+        Validator v = validator();
+        assertNull(v.checkConfig("conf", config));
+        assertArrayEquals(new String[] { "5:6 CONFIG" },
+                          _problems.toArray());
+        _problems.clear();
+        String good = config.substring(0, config.indexOf(" C R"));
+        assertNotNull(validator().checkConfig("conf", good));
+        assertEquals(0, _problems.size());
+        assertNotNull(new Main(new Scanner(good)).readConfig());
+    }
+
+    @Test
+    public void checkMessagesMatchMain() {
+        String config = "testing/correct/default.conf";
+        ArrayList<String> messages = new ArrayList<>();
+        Validator v = new Validator(
+            (file, line, column, kind, message) -> messages.add(message),
+            Passthrough.REJECT);
+        Machine m = v.checkConfig(config, read(config));
+        String[] lines = {
+            "* B BETA I II III AAAAA", "HELL0", "* B BETA I II III AAAA",
+            "HELL0",
+        };
+        v.checkInput("input", new Scanner(String.join("\n", lines)), m);
+        Main main = new Main(Main.getInput(config));
+        Machine machine = main.readConfig();
+        try {
+            main.setUp(machine, lines[0]);
+            fail("too many settings accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(excp.getMessage(), messages.get(0));
+        }
+        main.setUp(machine, lines[2]);
+        try {
+            machine.convert(lines[3]);
+            fail("bad character accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(excp.getMessage(), messages.get(1));
+        }
+        assertEquals(2, messages.size());
+    }
+
+    @Test
+    public void checkPassthrough() {
+        String config = "testing/correct/default.conf";
+        Validator v = new Validator(
+            (file, line, column, kind, message) -> fail(message),
+            Passthrough.DROP);
+        Machine m = v.checkConfig(config, read(config));
+        v.checkInput("input", new Scanner(
+            "* B BETA I II III AAAA\nHello, world!"), m);
+        assertEquals(0, v.errors());
+    }
+
+}
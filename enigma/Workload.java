@@ -0,0 +1,281 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Generator of large synthetic inputs for measuring throughput.  Each
+ *  kind of workload is a configuration file and an input file of about
+ *  a given number of characters, both determined entirely by a seed, so
+ *  that runs of different versions can be compared on identical data.
+ *  Wirings are generated from seeds too (see Permutation.random).  Files
+ *  are written in UTF-8, which the WIDE workload needs; run Main on it
+ *  with -Dfile.encoding=UTF-8 if that is not the default.
+ *  @author A.R. LOEFFLER
+ */
+class Workload {
+
+    /** The kinds of workload. */
+    enum Kind {
+        /** A few enormous messages under one key. */
+        HUGE,
+        /** Very many short messages, re-keyed every few messages. */
+        SHORT,
+        /** Medium messages under keys with full plugboards, re-keyed
+         *  often. */
+        PLUGBOARD,
+        /** Medium messages over an alphabet of several hundred
+         *  characters. */
+        WIDE;
+    }
+
+    /** A generator of workloads of about SIZE characters of input from
+     *  the seed SEED. */
+    Workload(long size, long seed) {
+        _size = size;
+        _seed = seed;
+    }
+
+    /** Write the configuration and input of workload KIND to
+     *  DIR/KIND.conf and DIR/KIND.inp (KIND in lower case), returning the
+     *  number of message lines written. */
+    long write(Kind kind, File dir) {
+        String name = kind.name().toLowerCase();
+        _random = new Random(_seed * Kind.values().length + kind.ordinal());
+        _alphabet = kind == Kind.WIDE ? WIDE : CharacterSet.parse("A-Z");
+        try (Writer config = writer(new File(dir, name + ".conf"));
+             Writer input = writer(new File(dir, name + ".inp"))) {
+            writeConfig(config, kind == Kind.WIDE ? "[" + WIDE_DECL + "]"
+                        : "A-Z");
+            _written = 0;
+            long messages = 0;
+            long huge = Math.max(1, _size / HUGE_MESSAGES);
+            while (_written < _size) {
+                switch (kind) {
+                case HUGE:
+                    messages += key(input, false, HUGE_MESSAGES, huge, huge);
+                    break;
+                case SHORT:
+                    messages += key(input, false, 1 + _random.nextInt(20),
+                                    10, 60);
+                    break;
+                case PLUGBOARD:
+                    messages += key(input, true, 1 + _random.nextInt(200),
+                                    40, 100);
+                    break;
+                default:
+                    messages += key(input, false, 1000, 40, 100);
+                    break;
+                }
+            }
+            return messages;
+        } catch (IOException excp) {
+            throw error("could not write workload %s in %s", name, dir);
+        }
+    }
+
+    /** Return a buffered UTF-8 writer to FILE. */
+    private static Writer writer(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /** Write to OUT a configuration with alphabet declaration ALPHABET
+     *  and the rotors of the usual M4 machine (I-VIII, BETA, GAMMA, B
+     *  and C), with generated wirings and notches (in A-Z, which every
+     *  workload's alphabet contains). */
+    private void writeConfig(Writer out, String alphabet) throws IOException {
+        out.write(alphabet + "\n 5 3\n");
+        for (int i = 0; i < MOVING.length; i += 1) {
+            StringBuilder notches = new StringBuilder();
+            for (int k = i < 5 ? 1 : 2; k > 0; k -= 1) {
+                notches.append((char) ('A' + _random.nextInt(26)));
+            }
+            out.write(String.format(" %s M%s @%d\n", MOVING[i], notches,
+                                    _random.nextLong()));
+        }
+        for (String name : new String[] { "BETA", "GAMMA" }) {
+            out.write(String.format(" %s N @%d\n", name, _random.nextLong()));
+        }
+        for (String name : new String[] { "B", "C" }) {
+            out.write(String.format(" %s R @%d\n", name, _random.nextLong()));
+        }
+    }
+
+    /** Write to OUT a random settings line (with a full plugboard if
+     *  PLUGBOARD) followed by up to MESSAGES messages of random lengths
+     *  between MIN and MAX characters, stopping once the input is big
+     *  enough, and return the number of messages written. */
+    private long key(Writer out, boolean plugboard, int messages,
+                     long min, long max) throws IOException {
+        StringBuilder line = new StringBuilder("* ");
+        line.append(_random.nextBoolean() ? "B" : "C").append(' ');
+        line.append(_random.nextBoolean() ? "BETA" : "GAMMA");
+        int[] order = new int[MOVING.length];
+        for (int i = 0; i < order.length; i += 1) {
+            order[i] = i;
+        }
+        for (int i = 0; i < 3; i += 1) {
+            int j = i + _random.nextInt(order.length - i);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+            line.append(' ').append(MOVING[order[i]]);
+        }
+        line.append(' ');
+        for (int i = 0; i < 4; i += 1) {
+            line.append(randomChar());
+        }
+        if (plugboard) {
+            int[] shuffle = shuffle();
+            for (int i = 0; i + 1 < PLUGBOARD_PAIRS * 2; i += 2) {
+                line.append(" (").append(_alphabet.toChar(shuffle[i]))
+                    .append(_alphabet.toChar(shuffle[i + 1])).append(')');
+            }
+        }
+        line.append('\n');
+        out.write(line.toString());
+        _written += line.length();
+        int n = 0;
+        for (; n < messages && _written < _size; n += 1) {
+            long length = min + (long) (_random.nextDouble() * (max - min));
+            for (long i = 0; i < length; i += 1) {
+                char ch = randomChar();
+                if (i % WORD == WORD - 1) {
+                    ch = ' ';
+                }
+                out.write(ch);
+            }
+            out.write('\n');
+            _written += length + 1;
+        }
+        return n;
+    }
+
+    /** Return a random character of the alphabet. */
+    private char randomChar() {
+        return _alphabet.toChar(_random.nextInt(_alphabet.size()));
+    }
+
+    /** Return a random ordering of the indices of the alphabet. */
+    private int[] shuffle() {
+        int[] result = new int[_alphabet.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = i;
+        }
+        for (int i = result.length - 1; i > 0; i -= 1) {
+            int j = _random.nextInt(i + 1);
+            int t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Generate workloads.  ARGS are optional --size=CHARS (default
+     *  64 Mi) and --seed=N (default 1) options, a directory, and the
+     *  kinds of workload to write there (default: all). */
+    public static void main(String... args) {
+        try {
+            long size = DEFAULT_SIZE, seed = 1;
+            int a = 0;
+            for (; a < args.length && args[a].startsWith("--"); a += 1) {
+                if (args[a].startsWith("--size=")) {
+                    size = number(args[a], "--size=");
+                } else if (args[a].startsWith("--seed=")) {
+                    seed = number(args[a], "--seed=");
+                } else {
+                    throw error("unknown option: %s", args[a]);
+                }
+            }
+            if (a >= args.length) {
+                throw error("Usage: java enigma.Workload [--size=CHARS] "
+                            + "[--seed=N] DIR [KIND...]");
+            }
+            File dir = new File(args[a]);
+            dir.mkdirs();
+            Workload generator = new Workload(size, seed);
+            for (Kind kind : kinds(args, a + 1)) {
+                long messages = generator.write(kind, dir);
+                System.out.printf("%s: %d messages%n",
+                                  kind.name().toLowerCase(), messages);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the kinds named by ARGS[FROM ..], or all kinds if there
+     *  are none. */
+    static Kind[] kinds(String[] args, int from) {
+        if (from >= args.length) {
+            return Kind.values();
+        }
+        Kind[] result = new Kind[args.length - from];
+        for (int i = from; i < args.length; i += 1) {
+            try {
+                result[i - from] = Kind.valueOf(args[i].toUpperCase());
+            } catch (IllegalArgumentException excp) {
+                throw error("unknown workload: %s", args[i]);
+            }
+        }
+        return result;
+    }
+
+    /** Return the number in ARG, which starts with OPTION. */
+    static long number(String arg, String option) {
+        try {
+            return Long.parseLong(arg.substring(option.length()));
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", arg);
+        }
+    }
+
+    /** Default size of a workload's input, in characters. */
+    static final long DEFAULT_SIZE = 64L << 20;
+
+    /** Number of messages in a HUGE workload. */
+    private static final int HUGE_MESSAGES = 4;
+
+    /** Number of plugboard pairs in a PLUGBOARD workload. */
+    private static final int PLUGBOARD_PAIRS = 13;
+
+    /** Message characters come in words of WORD - 1 characters. */
+    private static final int WORD = 6;
+
+    /** Alphabet declaration of the WIDE workload: 682 characters. */
+    static final String WIDE_DECL = "A-Z\\u00C0-\\u024F\\u0400-\\u04FF";
+
+    /** Alphabet of the WIDE workload. */
+    private static final Alphabet WIDE = CharacterSet.parse(WIDE_DECL);
+
+    /** Names of the moving rotors. */
+    private static final String[] MOVING = {
+        "I", "II", "III", "IV", "V", "VI", "VII", "VIII",
+    };
+
+    /** Approximate size of each input, in characters. */
+    private final long _size;
+
+    /** Seed from which everything is generated. */
+    private final long _seed;
+
+    /** Source of random choices for the current workload. */
+    private Random _random;
+
+    /** Alphabet of the current workload. */
+    private Alphabet _alphabet;
+
+    /** Characters written to the current input so far. */
+    private long _written;
+
+}
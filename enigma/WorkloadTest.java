@@ -0,0 +1,83 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Workload class.
+ *  @author A.R. LOEFFLER
+ */
+public class WorkloadTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a new temporary directory. */
+    private File directory() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /** Return the contents of the file NAME in DIR. */
+    private byte[] read(File dir, String name) throws IOException {
+        File file = new File(dir, name);
+        file.deleteOnExit();
+        return Files.readAllBytes(file.toPath());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkReproducible() throws IOException {
+        File one = directory(), two = directory();
+        for (Workload.Kind kind : Workload.Kind.values()) {
+            String name = kind.name().toLowerCase();
+            assertEquals(new Workload(20000, 7).write(kind, one),
+                         new Workload(20000, 7).write(kind, two));
+            assertTrue(Arrays.equals(read(one, name + ".conf"),
+                                     read(two, name + ".conf")));
+            assertTrue(Arrays.equals(read(one, name + ".inp"),
+                                     read(two, name + ".inp")));
+            assertTrue(read(one, name + ".inp").length >= 20000);
+        }
+        new Workload(20000, 8).write(Workload.Kind.SHORT, two);
+        assertFalse(Arrays.equals(read(one, "short.inp"),
+                                  read(two, "short.inp")));
+    }
+
+    @Test
+    public void checkValid() throws IOException {
+        File dir = directory();
+        for (Workload.Kind kind : Workload.Kind.values()) {
+            String name = kind.name().toLowerCase();
+            long messages = new Workload(50000, 1).write(kind, dir);
+            assertTrue(messages > 0);
+            Validator v = new Validator(
+                (file, line, column, k, message) -> fail(message),
+                Passthrough.REJECT);
+            Path config = new File(dir, name + ".conf").toPath();
+            Machine m = v.checkConfig(name, Files.readString(config));
+            try (Scanner in = new Scanner(new File(dir, name + ".inp"),
+                                          StandardCharsets.UTF_8)) {
+                v.checkInput(name, in, m);
+            }
+            assertEquals(0, v.errors());
+            read(dir, name + ".conf");
+            read(dir, name + ".inp");
+        }
+    }
+
+}